@@ -0,0 +1,68 @@
+// Closed-loop client for /api/garmin/data/date, for hosts without k6. Each of
+// CLIENTS virtual threads requests a random past day, waits for the answer and
+// repeats until SECONDS have passed; the same request mix as data-by-date.js.
+//
+//   java loadtest/ClosedLoopClient.java 500 60 http://localhost:8080 u1
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClosedLoopClient {
+
+  private static final int DAYS = 700;
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    long durationMs = (args.length > 1 ? Long.parseLong(args[1]) : 60) * 1000;
+    String baseUrl = args.length > 2 ? args[2] : "http://localhost:8080";
+    String userId = args.length > 3 ? args[3] : "u1";
+
+    HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .build();
+    ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+    AtomicInteger errors = new AtomicInteger();
+    long stopAt = System.currentTimeMillis() + durationMs;
+
+    List<Thread> threads = new ArrayList<>(clients);
+    for (int i = 0; i < clients; i++) {
+      threads.add(Thread.ofVirtual().start(() -> {
+        while (System.currentTimeMillis() < stopAt) {
+          LocalDate date = LocalDate.now().minusDays(1 + ThreadLocalRandom.current().nextInt(DAYS));
+          URI uri = URI.create(baseUrl + "/api/garmin/data/date?userId=" + userId + "&date=" + date);
+          long start = System.nanoTime();
+          try {
+            HttpResponse<Void> response = client.send(
+                HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).build(),
+                HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+              errors.incrementAndGet();
+            }
+          } catch (Exception e) {
+            errors.incrementAndGet();
+          }
+          latencies.add(System.nanoTime() - start);
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    int n = sorted.length;
+    System.out.printf("clients=%d requests=%d req/s=%.1f p50=%d ms p95=%d ms errors=%d%n", clients, n,
+        n * 1000.0 / durationMs, sorted[n / 2] / 1_000_000, sorted[(int) (n * 0.95)] / 1_000_000, errors.get());
+  }
+}
@@ -0,0 +1,45 @@
+// Garmin dailies stub for the load test: answers every /dailies call with one
+// summary for the requested day after a fixed delay.
+//
+//   java loadtest/GarminStub.java 5000        # delay in ms, listens on :9200
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+
+public class GarminStub {
+
+  public static void main(String[] args) throws Exception {
+    long delayMs = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : 9200;
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 4096);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/dailies", exchange -> {
+      long start = 0;
+      for (String param : exchange.getRequestURI().getQuery().split("&")) {
+        if (param.startsWith("uploadStartTimeInSeconds=")) {
+          start = Long.parseLong(param.substring(param.indexOf('=') + 1));
+        }
+      }
+      String day = LocalDate.ofInstant(Instant.ofEpochSecond(start), ZoneOffset.UTC).toString();
+      try {
+        Thread.sleep(delayMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] body = ("[{\"summaryId\":\"s-" + day + "\",\"userId\":\"g1\",\"calendarDate\":\"" + day
+          + "\",\"steps\":10}]").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+    System.out.printf("Garmin stub on :%d with a %d ms delay%n", port, delayMs);
+  }
+}
@@ -0,0 +1,42 @@
+// k6 load test for /api/garmin/data/date, used to compare the platform-thread
+// and virtual-thread request models (spring.threads.virtual.enabled).
+//
+// Every request asks for a random past day with freshness disabled, so each
+// one blocks on a Garmin call and a DB write, the I/O-bound path the
+// virtual-thread mode is meant for. Point garmin.dailies.url at a stub with a
+// fixed delay (loadtest/GarminStub.java); see README.md for the flags used.
+// loadtest/ClosedLoopClient.java runs the same closed loop where k6 is not
+// available.
+//
+//   k6 run -e BASE_URL=http://localhost:8080 -e USER_ID=u1 loadtest/data-by-date.js
+
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const USER_ID = __ENV.USER_ID || 'u1';
+const DAYS = parseInt(__ENV.DAYS || '700', 10);
+
+export const options = {
+  scenarios: {
+    closed: {
+      executor: 'constant-vus',
+      vus: parseInt(__ENV.VUS || '500', 10),
+      duration: __ENV.DURATION || '60s',
+    },
+  },
+  thresholds: {
+    http_req_failed: ['rate<0.01'],
+  },
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+function randomPastDate() {
+  const day = new Date(Date.now() - (1 + Math.floor(Math.random() * DAYS)) * 86400000);
+  return day.toISOString().slice(0, 10);
+}
+
+export default function () {
+  const res = http.get(`${BASE_URL}/api/garmin/data/date?userId=${USER_ID}&date=${randomPastDate()}`);
+  check(res, { 'status is 200': (r) => r.status === 200 });
+}
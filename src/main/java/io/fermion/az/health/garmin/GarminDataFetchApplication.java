@@ -3,9 +3,11 @@ package io.fermion.az.health.garmin;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableJpaRepositories(basePackages = "io.fermion.az.health.garmin.repo")
+@EnableScheduling
 public class GarminDataFetchApplication {
 
   public static void main(String[] args) {
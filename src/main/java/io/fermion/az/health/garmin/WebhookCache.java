@@ -1,42 +1,61 @@
 package io.fermion.az.health.garmin;
 
-import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import io.fermion.az.health.garmin.cache.BoundedTtlCache;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
 
 /**
- * Simple in-memory cache to temporarily store recent Garmin webhook data.
- * Helps avoid duplicate logs and allows integration testing before database storage.
+ * Bounded in-memory cache of recent Garmin webhook data, used by the ingest
+ * pipeline to recognise summaries it has already persisted.
  */
+@Component
 public class WebhookCache {
 
-    private static final long EXPIRY_MS = 5 * 60 * 1000; // 5 minutes
-    private static final Map<String, CachedItem> cache = new ConcurrentHashMap<>();
+    private final BoundedTtlCache<String, Object> cache;
+    private final long expiryMs;
+
+    public WebhookCache(
+            @Value("${garmin.webhook-cache.max-entries:100000}") long maxEntries,
+            @Value("${garmin.webhook-cache.max-weight-bytes:33554432}") long maxWeightBytes,
+            @Value("${garmin.webhook-cache.expiry-ms:300000}") long expiryMs,
+            @Value("${garmin.webhook-cache.tick-ms:1000}") long tickMs,
+            MeterRegistry meterRegistry) {
+        this.expiryMs = expiryMs;
+        this.cache = new BoundedTtlCache<>("webhook", maxEntries, maxWeightBytes, tickMs, WebhookCache::weigh);
+        this.cache.bindTo(meterRegistry);
+    }
 
-    public static void put(String key, Object value) {
-        cache.put(key, new CachedItem(value));
+    public void put(String key, Object value) {
+        cache.put(key, value, expiryMs);
     }
 
-    public static Object get(String key) {
-        CachedItem item = cache.get(key);
-        if (item == null || item.isExpired()) {
-            cache.remove(key);
-            return null;
-        }
-        return item.value();
+    public Object get(String key) {
+        return cache.get(key);
     }
 
-    public static void cleanup() {
-        cache.entrySet().removeIf(e -> e.getValue().isExpired());
+    /**
+     * @return the value already cached for {@code key}, or {@code null} if
+     *         {@code value} was stored
+     */
+    public Object putIfAbsent(String key, Object value) {
+        return cache.putIfAbsent(key, value, expiryMs);
     }
 
-    private record CachedItem(Object value, long timestamp) {
-        CachedItem(Object value) {
-            this(value, Instant.now().toEpochMilli());
-        }
+    public BoundedTtlCache.Stats stats() {
+        return cache.stats();
+    }
+
+    @Scheduled(fixedRateString = "${garmin.webhook-cache.tick-ms:1000}")
+    public void tick() {
+        cache.tick();
+    }
 
-        boolean isExpired() {
-            return Instant.now().toEpochMilli() - timestamp > EXPIRY_MS;
-        }
+    // Rough retained size in bytes: entry overhead plus string contents.
+    private static long weigh(String key, Object value) {
+        long weight = 64 + 2L * key.length();
+        return value instanceof String s ? weight + 40 + 2L * s.length() : weight + 16;
     }
 }
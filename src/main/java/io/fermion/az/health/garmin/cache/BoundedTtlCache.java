@@ -0,0 +1,309 @@
+package io.fermion.az.health.garmin.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * In-memory cache bounded by entry count and total weight, with per-entry
+ * time-to-live.
+ *
+ * Entries are kept in least-recently-used order and evicted from the cold end
+ * whenever either bound is exceeded. Expiry is driven by {@link #tick()}:
+ * entries are filed into buckets by expiry time, so a tick only visits buckets
+ * that have come due instead of scanning the whole map. Each bucket is an
+ * intrusive linked list, so an entry that is evicted, replaced or invalidated
+ * leaves its bucket at once and memory stays bounded by the entries held.
+ * Lookups compare against
+ * the clock value captured by the last tick rather than reading the system
+ * clock, so the owner is expected to call {@link #tick()} on a fixed schedule.
+ */
+public class BoundedTtlCache<K, V> {
+
+  private final String name;
+  private final long maxEntries;
+  private final long maxWeight;
+  private final long bucketMillis;
+  private final ToLongBiFunction<K, V> weigher;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LinkedHashMap<K, Node<K, V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final NavigableMap<Long, Bucket<K, V>> expiryBuckets = new TreeMap<>();
+  private long totalWeight;
+  private volatile long now = System.currentTimeMillis();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+
+  private static final class Node<K, V> {
+    final K key;
+    final V value;
+    final long weight;
+    final long expiresAt;
+    Bucket<K, V> bucket;
+    Node<K, V> previous;
+    Node<K, V> next;
+
+    Node(K key, V value, long weight, long expiresAt) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  // Nodes expiring within one bucketMillis slot
+  private static final class Bucket<K, V> {
+    final long slot;
+    Node<K, V> head;
+    int size;
+
+    Bucket(long slot) {
+      this.slot = slot;
+    }
+  }
+
+  public record Stats(long size, long weight, long hits, long misses, long evictions, long expirations) {
+    public double hitRatio() {
+      long lookups = hits + misses;
+      return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+  }
+
+  /**
+   * @param bucketMillis expiry resolution; entries expire at most this much
+   *                     later than their TTL, and should match the tick rate
+   */
+  public BoundedTtlCache(String name, long maxEntries, long maxWeight, long bucketMillis,
+      ToLongBiFunction<K, V> weigher) {
+    this.name = name;
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.bucketMillis = Math.max(1, bucketMillis);
+    this.weigher = weigher;
+  }
+
+  public V get(K key) {
+    lock.lock();
+    try {
+      Node<K, V> node = entries.get(key);
+      if (node == null) {
+        misses.increment();
+        return null;
+      }
+      if (node.expiresAt <= now) {
+        removeNode(node);
+        expirations.increment();
+        misses.increment();
+        return null;
+      }
+      hits.increment();
+      return node.value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void put(K key, V value, long ttlMillis) {
+    lock.lock();
+    try {
+      insert(key, value, ttlMillis);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Store {@code value} unless a live entry exists.
+   *
+   * @return the existing value, or {@code null} if {@code value} was stored
+   */
+  public V putIfAbsent(K key, V value, long ttlMillis) {
+    lock.lock();
+    try {
+      Node<K, V> node = entries.get(key);
+      if (node != null && node.expiresAt > now) {
+        hits.increment();
+        return node.value;
+      }
+      misses.increment();
+      insert(key, value, ttlMillis);
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void invalidate(K key) {
+    lock.lock();
+    try {
+      Node<K, V> node = entries.get(key);
+      if (node != null) {
+        removeNode(node);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void clear() {
+    lock.lock();
+    try {
+      entries.clear();
+      expiryBuckets.clear();
+      totalWeight = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Advance the cached clock and drop entries whose buckets have come due.
+   */
+  public void tick() {
+    long current = System.currentTimeMillis();
+    now = current;
+    lock.lock();
+    try {
+      NavigableMap<Long, Bucket<K, V>> due = expiryBuckets.headMap(current / bucketMillis, true);
+      for (Iterator<Bucket<K, V>> it = due.values().iterator(); it.hasNext();) {
+        Bucket<K, V> bucket = it.next();
+        for (Node<K, V> node = bucket.head; node != null;) {
+          Node<K, V> next = node.next;
+          // The current slot also holds entries that expire later in it
+          if (node.expiresAt <= current) {
+            entries.remove(node.key);
+            totalWeight -= node.weight;
+            unlink(node, false);
+            expirations.increment();
+          }
+          node = next;
+        }
+        if (bucket.head == null) {
+          it.remove();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long size() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Nodes filed in expiry buckets; equals size() when no node is leaked
+  long scheduledExpiries() {
+    lock.lock();
+    try {
+      return expiryBuckets.values().stream().mapToLong(bucket -> bucket.size).sum();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Stats stats() {
+    lock.lock();
+    try {
+      return new Stats(entries.size(), totalWeight, hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Register size, weight, hit/miss and eviction meters following Micrometer's
+   * {@code cache.*} naming, tagged with this cache's name.
+   */
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("cache.size", this, BoundedTtlCache::size).tag("cache", name).register(registry);
+    Gauge.builder("cache.weight", this, c -> c.stats().weight()).tag("cache", name).register(registry);
+    FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+        .tag("cache", name).tag("result", "hit").register(registry);
+    FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+        .tag("cache", name).tag("result", "miss").register(registry);
+    FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+        .tag("cache", name).register(registry);
+    FunctionCounter.builder("cache.expirations", expirations, LongAdder::sum)
+        .tag("cache", name).register(registry);
+  }
+
+  private void insert(K key, V value, long ttlMillis) {
+    Node<K, V> previous = entries.get(key);
+    if (previous != null) {
+      removeNode(previous);
+    }
+    Node<K, V> node = new Node<>(key, value, weigher.applyAsLong(key, value), now + ttlMillis);
+    entries.put(key, node);
+    totalWeight += node.weight;
+    link(node);
+    evictIfNeeded();
+  }
+
+  private void evictIfNeeded() {
+    Iterator<Map.Entry<K, Node<K, V>>> eldest = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || totalWeight > maxWeight) && eldest.hasNext()) {
+      Node<K, V> node = eldest.next().getValue();
+      eldest.remove();
+      totalWeight -= node.weight;
+      unlink(node, true);
+      evictions.increment();
+    }
+  }
+
+  private void removeNode(Node<K, V> node) {
+    entries.remove(node.key);
+    totalWeight -= node.weight;
+    unlink(node, true);
+  }
+
+  private void link(Node<K, V> node) {
+    Bucket<K, V> bucket = expiryBuckets.computeIfAbsent(node.expiresAt / bucketMillis, Bucket::new);
+    node.bucket = bucket;
+    node.next = bucket.head;
+    if (bucket.head != null) {
+      bucket.head.previous = node;
+    }
+    bucket.head = node;
+    bucket.size++;
+  }
+
+  /**
+   * @param dropEmptyBucket whether to remove the bucket once empty; false
+   *                        while {@link #tick()} is iterating the buckets
+   */
+  private void unlink(Node<K, V> node, boolean dropEmptyBucket) {
+    Bucket<K, V> bucket = node.bucket;
+    if (node.previous != null) {
+      node.previous.next = node.next;
+    } else {
+      bucket.head = node.next;
+    }
+    if (node.next != null) {
+      node.next.previous = node.previous;
+    }
+    node.bucket = null;
+    node.previous = null;
+    node.next = null;
+    bucket.size--;
+    if (dropEmptyBucket && bucket.head == null) {
+      expiryBuckets.remove(bucket.slot);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package io.fermion.az.health.garmin.cache;
+
+import io.fermion.az.health.garmin.concurrent.SingleFlight;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-through cache of each user's connected Garmin token, keyed by userId.
+ *
+ * An entry lives until the access token expires, capped at the configured
+ * TTL, so an expired token is always re-read and refreshed. Users without a
+ * connected token are cached briefly as well. Writers call {@link #update} or
+ * {@link #invalidate} when they save a token; inside a transaction the change
+ * is applied after commit. Cached entities are shared between callers and
+ * must not be modified.
+ */
+@Component
+public class ConnectedTokenCache {
+
+  private final GarminUserTokensRepository garminUserTokensRepository;
+  private final BoundedTtlCache<String, Optional<GarminUserTokens>> cache;
+  private final SingleFlight<String, Optional<GarminUserTokens>> loads = new SingleFlight<>();
+  private final long maxTtlMs;
+  private final long negativeTtlMs;
+
+  public ConnectedTokenCache(GarminUserTokensRepository garminUserTokensRepository,
+      @Value("${garmin.token-cache.max-entries:10000}") long maxEntries,
+      @Value("${garmin.token-cache.max-ttl-ms:300000}") long maxTtlMs,
+      @Value("${garmin.token-cache.negative-ttl-ms:10000}") long negativeTtlMs,
+      @Value("${garmin.token-cache.tick-ms:1000}") long tickMs,
+      MeterRegistry meterRegistry) {
+    this.garminUserTokensRepository = garminUserTokensRepository;
+    this.maxTtlMs = maxTtlMs;
+    this.negativeTtlMs = negativeTtlMs;
+    this.cache = new BoundedTtlCache<>("connected-tokens", maxEntries, Long.MAX_VALUE, tickMs, (k, v) -> 1);
+    this.cache.bindTo(meterRegistry);
+  }
+
+  /**
+   * @return the user's connected token, or {@code null} if there is none
+   */
+  public GarminUserTokens get(String userId) {
+    Optional<GarminUserTokens> cached = cache.get(userId);
+    if (cached == null) {
+      cached = loads.execute(userId, () -> {
+        Optional<GarminUserTokens> loaded = Optional.ofNullable(garminUserTokensRepository.findConnectedByUserId(userId));
+        long ttl = ttlFor(loaded);
+        // Never overwrite a token that a writer stored while we were reading
+        if (ttl > 0) {
+          cache.putIfAbsent(userId, loaded, ttl);
+        }
+        return loaded;
+      });
+    }
+    return cached.orElse(null);
+  }
+
+  /**
+   * Connected tokens for many users. Cache misses are loaded with a single
+   * query and cached like {@link #get} would.
+   *
+   * @return tokens by userId, without users that have none
+   */
+  public Map<String, GarminUserTokens> getAll(Collection<String> userIds) {
+    Map<String, GarminUserTokens> found = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String userId : userIds) {
+      Optional<GarminUserTokens> cached = cache.get(userId);
+      if (cached == null) {
+        missing.add(userId);
+      } else {
+        cached.ifPresent(tokens -> found.put(userId, tokens));
+      }
+    }
+    if (missing.isEmpty()) {
+      return found;
+    }
+    Map<String, GarminUserTokens> loaded = new HashMap<>();
+    for (GarminUserTokens tokens : garminUserTokensRepository.findConnectedByUserIdIn(missing)) {
+      loaded.put(tokens.getId().getUserId(), tokens);
+    }
+    for (String userId : missing) {
+      Optional<GarminUserTokens> tokens = Optional.ofNullable(loaded.get(userId));
+      long ttl = ttlFor(tokens);
+      if (ttl > 0) {
+        cache.putIfAbsent(userId, tokens, ttl);
+      }
+      tokens.ifPresent(t -> found.put(userId, t));
+    }
+    return found;
+  }
+
+  /**
+   * Store a token that was just saved, or drop the entry if it is no longer
+   * connected.
+   */
+  public void update(GarminUserTokens tokens) {
+    afterCommit(() -> {
+      String userId = tokens.getId().getUserId();
+      long ttl = ttlFor(Optional.of(tokens));
+      if (tokens.getConnectStatus() == GarminUserTokens.ConnectStatus.CONNECTED && ttl > 0) {
+        cache.put(userId, Optional.of(tokens), ttl);
+      } else {
+        cache.invalidate(userId);
+      }
+    });
+  }
+
+  public void invalidate(String userId) {
+    afterCommit(() -> cache.invalidate(userId));
+  }
+
+  public BoundedTtlCache.Stats stats() {
+    return cache.stats();
+  }
+
+  @Scheduled(fixedRateString = "${garmin.token-cache.tick-ms:1000}")
+  public void tick() {
+    cache.tick();
+  }
+
+  private long ttlFor(Optional<GarminUserTokens> tokens) {
+    if (tokens.isEmpty()) {
+      return negativeTtlMs;
+    }
+    long untilExpiry = Duration.between(LocalDateTime.now(), tokens.get().getAccessTokenExpiry()).toMillis();
+    return Math.min(maxTtlMs, untilExpiry);
+  }
+
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+}
@@ -0,0 +1,258 @@
+package io.fermion.az.health.garmin.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-based circuit breaker.
+ *
+ * While closed, the outcomes of the last {@code windowSize} calls are kept in
+ * a ring buffer; once at least {@code minimumCalls} have been recorded and the
+ * failure rate reaches the threshold the breaker opens and rejects calls for
+ * {@code openDuration}. It then lets {@code halfOpenCalls} trial calls
+ * through: if all succeed it closes again, and any failure reopens it.
+ * Callers must report every {@link Permit} as a success, failure or
+ * {@linkplain Permit#onIgnored() ignored}. Permits belong to the state they
+ * were granted in; outcomes reported after the breaker has changed state,
+ * such as a slow call admitted while closed finishing during a half-open
+ * trial, are dropped.
+ *
+ * State is guarded by a {@link ReentrantLock} rather than a monitor, so
+ * virtual threads waiting for it do not pin their carrier thread.
+ */
+public class CircuitBreaker {
+
+  private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State {
+    CLOSED, HALF_OPEN, OPEN
+  }
+
+  public record Snapshot(State state, int calls, int failures, double failureRate, long retryAfterMillis,
+      long rejected) {
+  }
+
+  private final String name;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final boolean[] window;
+  private int next;
+  private int calls;
+  private int failures;
+
+  private State state = State.CLOSED;
+  private long generation;
+  private long openedAt;
+  private int trialsInFlight;
+  private int trialSuccesses;
+  private long rejected;
+
+  /**
+   * @param failureRateThreshold share of failed calls, in {@code (0, 1]}, that
+   *                             opens the breaker
+   */
+  public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+      Duration openDuration, int halfOpenCalls) {
+    this.name = name;
+    this.window = new boolean[Math.max(1, windowSize)];
+    this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+    this.failureRateThreshold = failureRateThreshold;
+    this.openNanos = openDuration.toNanos();
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+  }
+
+  /**
+   * A call admitted by the breaker. Report exactly one outcome.
+   */
+  public final class Permit {
+
+    private final long generation;
+
+    private Permit(long generation) {
+      this.generation = generation;
+    }
+
+    public void onSuccess() {
+      CircuitBreaker.this.onSuccess(generation);
+    }
+
+    public void onFailure() {
+      CircuitBreaker.this.onFailure(generation);
+    }
+
+    /**
+     * The call ended without saying anything about the endpoint's health, for
+     * example because it was never sent.
+     */
+    public void onIgnored() {
+      CircuitBreaker.this.onIgnored(generation);
+    }
+  }
+
+  /**
+   * @return a permit for a call made now, or {@code null} if calls are
+   *         being rejected
+   */
+  public Permit tryAcquire() {
+    lock.lock();
+    try {
+      if (state == State.OPEN) {
+        if (System.nanoTime() - openedAt < openNanos) {
+          rejected++;
+          return null;
+        }
+        transition(State.HALF_OPEN);
+        trialsInFlight = 0;
+        trialSuccesses = 0;
+      }
+      if (state == State.HALF_OPEN) {
+        if (trialsInFlight + trialSuccesses >= halfOpenCalls) {
+          rejected++;
+          return null;
+        }
+        trialsInFlight++;
+      }
+      return new Permit(generation);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onSuccess(long permitGeneration) {
+    lock.lock();
+    try {
+      if (permitGeneration != generation) {
+        return;
+      }
+      if (state == State.HALF_OPEN) {
+        trialsInFlight--;
+        if (++trialSuccesses >= halfOpenCalls) {
+          resetWindow();
+          transition(State.CLOSED);
+        }
+      } else if (state == State.CLOSED) {
+        record(false);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onFailure(long permitGeneration) {
+    lock.lock();
+    try {
+      if (permitGeneration != generation) {
+        return;
+      }
+      if (state == State.HALF_OPEN) {
+        trialsInFlight--;
+        open();
+      } else if (state == State.CLOSED) {
+        record(true);
+        if (calls >= minimumCalls && failureRate() >= failureRateThreshold) {
+          open();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onIgnored(long permitGeneration) {
+    lock.lock();
+    try {
+      if (permitGeneration == generation && state == State.HALF_OPEN) {
+        trialsInFlight--;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public State state() {
+    lock.lock();
+    try {
+      return state;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Time until an open breaker lets trial calls through.
+   */
+  public Duration retryAfter() {
+    lock.lock();
+    try {
+      if (state != State.OPEN) {
+        return Duration.ZERO;
+      }
+      return Duration.ofNanos(Math.max(0, openNanos - (System.nanoTime() - openedAt)));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Snapshot snapshot() {
+    lock.lock();
+    try {
+      return new Snapshot(state, calls, failures, failureRate(), retryAfter().toMillis(), rejected);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void record(boolean failed) {
+    if (calls == window.length) {
+      if (window[next]) {
+        failures--;
+      }
+    } else {
+      calls++;
+    }
+    window[next] = failed;
+    if (failed) {
+      failures++;
+    }
+    next = (next + 1) % window.length;
+  }
+
+  private double failureRate() {
+    return calls == 0 ? 0.0 : (double) failures / calls;
+  }
+
+  private void open() {
+    openedAt = System.nanoTime();
+    transition(State.OPEN);
+  }
+
+  private void resetWindow() {
+    next = 0;
+    calls = 0;
+    failures = 0;
+  }
+
+  private void transition(State to) {
+    if (state != to) {
+      if (to == State.OPEN && state == State.HALF_OPEN) {
+        log.warn("Circuit breaker {} trial call failed, rejecting calls for another {} s", name,
+            TimeUnit.NANOSECONDS.toSeconds(openNanos));
+      } else if (to == State.OPEN) {
+        log.warn("Circuit breaker {} opened ({} of last {} calls failed), rejecting calls for {} s", name, failures,
+            calls, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+      } else {
+        log.info("Circuit breaker {} {} -> {}", name, state, to);
+      }
+      state = to;
+      generation++;
+    }
+  }
+}
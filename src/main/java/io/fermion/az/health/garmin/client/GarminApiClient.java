@@ -0,0 +1,295 @@
+package io.fermion.az.health.garmin.client;
+
+import io.fermion.az.health.garmin.codec.DailiesSummaryDecoder;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.dto.TokenResponse;
+import io.fermion.az.health.garmin.dto.UserIdResponse;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
+import io.fermion.az.health.garmin.logging.PayloadLogger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Transport for the Garmin OAuth and Wellness APIs. Every outbound Garmin call
+ * goes through the shared, pooled {@link RestTemplate}. Query parameters are
+ * passed as URI template variables so request metrics are tagged by endpoint,
+ * not by user. Calls are admitted by {@link GarminRateLimiter} at the
+ * {@link RequestPriority} of the calling thread, and 429 responses are fed
+ * back to it.
+ *
+ * Each {@link GarminEndpoint} has a circuit breaker that counts connection
+ * errors, timeouts and 5xx responses; while it is open calls fail fast with
+ * {@link GarminUnavailableException}. Idempotent GETs that fail that way are
+ * retried with exponential backoff and full jitter. Timing out on our own
+ * connection pool says nothing about Garmin, so it is neither counted by the
+ * breaker nor retried.
+ *
+ * {@code garmin.api.calls} times each call as its caller sees it, including
+ * rate limit waits and retries, by endpoint and outcome;
+ * {@code http.client.requests} has the individual attempts.
+ */
+@Component
+public class GarminApiClient {
+
+  private static final Logger log = LoggerFactory.getLogger(GarminApiClient.class);
+  private static final String DAILIES_QUERY =
+      "?userId={userId}&uploadStartTimeInSeconds={start}&uploadEndTimeInSeconds={end}";
+  private static final String PAYLOAD_LOG_ENDPOINT = "garmin.dailies";
+
+  private final RestTemplate restTemplate;
+  private final DailiesSummaryDecoder dailiesSummaryDecoder;
+  private final GarminRateLimiter rateLimiter;
+  private final GarminCircuitBreakers circuitBreakers;
+  private final PayloadLogger payloadLogger;
+  private final Map<GarminEndpoint, Map<Outcome, Timer>> calls = new EnumMap<>(GarminEndpoint.class);
+  private final Map<GarminEndpoint, Counter> retries = new EnumMap<>(GarminEndpoint.class);
+
+  @Value("${garmin.resilience.retry.max-attempts:3}")
+  private int retryMaxAttempts;
+
+  @Value("${garmin.resilience.retry.base-delay-ms:200}")
+  private long retryBaseDelayMs;
+
+  @Value("${garmin.resilience.retry.max-delay-ms:2000}")
+  private long retryMaxDelayMs;
+
+  @Value("${garmin.rate-limit.default-retry-after-ms:30000}")
+  private long defaultRetryAfterMs;
+
+  @Value("${GARMIN_TOKEN_URL:${garmin.token.url:https://diauth.garmin.com/di-oauth2-service/oauth/token}}")
+  private String tokenUrl;
+
+  @Value("${GARMIN_USER_ID_URL:${garmin.user.id.url:https://apis.garmin.com/wellness-api/rest/user/id}}")
+  private String userIdUrl;
+
+  @Value("${GARMIN_DAILIES_URL:${garmin.dailies.url:https://apis.garmin.com/wellness-api/rest/dailies}}")
+  private String dailiesUrl;
+
+  public GarminApiClient(RestTemplate restTemplate, DailiesSummaryDecoder dailiesSummaryDecoder,
+      GarminRateLimiter rateLimiter, GarminCircuitBreakers circuitBreakers, PayloadLogger payloadLogger,
+      MeterRegistry meterRegistry) {
+    this.restTemplate = restTemplate;
+    this.dailiesSummaryDecoder = dailiesSummaryDecoder;
+    this.rateLimiter = rateLimiter;
+    this.circuitBreakers = circuitBreakers;
+    this.payloadLogger = payloadLogger;
+    for (GarminEndpoint endpoint : GarminEndpoint.values()) {
+      Map<Outcome, Timer> timers = new EnumMap<>(Outcome.class);
+      for (Outcome outcome : Outcome.values()) {
+        timers.put(outcome, Timer.builder("garmin.api.calls").tag("endpoint", endpoint.tag())
+            .tag("outcome", outcome.tag()).description("Garmin API calls, including retries and rate limit waits")
+            .register(meterRegistry));
+      }
+      calls.put(endpoint, timers);
+      retries.put(endpoint, Counter.builder("garmin.api.retries").tag("endpoint", endpoint.tag())
+          .description("Garmin API attempts retried after a connection error or 5xx").register(meterRegistry));
+    }
+  }
+
+  private enum Outcome {
+    SUCCESS, CLIENT_ERROR, SERVER_ERROR, IO_ERROR, POOL_EXHAUSTED, RATE_LIMITED, UNAVAILABLE, ERROR;
+
+    String tag() {
+      return name().toLowerCase();
+    }
+
+    static Outcome of(RuntimeException e) {
+      if (e instanceof GarminRateLimitException) {
+        return RATE_LIMITED;
+      } else if (e instanceof GarminUnavailableException) {
+        return UNAVAILABLE;
+      } else if (e instanceof HttpClientErrorException) {
+        return CLIENT_ERROR;
+      } else if (e instanceof HttpServerErrorException) {
+        return SERVER_ERROR;
+      } else if (isPoolExhausted(e)) {
+        return POOL_EXHAUSTED;
+      } else if (e instanceof ResourceAccessException) {
+        return IO_ERROR;
+      }
+      return ERROR;
+    }
+  }
+
+  public String getTokenUrl() {
+    return tokenUrl;
+  }
+
+  public String getUserIdUrl() {
+    return userIdUrl;
+  }
+
+  public String getDailiesUrl() {
+    return dailiesUrl;
+  }
+
+  /**
+   * POST a form to the OAuth token endpoint, for both the authorization code
+   * exchange and refreshes.
+   */
+  public ResponseEntity<TokenResponse> requestToken(HttpEntity<?> request) {
+    return call(GarminEndpoint.TOKEN, null, () -> restTemplate.postForEntity(tokenUrl, request, TokenResponse.class));
+  }
+
+  public ResponseEntity<UserIdResponse> fetchUserId(String accessToken) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setBearerAuth(accessToken);
+    return call(GarminEndpoint.USER_ID, null,
+        () -> restTemplate.exchange(userIdUrl, HttpMethod.GET, new HttpEntity<>(headers), UserIdResponse.class));
+  }
+
+  /**
+   * Dailies uploaded in {@code [startSeconds, endSeconds]}, decoded straight
+   * off the response stream, unless the {@link PayloadLogger} captures it.
+   */
+  public List<DailiesSummary> fetchDailies(String garminUserId, long startSeconds, long endSeconds,
+      String accessToken) {
+    log.debug("GET {} for Garmin user {} [{}, {}]", dailiesUrl, garminUserId, startSeconds, endSeconds);
+    PayloadLogger.Capture capture = payloadLogger.capture(PAYLOAD_LOG_ENDPOINT, garminUserId);
+    List<DailiesSummary> summaries = call(GarminEndpoint.DAILIES, garminUserId,
+        () -> restTemplate.execute(dailiesUrl + DAILIES_QUERY, HttpMethod.GET,
+            request -> {
+              request.getHeaders().setBearerAuth(accessToken);
+              request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+            },
+            response -> {
+              if (capture == PayloadLogger.Capture.NONE) {
+                return dailiesSummaryDecoder.decodeAll(response.getBody());
+              }
+              byte[] body = response.getBody().readAllBytes();
+              payloadLogger.log(capture, PAYLOAD_LOG_ENDPOINT, garminUserId, body);
+              return dailiesSummaryDecoder.decodeAll(body);
+            },
+            garminUserId, startSeconds, endSeconds));
+    return summaries != null ? summaries : List.of();
+  }
+
+  private <T> T call(GarminEndpoint endpoint, String garminUserId, Supplier<T> request) {
+    long start = System.nanoTime();
+    Outcome outcome = Outcome.SUCCESS;
+    try {
+      return callWithRetries(endpoint, garminUserId, request);
+    } catch (RuntimeException e) {
+      outcome = Outcome.of(e);
+      throw e;
+    } finally {
+      calls.get(endpoint).get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private <T> T callWithRetries(GarminEndpoint endpoint, String garminUserId, Supplier<T> request) {
+    int maxAttempts = endpoint.isIdempotent() ? Math.max(1, retryMaxAttempts) : 1;
+    for (int attempt = 1;; attempt++) {
+      try {
+        return attempt(endpoint, garminUserId, request);
+      } catch (ResourceAccessException | HttpServerErrorException e) {
+        if (attempt >= maxAttempts || isPoolExhausted(e)) {
+          throw e;
+        }
+        long ceiling = Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        log.debug("Garmin {} call failed (attempt {} of {}), retrying in {} ms: {}", endpoint.tag(), attempt,
+            maxAttempts, delay, e.getMessage());
+        retries.get(endpoint).increment();
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  private <T> T attempt(GarminEndpoint endpoint, String garminUserId, Supplier<T> request) {
+    // Wait for the rate limiter before asking the breaker, so a queued call
+    // does not hold a half-open trial slot while it waits
+    rateLimiter.acquire(garminUserId, RequestPriority.current());
+    CircuitBreaker breaker = circuitBreakers.get(endpoint);
+    CircuitBreaker.Permit permit = breaker.tryAcquire();
+    if (permit == null) {
+      throw new GarminUnavailableException("Garmin " + endpoint.tag() + " endpoint is unavailable",
+          breaker.retryAfter());
+    }
+    try {
+      T result = request.get();
+      permit.onSuccess();
+      rateLimiter.onSuccess();
+      return result;
+    } catch (HttpClientErrorException.TooManyRequests e) {
+      permit.onIgnored();
+      Duration retryAfter = retryAfter(e.getResponseHeaders());
+      rateLimiter.onThrottled(garminUserId, retryAfter);
+      throw new GarminRateLimitException("Garmin API rate limit hit", retryAfter);
+    } catch (HttpClientErrorException e) {
+      // Garmin answered; the request was wrong, not the service
+      permit.onSuccess();
+      throw e;
+    } catch (RestClientException e) {
+      if (isPoolExhausted(e)) {
+        permit.onIgnored();
+      } else {
+        permit.onFailure();
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      permit.onIgnored();
+      throw e;
+    }
+  }
+
+  // No pooled connection was free within the pool acquire timeout
+  private static boolean isPoolExhausted(RuntimeException e) {
+    return e instanceof ResourceAccessException && e.getCause() instanceof ConnectionRequestTimeoutException;
+  }
+
+  // Retry-After is either delta-seconds or an HTTP date
+  private Duration retryAfter(HttpHeaders headers) {
+    String value = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+    if (value != null) {
+      try {
+        return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+      } catch (NumberFormatException e) {
+        try {
+          Duration until = Duration.between(Instant.now(),
+              ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+          return until.isNegative() ? Duration.ZERO : until;
+        } catch (DateTimeParseException ignored) {
+          log.debug("Ignoring unparseable Retry-After header: {}", value);
+        }
+      }
+    }
+    return Duration.ofMillis(defaultRetryAfterMs);
+  }
+}
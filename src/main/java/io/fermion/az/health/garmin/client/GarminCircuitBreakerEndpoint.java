@@ -0,0 +1,28 @@
+package io.fermion.az.health.garmin.client;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/circuitbreakers}: state of the Garmin circuit breakers.
+ * Deliberately not a health indicator, so a Garmin outage does not mark this
+ * service as down.
+ */
+@Component
+@Endpoint(id = "circuitbreakers")
+public class GarminCircuitBreakerEndpoint {
+
+  private final GarminCircuitBreakers breakers;
+
+  public GarminCircuitBreakerEndpoint(GarminCircuitBreakers breakers) {
+    this.breakers = breakers;
+  }
+
+  @ReadOperation
+  public Map<GarminEndpoint, CircuitBreaker.Snapshot> circuitBreakers() {
+    return breakers.snapshots();
+  }
+}
@@ -0,0 +1,50 @@
+package io.fermion.az.health.garmin.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One {@link CircuitBreaker} per {@link GarminEndpoint}, so an outage of the
+ * token service does not stop dailies fetches and vice versa. State is
+ * exported as {@code garmin.circuit.state} (0 closed, 1 half-open, 2 open).
+ */
+@Component
+public class GarminCircuitBreakers {
+
+  private final Map<GarminEndpoint, CircuitBreaker> breakers = new EnumMap<>(GarminEndpoint.class);
+
+  public GarminCircuitBreakers(
+      @Value("${garmin.resilience.breaker.window-size:20}") int windowSize,
+      @Value("${garmin.resilience.breaker.minimum-calls:10}") int minimumCalls,
+      @Value("${garmin.resilience.breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+      @Value("${garmin.resilience.breaker.open-ms:30000}") long openMs,
+      @Value("${garmin.resilience.breaker.half-open-calls:3}") int halfOpenCalls,
+      MeterRegistry meterRegistry) {
+    for (GarminEndpoint endpoint : GarminEndpoint.values()) {
+      CircuitBreaker breaker = new CircuitBreaker("garmin-" + endpoint.tag(), windowSize, minimumCalls,
+          failureRateThreshold, Duration.ofMillis(openMs), halfOpenCalls);
+      breakers.put(endpoint, breaker);
+      Gauge.builder("garmin.circuit.state", breaker, b -> b.state().ordinal())
+          .tag("endpoint", endpoint.tag())
+          .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+          .register(meterRegistry);
+    }
+  }
+
+  public CircuitBreaker get(GarminEndpoint endpoint) {
+    return breakers.get(endpoint);
+  }
+
+  public Map<GarminEndpoint, CircuitBreaker.Snapshot> snapshots() {
+    Map<GarminEndpoint, CircuitBreaker.Snapshot> snapshots = new EnumMap<>(GarminEndpoint.class);
+    breakers.forEach((endpoint, breaker) -> snapshots.put(endpoint, breaker.snapshot()));
+    return snapshots;
+  }
+}
@@ -0,0 +1,27 @@
+package io.fermion.az.health.garmin.client;
+
+/**
+ * Garmin endpoints called by {@link GarminApiClient}; each has its own
+ * circuit breaker.
+ */
+public enum GarminEndpoint {
+  TOKEN(false), USER_ID(true), DAILIES(true);
+
+  private final boolean idempotent;
+
+  GarminEndpoint(boolean idempotent) {
+    this.idempotent = idempotent;
+  }
+
+  /**
+   * Whether a failed call may be retried. Token requests are not: a refresh
+   * rotates the refresh token even if the response is lost.
+   */
+  public boolean isIdempotent() {
+    return idempotent;
+  }
+
+  public String tag() {
+    return name().toLowerCase();
+  }
+}
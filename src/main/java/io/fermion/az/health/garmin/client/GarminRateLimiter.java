@@ -0,0 +1,289 @@
+package io.fermion.az.health.garmin.client;
+
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client-side budget for outbound Garmin calls.
+ *
+ * Every call takes one token from a global bucket and, when it is made for a
+ * known Garmin user, one from that user's bucket. Callers that cannot proceed
+ * wait in a queue ordered by {@link RequestPriority} and then arrival, and
+ * background calls leave a reserve of global tokens for interactive ones. A
+ * caller that would wait past its deadline gets a
+ * {@link GarminRateLimitException} saying when to retry.
+ *
+ * A 429 from Garmin pauses the global bucket for the Retry-After period and
+ * halves its refill rate; each successful call then restores a little of the
+ * configured rate.
+ */
+@Component
+public class GarminRateLimiter {
+
+  private static final Logger log = LoggerFactory.getLogger(GarminRateLimiter.class);
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final double globalRate;
+  private final double minGlobalRate;
+  private final double userRate;
+  private final double userBurst;
+  private final double backgroundReserve;
+  private final long interactiveMaxWaitNanos;
+  private final long backgroundMaxWaitNanos;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final TokenBucket global;
+  private final Map<String, TokenBucket> userBuckets = new HashMap<>();
+  private final TreeSet<Waiter> waiters = new TreeSet<>(
+      Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+  private long nextSequence;
+
+  private final Counter throttled;
+  private final Counter rejectedInteractive;
+  private final Counter rejectedBackground;
+
+  public GarminRateLimiter(
+      @Value("${garmin.rate-limit.global-per-second:10}") double globalRate,
+      @Value("${garmin.rate-limit.global-burst:20}") double globalBurst,
+      @Value("${garmin.rate-limit.user-per-second:1}") double userRate,
+      @Value("${garmin.rate-limit.user-burst:5}") double userBurst,
+      @Value("${garmin.rate-limit.background-reserve:5}") double backgroundReserve,
+      @Value("${garmin.rate-limit.interactive-max-wait-ms:2000}") long interactiveMaxWaitMs,
+      @Value("${garmin.rate-limit.background-max-wait-ms:60000}") long backgroundMaxWaitMs,
+      MeterRegistry meterRegistry) {
+    // A background call needs 1 + background-reserve global tokens at once;
+    // with a smaller bucket it could never proceed.
+    if (globalBurst < 1 + backgroundReserve) {
+      throw new IllegalArgumentException("garmin.rate-limit.global-burst (" + globalBurst
+          + ") must be at least 1 + garmin.rate-limit.background-reserve (" + backgroundReserve + ")");
+    }
+    if (userBurst < 1) {
+      throw new IllegalArgumentException("garmin.rate-limit.user-burst (" + userBurst + ") must be at least 1");
+    }
+    this.globalRate = globalRate;
+    this.minGlobalRate = globalRate / 16;
+    this.userRate = userRate;
+    this.userBurst = userBurst;
+    this.backgroundReserve = backgroundReserve;
+    this.interactiveMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(interactiveMaxWaitMs);
+    this.backgroundMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(backgroundMaxWaitMs);
+    this.global = new TokenBucket(globalBurst, globalRate, System.nanoTime());
+
+    this.throttled = Counter.builder("garmin.ratelimit.throttled")
+        .description("429 responses received from Garmin").register(meterRegistry);
+    this.rejectedInteractive = Counter.builder("garmin.ratelimit.rejected").tag("priority", "interactive")
+        .description("Calls not made because the rate limit wait exceeded the deadline").register(meterRegistry);
+    this.rejectedBackground = Counter.builder("garmin.ratelimit.rejected").tag("priority", "background")
+        .description("Calls not made because the rate limit wait exceeded the deadline").register(meterRegistry);
+    Gauge.builder("garmin.ratelimit.waiting", this, GarminRateLimiter::waiting)
+        .description("Callers queued for a rate limit token").register(meterRegistry);
+    Gauge.builder("garmin.ratelimit.rate", this, GarminRateLimiter::currentRate)
+        .description("Current global refill rate in calls per second").register(meterRegistry);
+  }
+
+  private record Waiter(RequestPriority priority, long sequence, String userKey) {
+  }
+
+  /**
+   * Block until a call for {@code userKey} (may be {@code null}) is within
+   * budget.
+   *
+   * @throws GarminRateLimitException if the wait would exceed the deadline
+   *                                  for {@code priority}
+   */
+  public void acquire(String userKey, RequestPriority priority) {
+    long deadline = System.nanoTime()
+        + (priority == RequestPriority.INTERACTIVE ? interactiveMaxWaitNanos : backgroundMaxWaitNanos);
+    lock.lock();
+    try {
+      Waiter waiter = new Waiter(priority, nextSequence++, userKey);
+      waiters.add(waiter);
+      try {
+        while (true) {
+          long now = System.nanoTime();
+          long waitNanos = waitNanos(waiter, now);
+          if (waitNanos == 0) {
+            global.take(now);
+            if (userKey != null) {
+              userBucket(userKey, now).take(now);
+            }
+            return;
+          }
+          if (now + waitNanos > deadline) {
+            (priority == RequestPriority.INTERACTIVE ? rejectedInteractive : rejectedBackground).increment();
+            throw new GarminRateLimitException("Garmin API rate limit exhausted",
+                Duration.ofNanos(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1))));
+          }
+          changed.awaitNanos(waitNanos);
+        }
+      } finally {
+        waiters.remove(waiter);
+        changed.signalAll();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GarminApiException("Interrupted waiting for the Garmin rate limit", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Garmin answered 429: stop calling for {@code retryAfter} and slow down.
+   */
+  public void onThrottled(String userKey, Duration retryAfter) {
+    throttled.increment();
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      global.pauseUntil(now + retryAfter.toNanos());
+      global.setRate(Math.max(minGlobalRate, global.rate() / 2), now);
+      if (userKey != null) {
+        userBucket(userKey, now).pauseUntil(now + retryAfter.toNanos());
+      }
+      log.warn("Garmin returned 429; pausing calls for {} s, global rate now {}/s", retryAfter.toSeconds(),
+          String.format("%.2f", global.rate()));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void onSuccess() {
+    if (global.rate() >= globalRate) {
+      return;
+    }
+    lock.lock();
+    try {
+      global.setRate(Math.min(globalRate, global.rate() + globalRate / 20), System.nanoTime());
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int waiting() {
+    lock.lock();
+    try {
+      return waiters.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public double currentRate() {
+    return global.rate();
+  }
+
+  /**
+   * Drop per-user buckets that have refilled completely; they hold no state.
+   */
+  @Scheduled(fixedDelayString = "${garmin.rate-limit.prune-ms:60000}")
+  public void prune() {
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      userBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Caller holds the lock. 0 if the waiter may proceed now.
+  private long waitNanos(Waiter waiter, long now) {
+    // Waiters ahead of us whose own user bucket lets them go have precedence
+    for (Waiter ahead : waiters.headSet(waiter)) {
+      if (ahead.userKey() == null || userBucket(ahead.userKey(), now).nanosUntil(1, now) == 0) {
+        return Math.max(global.nanosUntil(1, now), TimeUnit.MILLISECONDS.toNanos(1));
+      }
+    }
+    double required = waiter.priority() == RequestPriority.INTERACTIVE ? 1 : 1 + backgroundReserve;
+    long wait = global.nanosUntil(required, now);
+    if (waiter.userKey() != null) {
+      wait = Math.max(wait, userBucket(waiter.userKey(), now).nanosUntil(1, now));
+    }
+    return wait;
+  }
+
+  private TokenBucket userBucket(String userKey, long now) {
+    return userBuckets.computeIfAbsent(userKey, key -> new TokenBucket(userBurst, userRate, now));
+  }
+
+  // Not thread-safe; guarded by the limiter's lock except for rate reads
+  private static final class TokenBucket {
+    private final double capacity;
+    private volatile double rate;
+    private double tokens;
+    private long refilledAt;
+    private long pausedUntil;
+
+    TokenBucket(double capacity, double rate, long now) {
+      this.capacity = capacity;
+      this.rate = rate;
+      this.tokens = capacity;
+      this.refilledAt = now;
+    }
+
+    double rate() {
+      return rate;
+    }
+
+    void setRate(double rate, long now) {
+      refill(now);
+      this.rate = rate;
+    }
+
+    void pauseUntil(long until) {
+      pausedUntil = Math.max(pausedUntil, until);
+      tokens = Math.min(tokens, 0);
+    }
+
+    long nanosUntil(double required, long now) {
+      refill(now);
+      long paused = Math.max(0, pausedUntil - now);
+      if (tokens >= required) {
+        return paused;
+      }
+      return paused + (long) Math.ceil((required - tokens) / rate * NANOS_PER_SECOND);
+    }
+
+    void take(long now) {
+      refill(now);
+      tokens -= 1;
+    }
+
+    boolean isFull(long now) {
+      refill(now);
+      return tokens >= capacity && pausedUntil <= now;
+    }
+
+    private void refill(long now) {
+      if (now > refilledAt) {
+        // Nothing accrues while paused
+        long from = Math.max(refilledAt, pausedUntil);
+        if (now > from) {
+          tokens = Math.min(capacity, tokens + (now - from) * rate / NANOS_PER_SECOND);
+        }
+        refilledAt = now;
+      }
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package io.fermion.az.health.garmin.client;
+
+import java.util.function.Supplier;
+
+/**
+ * Priority of outbound Garmin calls made on the current thread. Calls are
+ * {@link #INTERACTIVE} unless made inside {@link #runAs}.
+ */
+public enum RequestPriority {
+  INTERACTIVE, BACKGROUND;
+
+  private static final ThreadLocal<RequestPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+  public static RequestPriority current() {
+    return CURRENT.get();
+  }
+
+  public static <T> T runAs(RequestPriority priority, Supplier<T> work) {
+    RequestPriority previous = CURRENT.get();
+    CURRENT.set(priority);
+    try {
+      return work.get();
+    } finally {
+      CURRENT.set(previous);
+    }
+  }
+}
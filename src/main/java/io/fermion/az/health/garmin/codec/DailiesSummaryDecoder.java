@@ -0,0 +1,137 @@
+package io.fermion.az.health.garmin.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming decoder for Garmin dailies documents.
+ *
+ * Accepts a bare array of summaries (pull API, webhook batches), a push
+ * notification object of the form {@code {"dailies": [...]}}, or a single
+ * summary object. Elements are bound one at a time with a pre-built
+ * {@link ObjectReader}, so the document is never materialized as a tree.
+ */
+@Component
+public class DailiesSummaryDecoder {
+
+  private static final String DAILIES_FIELD = "dailies";
+
+  private final JsonFactory jsonFactory;
+  private final ObjectReader summaryReader;
+
+  public DailiesSummaryDecoder(ObjectMapper objectMapper) {
+    this.jsonFactory = objectMapper.getFactory();
+    this.summaryReader = objectMapper.readerFor(DailiesSummary.class);
+  }
+
+  /**
+   * Decode a document, handing each summary to {@code sink} as soon as it is
+   * read.
+   *
+   * @return the number of summaries decoded
+   */
+  public int decode(InputStream in, Consumer<DailiesSummary> sink) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(in)) {
+      return decode(parser, sink);
+    }
+  }
+
+  public int decode(byte[] content, Consumer<DailiesSummary> sink) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(content)) {
+      return decode(parser, sink);
+    }
+  }
+
+  public List<DailiesSummary> decodeAll(InputStream in) throws IOException {
+    List<DailiesSummary> summaries = new ArrayList<>();
+    decode(in, summaries::add);
+    return summaries;
+  }
+
+  public List<DailiesSummary> decodeAll(byte[] content) throws IOException {
+    List<DailiesSummary> summaries = new ArrayList<>();
+    decode(content, summaries::add);
+    return summaries;
+  }
+
+  private int decode(JsonParser parser, Consumer<DailiesSummary> sink) throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == null) {
+      return 0;
+    }
+    if (token == JsonToken.START_ARRAY) {
+      return readArray(parser, sink);
+    }
+    if (token != JsonToken.START_OBJECT) {
+      throw new IOException("Expected a JSON array or object of dailies, got " + token);
+    }
+    return readObject(parser, sink);
+  }
+
+  /**
+   * A root object is either a push notification holding a {@code dailies}
+   * array, which is streamed, or a single summary. Other fields are buffered
+   * as tokens until we know which, so the single-summary case still binds
+   * without building a tree.
+   */
+  private int readObject(JsonParser parser, Consumer<DailiesSummary> sink) throws IOException {
+    int count = 0;
+    boolean notification = false;
+    TokenBuffer fields = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.currentName();
+      JsonToken value = parser.nextToken();
+      if (DAILIES_FIELD.equals(name) && value == JsonToken.START_ARRAY) {
+        notification = true;
+        count += readArray(parser, sink);
+      } else if (notification) {
+        parser.skipChildren();
+      } else {
+        if (fields == null) {
+          fields = new TokenBuffer(parser.getCodec(), false);
+          fields.writeStartObject();
+        }
+        fields.writeFieldName(name);
+        fields.copyCurrentStructure(parser);
+      }
+    }
+    if (notification) {
+      return count;
+    }
+    if (fields == null) {
+      fields = new TokenBuffer(parser.getCodec(), false);
+      fields.writeStartObject();
+    }
+    fields.writeEndObject();
+    try (JsonParser buffered = fields.asParser()) {
+      sink.accept(summaryReader.readValue(buffered));
+    }
+    return 1;
+  }
+
+  private int readArray(JsonParser parser, Consumer<DailiesSummary> sink) throws IOException {
+    int count = 0;
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      sink.accept(summaryReader.readValue(parser));
+      count++;
+    }
+    if (parser.currentToken() != JsonToken.END_ARRAY) {
+      throw new IOException("Expected dailies array elements to be objects, got " + parser.currentToken());
+    }
+    return count;
+  }
+}
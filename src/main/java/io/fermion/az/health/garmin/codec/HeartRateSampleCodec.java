@@ -0,0 +1,282 @@
+package io.fermion.az.health.garmin.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Binary form of Garmin's {@code timeOffsetHeartRateSamples}, a JSON object
+ * mapping seconds since the start of the day to beats per minute, e.g.
+ * {@code {"0":62,"15":63,"30":63}}.
+ *
+ * Samples are sorted by offset and split into blocks of {@value #BLOCK_SIZE}.
+ * Each sample is two varints: the offset minus the previous offset, and the
+ * zigzag-encoded BPM minus the previous BPM. Both are usually one byte. Each
+ * block starts from its own first offset and a BPM of 0, so it decodes on
+ * its own. A fixed-width index of each block's first offset and position
+ * lets {@link #forEach(byte[], int, int, SampleConsumer)} binary-search to
+ * the first block of a time window and stop after its last one.
+ *
+ * <pre>
+ * byte    version (1)
+ * varint  sample count
+ * varint  block count
+ * block count x (int32 first offset, int32 data position)
+ * data
+ * </pre>
+ */
+public final class HeartRateSampleCodec {
+
+  public static final int BLOCK_SIZE = 64;
+
+  private static final byte VERSION = 1;
+  private static final int INDEX_ENTRY_BYTES = 8;
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private HeartRateSampleCodec() {
+  }
+
+  /**
+   * Receives samples in offset order. Offsets and BPM are passed as
+   * primitives so a scan allocates nothing per sample.
+   */
+  @FunctionalInterface
+  public interface SampleConsumer {
+    void accept(int offsetSeconds, int bpm);
+  }
+
+  /**
+   * Encode the JSON form.
+   *
+   * @return {@code null} for {@code null} input
+   * @throws IllegalArgumentException if {@code json} is not an object of
+   *                                  integer offsets to integer BPM
+   */
+  public static byte[] fromJson(String json) {
+    if (json == null) {
+      return null;
+    }
+    int[] offsets = new int[256];
+    int[] bpms = new int[256];
+    int count = 0;
+    try (JsonParser parser = FACTORY.createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException("Heart rate samples must be a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        int offset = Integer.parseInt(parser.currentName());
+        if (parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+          throw new IllegalArgumentException("Heart rate sample at " + offset + " is not an integer");
+        }
+        if (count == offsets.length) {
+          offsets = Arrays.copyOf(offsets, count * 2);
+          bpms = Arrays.copyOf(bpms, count * 2);
+        }
+        offsets[count] = offset;
+        bpms[count] = parser.getIntValue();
+        count++;
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid heart rate samples: " + e.getMessage(), e);
+    }
+    return encode(offsets, bpms, count);
+  }
+
+  /**
+   * Encode the first {@code count} samples. The arrays are sorted in place
+   * by offset if they are not already.
+   */
+  public static byte[] encode(int[] offsets, int[] bpms, int count) {
+    sortByOffset(offsets, bpms, count);
+    int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    ByteArrayOutputStream data = new ByteArrayOutputStream(count * 2 + 16);
+    int[] blockOffsets = new int[blocks];
+    int[] blockPositions = new int[blocks];
+    int previousOffset = 0;
+    int previousBpm = 0;
+    for (int i = 0; i < count; i++) {
+      if (i % BLOCK_SIZE == 0) {
+        blockOffsets[i / BLOCK_SIZE] = offsets[i];
+        blockPositions[i / BLOCK_SIZE] = data.size();
+        previousOffset = offsets[i];
+        previousBpm = 0;
+      }
+      writeVarint(data, offsets[i] - previousOffset);
+      writeVarint(data, zigzag(bpms[i] - previousBpm));
+      previousOffset = offsets[i];
+      previousBpm = bpms[i];
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.size() + blocks * INDEX_ENTRY_BYTES + 12);
+    out.write(VERSION);
+    writeVarint(out, count);
+    writeVarint(out, blocks);
+    for (int b = 0; b < blocks; b++) {
+      writeInt(out, blockOffsets[b]);
+      writeInt(out, blockPositions[b]);
+    }
+    out.writeBytes(data.toByteArray());
+    return out.toByteArray();
+  }
+
+  public static int sampleCount(byte[] encoded) {
+    checkVersion(encoded);
+    return (int) readVarint(encoded, 1);
+  }
+
+  /**
+   * Pass every sample to {@code consumer}.
+   */
+  public static void forEach(byte[] encoded, SampleConsumer consumer) {
+    forEach(encoded, Integer.MIN_VALUE, Integer.MAX_VALUE, consumer);
+  }
+
+  /**
+   * Pass the samples with {@code fromOffset <= offset < toOffset} to
+   * {@code consumer}. Only the blocks overlapping the window are decoded.
+   */
+  public static void forEach(byte[] encoded, int fromOffset, int toOffset, SampleConsumer consumer) {
+    checkVersion(encoded);
+    long countAndEnd = readVarint(encoded, 1);
+    int count = (int) countAndEnd;
+    int position = (int) (countAndEnd >>> 32);
+    long blocksAndEnd = readVarint(encoded, position);
+    int blocks = (int) blocksAndEnd;
+    int indexStart = (int) (blocksAndEnd >>> 32);
+    int dataStart = indexStart + blocks * INDEX_ENTRY_BYTES;
+    if (count == 0 || fromOffset >= toOffset) {
+      return;
+    }
+
+    // Last block whose first offset is <= fromOffset; earlier blocks end before the window
+    int low = 0;
+    int high = blocks - 1;
+    int block = 0;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (readInt(encoded, indexStart + mid * INDEX_ENTRY_BYTES) <= fromOffset) {
+        block = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    int sample = block * BLOCK_SIZE;
+    position = dataStart + readInt(encoded, indexStart + block * INDEX_ENTRY_BYTES + 4);
+    int offset = 0;
+    int bpm = 0;
+    for (; sample < count; sample++) {
+      if (sample % BLOCK_SIZE == 0) {
+        offset = readInt(encoded, indexStart + (sample / BLOCK_SIZE) * INDEX_ENTRY_BYTES);
+        bpm = 0;
+      }
+      long delta = readVarint(encoded, position);
+      offset += (int) delta;
+      position = (int) (delta >>> 32);
+      long bpmDelta = readVarint(encoded, position);
+      bpm += unzigzag((int) bpmDelta);
+      position = (int) (bpmDelta >>> 32);
+      if (offset >= toOffset) {
+        return;
+      }
+      if (offset >= fromOffset) {
+        consumer.accept(offset, bpm);
+      }
+    }
+  }
+
+  /**
+   * The JSON form, with samples in offset order.
+   *
+   * @return {@code null} for {@code null} input
+   */
+  public static String toJson(byte[] encoded) {
+    if (encoded == null) {
+      return null;
+    }
+    StringBuilder json = new StringBuilder(sampleCount(encoded) * 10 + 2).append('{');
+    forEach(encoded, (offset, bpm) -> {
+      if (json.length() > 1) {
+        json.append(',');
+      }
+      json.append('"').append(offset).append("\":").append(bpm);
+    });
+    return json.append('}').toString();
+  }
+
+  private static void checkVersion(byte[] encoded) {
+    if (encoded.length == 0 || encoded[0] != VERSION) {
+      throw new IllegalArgumentException("Unsupported heart rate sample encoding");
+    }
+  }
+
+  private static void sortByOffset(int[] offsets, int[] bpms, int count) {
+    boolean sorted = true;
+    for (int i = 1; i < count && sorted; i++) {
+      sorted = offsets[i - 1] <= offsets[i];
+    }
+    if (sorted) {
+      return;
+    }
+    long[] pairs = new long[count];
+    for (int i = 0; i < count; i++) {
+      pairs[i] = ((long) offsets[i] << 32) | (bpms[i] & 0xFFFFFFFFL);
+    }
+    Arrays.sort(pairs);
+    for (int i = 0; i < count; i++) {
+      offsets[i] = (int) (pairs[i] >> 32);
+      bpms[i] = (int) pairs[i];
+    }
+  }
+
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Read an unsigned varint at {@code position}.
+   *
+   * @return the value in the low 32 bits and the position after it in the
+   *         high 32 bits, so the caller needs no holder object
+   */
+  private static long readVarint(byte[] in, int position) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in[position++];
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return ((long) position << 32) | (value & 0xFFFFFFFFL);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  private static int readInt(byte[] in, int position) {
+    return ((in[position] & 0xFF) << 24) | ((in[position + 1] & 0xFF) << 16)
+        | ((in[position + 2] & 0xFF) << 8) | (in[position + 3] & 0xFF);
+  }
+}
@@ -0,0 +1,33 @@
+package io.fermion.az.health.garmin.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Deserializes any JSON value into its compact JSON text. Garmin sends fields
+ * such as {@code timeOffsetHeartRateSamples} as nested objects that we keep as
+ * a string; the structure is copied token by token without building a tree.
+ */
+public class RawJsonStringDeserializer extends JsonDeserializer<String> {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  @Override
+  public String deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+    if (p.currentToken() == JsonToken.VALUE_STRING) {
+      return p.getText();
+    }
+    StringWriter out = new StringWriter();
+    try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+      generator.copyCurrentStructure(p);
+    }
+    return out.toString();
+  }
+}
@@ -0,0 +1,74 @@
+package io.fermion.az.health.garmin.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one execution.
+ *
+ * The first caller for a key runs the work; callers arriving while it is in
+ * flight wait for and share its result, or its exception. Nothing is cached:
+ * once the work completes the next caller starts a new execution.
+ */
+public final class SingleFlight<K, V> {
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder executions = new LongAdder();
+  private final LongAdder shared = new LongAdder();
+
+  public V execute(K key, Supplier<V> work) {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+    if (existing != null) {
+      shared.increment();
+      return await(existing);
+    }
+    executions.increment();
+    try {
+      V result = work.get();
+      flight.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, flight);
+    }
+  }
+
+  public int inFlight() {
+    return inFlight.size();
+  }
+
+  /**
+   * Number of executions actually run.
+   */
+  public long executions() {
+    return executions.sum();
+  }
+
+  /**
+   * Number of calls that joined another caller's execution.
+   */
+  public long shared() {
+    return shared.sum();
+  }
+
+  private static <V> V await(CompletableFuture<V> flight) {
+    try {
+      return flight.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException runtime) {
+        throw runtime;
+      }
+      if (cause instanceof Error error) {
+        throw error;
+      }
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package io.fermion.az.health.garmin.concurrent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PreDestroy;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier thread,
+ * typically inside a {@code synchronized} block or a native frame.
+ *
+ * Active only when virtual threads are enabled. Listens for JFR
+ * {@code jdk.VirtualThreadPinned} events longer than the threshold, counts
+ * them in {@code jvm.threads.virtual.pinned} and logs the stack the first
+ * time each pinning site is seen.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+  private static final int LOGGED_FRAMES = 40;
+
+  private final Counter pinned;
+  private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+  private final Duration threshold;
+  private RecordingStream stream;
+
+  public VirtualThreadPinningMonitor(
+      @Value("${garmin.virtual-threads.pinning-threshold-ms:20}") long thresholdMs,
+      MeterRegistry meterRegistry) {
+    this.threshold = Duration.ofMillis(thresholdMs);
+    this.pinned = Counter.builder("jvm.threads.virtual.pinned")
+        .description("Virtual threads that blocked while pinned to their carrier").register(meterRegistry);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    stream = new RecordingStream();
+    stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+    stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+    stream.startAsync();
+    log.info("Watching for virtual threads pinned longer than {} ms", threshold.toMillis());
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (stream != null) {
+      stream.close();
+    }
+  }
+
+  private void onPinned(RecordedEvent event) {
+    pinned.increment();
+    RecordedStackTrace stackTrace = event.getStackTrace();
+    List<RecordedFrame> frames = stackTrace == null ? List.of() : stackTrace.getFrames();
+    String site = pinningSite(frames);
+    if (!reportedSites.add(site)) {
+      return;
+    }
+    StringBuilder stack = new StringBuilder();
+    for (RecordedFrame frame : frames.subList(0, Math.min(LOGGED_FRAMES, frames.size()))) {
+      stack.append("\n\tat ").append(describe(frame));
+    }
+    log.warn("Virtual thread pinned for {} ms at {}; further pinning here is only counted{}",
+        event.getDuration().toMillis(), site, stack);
+  }
+
+  // The innermost frame outside the JDK, which is usually what holds the monitor
+  private static String pinningSite(List<RecordedFrame> frames) {
+    for (RecordedFrame frame : frames) {
+      String type = frame.getMethod().getType().getName();
+      if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+        return describe(frame);
+      }
+    }
+    return frames.isEmpty() ? "unknown" : describe(frames.get(0));
+  }
+
+  private static String describe(RecordedFrame frame) {
+    return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+  }
+}
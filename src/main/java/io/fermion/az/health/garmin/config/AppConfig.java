@@ -1,14 +1,93 @@
 package io.fermion.az.health.garmin.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class AppConfig {
 
+  @Value("${garmin.http.max-connections:50}")
+  private int maxConnections;
+
+  @Value("${garmin.http.max-connections-per-route:20}")
+  private int maxConnectionsPerRoute;
+
+  @Value("${garmin.http.connect-timeout-ms:3000}")
+  private long connectTimeoutMs;
+
+  @Value("${garmin.http.response-timeout-ms:10000}")
+  private long responseTimeoutMs;
+
+  @Value("${garmin.http.pool-acquire-timeout-ms:2000}")
+  private long poolAcquireTimeoutMs;
+
+  @Value("${garmin.http.idle-eviction-ms:30000}")
+  private long idleEvictionMs;
+
+  @Value("${garmin.http.connection-ttl-ms:300000}")
+  private long connectionTtlMs;
+
+  @Bean
+  public PoolingHttpClientConnectionManager garminConnectionManager() {
+    return PoolingHttpClientConnectionManagerBuilder.create()
+        .setMaxConnTotal(maxConnections)
+        .setMaxConnPerRoute(maxConnectionsPerRoute)
+        .setDefaultConnectionConfig(ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+            .setSocketTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+            .setTimeToLive(TimeValue.ofMilliseconds(connectionTtlMs))
+            .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+            .build())
+        .build();
+  }
+
+  /**
+   * Client used for every Garmin API call. Connections are kept alive and
+   * reused from the pool; a caller waits at most the pool-acquire timeout for
+   * a free connection, so a slow Garmin fails requests fast instead of piling
+   * up servlet threads. Gzip/deflate responses are decoded transparently.
+   */
+  @Bean
+  public CloseableHttpClient garminHttpClient(PoolingHttpClientConnectionManager garminConnectionManager) {
+    return HttpClients.custom()
+        .setConnectionManager(garminConnectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolAcquireTimeoutMs))
+            .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+            .build())
+        .evictExpiredConnections()
+        .evictIdleConnections(TimeValue.ofMilliseconds(idleEvictionMs))
+        .build();
+  }
+
+  /**
+   * Built from Boot's {@link RestTemplateBuilder} so requests are observed as
+   * {@code http.client.requests}, tagged by URI template.
+   */
+  @Bean
+  public RestTemplate restTemplate(RestTemplateBuilder builder, CloseableHttpClient garminHttpClient) {
+    return builder
+        .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(garminHttpClient))
+        .build();
+  }
+
   @Bean
-  public RestTemplate restTemplate() {
-    return new RestTemplate();
+  public MeterBinder garminConnectionPoolMetrics(PoolingHttpClientConnectionManager garminConnectionManager) {
+    return new PoolingHttpClientConnectionManagerMetricsBinder(garminConnectionManager, "garmin");
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package io.fermion.az.health.garmin.controller;
+
+import io.fermion.az.health.garmin.dto.BackfillStatus;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.service.BackfillService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historical dailies backfill jobs. Jobs run in the background; poll
+ * {@code GET /api/garmin/backfill/{jobId}} for progress.
+ */
+@RestController
+@RequestMapping("/api/garmin/backfill")
+@RequiredArgsConstructor
+public class BackfillController {
+
+  private final BackfillService backfillService;
+
+  @PostMapping
+  public ResponseEntity<?> start(
+      @RequestParam String userId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+    try {
+      return ResponseEntity.status(HttpStatus.ACCEPTED).body(backfillService.start(userId, startDate, endDate));
+    } catch (IllegalArgumentException | GarminApiException e) {
+      return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+    }
+  }
+
+  @GetMapping
+  public List<BackfillStatus> jobs(@RequestParam String userId) {
+    return backfillService.jobsForUser(userId);
+  }
+
+  @GetMapping("/{jobId}")
+  public ResponseEntity<BackfillStatus> status(@PathVariable String jobId) {
+    return ResponseEntity.of(backfillService.status(jobId));
+  }
+
+  @PostMapping("/{jobId}/resume")
+  public ResponseEntity<BackfillStatus> resume(@PathVariable String jobId) {
+    return backfillService.resume(jobId)
+        .map(status -> ResponseEntity.status(HttpStatus.ACCEPTED).body(status))
+        .orElse(ResponseEntity.notFound().build());
+  }
+}
@@ -1,17 +1,42 @@
 package io.fermion.az.health.garmin.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fermion.az.health.garmin.dto.BulkDailiesRequest;
+import io.fermion.az.health.garmin.dto.DailiesResponse;
 import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.dto.HealthData;
+import io.fermion.az.health.garmin.dto.IngestResponse;
 import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
+import io.fermion.az.health.garmin.logging.PayloadLogger;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.service.BackfillService;
+import io.fermion.az.health.garmin.service.DailiesBulkReadService;
+import io.fermion.az.health.garmin.service.DailiesIngestService;
+import io.fermion.az.health.garmin.service.DailiesRangeService;
+import io.fermion.az.health.garmin.service.DailiesReadService;
 import io.fermion.az.health.garmin.service.GarminService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.*;
 
 @RestController
@@ -21,6 +46,13 @@ public class GarminController {
 
   private static final Logger log = LoggerFactory.getLogger(GarminController.class);
   private final GarminService garminService;
+  private final DailiesIngestService ingestService;
+  private final BackfillService backfillService;
+  private final DailiesReadService dailiesReadService;
+  private final DailiesRangeService dailiesRangeService;
+  private final DailiesBulkReadService dailiesBulkReadService;
+  private final ObjectMapper objectMapper;
+  private final PayloadLogger payloadLogger;
 
   /**
    * Step 1: Generate authorization URL
@@ -57,15 +89,10 @@ public class GarminController {
       HttpServletRequest request) {
     
     log.info("=== GARMIN CALLBACK RECEIVED ===");
-    log.info("Request URL: {}", request.getRequestURL());
-    log.info("Query String: {}", request.getQueryString());
-    
-    // Log all parameters
-    Enumeration<String> paramNames = request.getParameterNames();
-    while (paramNames.hasMoreElements()) {
-      String paramName = paramNames.nextElement();
-      String paramValue = request.getParameter(paramName);
-      log.info("Parameter: {} = {}", paramName, paramValue);
+    // The query string carries the authorization code, so it only goes to the redacting payload log
+    if (request.getQueryString() != null) {
+      payloadLogger.log(payloadLogger.capture("oauth.callback", null), "oauth.callback", null,
+          request.getQueryString());
     }
     
     // Check for errors
@@ -89,9 +116,6 @@ public class GarminController {
       return ResponseEntity.badRequest().body(errorResponse);
     }
     
-    log.info("Authorization Code: {}", code);
-    log.info("State: {}", state);
-    
     try {
       // Exchange code for tokens
       log.info("=== EXCHANGING CODE FOR TOKENS ===");
@@ -100,27 +124,31 @@ public class GarminController {
       log.info("=== TOKEN EXCHANGE SUCCESSFUL ===");
       log.info("User ID: {}", tokens.getId().getUserId());
       log.info("Garmin User ID: {}", tokens.getId().getGarminUserId());
+
+      // Load recent history in the background
+      backfillService.startOnConnect(tokens);
       
       // Immediately fetch today's health data
       log.info("=== FETCHING INITIAL HEALTH DATA ===");
       DailiesSummary[] healthData = null;
       try {
-        healthData = garminService.getTodayDailiesSummaryForUser(tokens.getId().getUserId());
-        log.info("Retrieved {} health summaries", healthData != null ? healthData.length : 0);
+        healthData = dailiesReadService.readToday(tokens.getId().getUserId()).summaries()
+            .toArray(new DailiesSummary[0]);
+        log.debug("Retrieved {} health summaries", healthData != null ? healthData.length : 0);
         
         // Log the data details
         if (healthData != null && healthData.length > 0) {
           for (DailiesSummary summary : healthData) {
-            log.info("=== HEALTH DATA SUMMARY ===");
-            log.info("Calendar Date: {}", summary.getCalendarDate());
-            log.info("Steps: {}", summary.getSteps());
-            log.info("Distance (meters): {}", summary.getDistanceInMeters());
-            log.info("Active Calories: {}", summary.getActiveKilocalories());
-            log.info("BMR Calories: {}", summary.getBmrKilocalories());
-            log.info("Floors Climbed: {}", summary.getFloorsClimbed());
-            log.info("Active Time (seconds): {}", summary.getActiveTimeInSeconds());
-            log.info("Average Heart Rate: {}", summary.getAverageHeartRateInBeatsPerMinute());
-            log.info("Resting Heart Rate: {}", summary.getRestingHeartRateInBeatsPerMinute());
+            log.debug("=== HEALTH DATA SUMMARY ===");
+            log.debug("Calendar Date: {}", summary.getCalendarDate());
+            log.debug("Steps: {}", summary.getSteps());
+            log.debug("Distance (meters): {}", summary.getDistanceInMeters());
+            log.debug("Active Calories: {}", summary.getActiveKilocalories());
+            log.debug("BMR Calories: {}", summary.getBmrKilocalories());
+            log.debug("Floors Climbed: {}", summary.getFloorsClimbed());
+            log.debug("Active Time (seconds): {}", summary.getActiveTimeInSeconds());
+            log.debug("Average Heart Rate: {}", summary.getAverageHeartRateInBeatsPerMinute());
+            log.debug("Resting Heart Rate: {}", summary.getRestingHeartRateInBeatsPerMinute());
           }
         }
       } catch (Exception e) {
@@ -169,36 +197,47 @@ public class GarminController {
   }
 
   /**
-   * Fetch today's health data for a user
+   * Fetch today's health data for a user. {@code fields} picks the sections
+   * of {@link HealthData} to return, e.g. {@code fields=activity,heartRate}.
+   *
+   * Data from our store carries an ETag and Last-Modified; a poll that sends
+   * them back gets a 304 while the stored summary is unchanged.
    */
   @GetMapping("/data/today")
-  public ResponseEntity<Map<String, Object>> getTodayData(@RequestParam String userId) {
-    log.info("=== FETCHING TODAY'S DATA ===");
-    log.info("User ID: {}", userId);
+  public ResponseEntity<?> getTodayData(
+      @RequestParam String userId,
+      @RequestParam(required = false) String fields,
+      HttpServletRequest request) {
+    log.debug("=== FETCHING TODAY'S DATA ===");
+    log.debug("User ID: {}", userId);
     
     try {
-      DailiesSummary[] dailies = garminService.getTodayDailiesSummaryForUser(userId);
-      
-      Map<String, Object> response = new HashMap<>();
+      Set<HealthData.Section> sections = HealthData.Section.parse(fields);
+      LocalDate date = LocalDate.now();
+      Optional<ResponseEntity<Void>> notModified = notModified(request, userId, date);
+      if (notModified.isPresent()) {
+        return notModified.get();
+      }
+      DailiesReadService.ReadResult read = dailiesReadService.read(userId, date);
+      List<DailiesSummary> dailies = read.summaries();
       
-      if (dailies != null && dailies.length > 0) {
-        DailiesSummary today = dailies[0];
-        
-        log.info("Steps: {}", today.getSteps());
-        log.info("Distance: {} meters", today.getDistanceInMeters());
-        log.info("Calories: {}", today.getActiveKilocalories());
-        
-        response.put("success", true);
-        response.put("date", today.getCalendarDate());
-        response.put("data", buildHealthDataMap(today));
-        response.put("rawData", dailies);
-      } else {
-        response.put("success", false);
-        response.put("message", "No data available for today");
+      if (dailies.isEmpty()) {
+        return ResponseEntity.ok(new DailiesResponse(false, read.source().tag(), read.lastModifiedAt(), null,
+            null, null, null, "No data available for today"));
       }
+      DailiesSummary today = dailies.get(0);
       
-      return ResponseEntity.ok(response);
+      log.debug("Steps: {}", today.getSteps());
+      log.debug("Distance: {} meters", today.getDistanceInMeters());
+      log.debug("Calories: {}", today.getActiveKilocalories());
+      
+      return withValidators(read, new DailiesResponse(true, read.source().tag(), read.lastModifiedAt(),
+          today.getCalendarDate(), HealthData.of(today, sections), null, rawData(dailies, sections), null));
       
+    } catch (GarminRateLimitException e) {
+      return retryLater(HttpStatus.TOO_MANY_REQUESTS, e.getMessage(), e.getRetryAfter());
+    } catch (GarminUnavailableException e) {
+      return retryLater(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e.getRetryAfter());
     } catch (Exception e) {
       log.error("Error fetching data: {}", e.getMessage(), e);
       
@@ -210,34 +249,42 @@ public class GarminController {
   }
 
   /**
-   * Fetch health data for a specific date
+   * Fetch health data for a specific date; {@code fields} and conditional
+   * requests as for {@code /data/today}.
    */
   @GetMapping("/data/date")
-  public ResponseEntity<Map<String, Object>> getDataByDate(
+  public ResponseEntity<?> getDataByDate(
       @RequestParam String userId,
-      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+      @RequestParam(required = false) String fields,
+      HttpServletRequest request) {
     
-    log.info("Fetching data for user: {} on date: {}", userId, date);
+    log.debug("Fetching data for user: {} on date: {}", userId, date);
     
     try {
-      DailiesSummary[] dailies = garminService.getDailiesSummaryForUser(userId, date);
-      
-      Map<String, Object> response = new HashMap<>();
-      
-      if (dailies != null && dailies.length > 0) {
-        response.put("success", true);
-        response.put("date", date);
-        response.put("summaries", Arrays.stream(dailies)
-            .map(this::buildHealthDataMap)
-            .toArray());
-        response.put("rawData", dailies);
-      } else {
-        response.put("success", false);
-        response.put("message", "No data available for " + date);
+      Set<HealthData.Section> sections = HealthData.Section.parse(fields);
+      Optional<ResponseEntity<Void>> notModified = notModified(request, userId, date);
+      if (notModified.isPresent()) {
+        return notModified.get();
       }
+      DailiesReadService.ReadResult read = dailiesReadService.read(userId, date);
+      List<DailiesSummary> dailies = read.summaries();
       
-      return ResponseEntity.ok(response);
+      if (dailies.isEmpty()) {
+        return ResponseEntity.ok(new DailiesResponse(false, read.source().tag(), read.lastModifiedAt(), null,
+            null, null, null, "No data available for " + date));
+      }
+      List<HealthData> summaries = new ArrayList<>(dailies.size());
+      for (DailiesSummary summary : dailies) {
+        summaries.add(HealthData.of(summary, sections));
+      }
+      return withValidators(read, new DailiesResponse(true, read.source().tag(), read.lastModifiedAt(),
+          date.toString(), null, summaries, rawData(dailies, sections), null));
       
+    } catch (GarminRateLimitException e) {
+      return retryLater(HttpStatus.TOO_MANY_REQUESTS, e.getMessage(), e.getRetryAfter());
+    } catch (GarminUnavailableException e) {
+      return retryLater(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e.getRetryAfter());
     } catch (Exception e) {
       log.error("Error fetching data: {}", e.getMessage());
       
@@ -248,12 +295,84 @@ public class GarminController {
     }
   }
 
+  /**
+   * Stored summaries for a date range, oldest first, one page at a time.
+   * Pass the returned nextCursor to get the following page.
+   */
+  @GetMapping("/data/range")
+  public ResponseEntity<StreamingResponseBody> getDataByRange(
+      @RequestParam String userId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(required = false) Integer pageSize) {
+    DailiesRangeService.RangeQuery query;
+    try {
+      query = dailiesRangeService.query(userId, from, to, cursor, pageSize);
+    } catch (IllegalArgumentException e) {
+      Map<String, Object> errorResponse = Map.of("success", false, "error", e.getMessage());
+      return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+          .body(out -> objectMapper.writeValue(out, errorResponse));
+    }
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+        .body(out -> dailiesRangeService.writePage(query, out));
+  }
+
+  /**
+   * Summaries for many users on one date in a single response. Each user gets
+   * an entry in "results", with their own error if they could not be read.
+   */
+  @PostMapping("/data/bulk")
+  public ResponseEntity<Map<String, Object>> getDataBulk(@RequestBody BulkDailiesRequest request) {
+    LocalDate date = request.date() != null ? request.date() : LocalDate.now();
+    List<DailiesBulkReadService.UserResult> results;
+    try {
+      results = dailiesBulkReadService.readAll(request.userIds(), date);
+    } catch (IllegalArgumentException e) {
+      Map<String, Object> errorResponse = new HashMap<>();
+      errorResponse.put("success", false);
+      errorResponse.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(errorResponse);
+    }
+
+    List<Map<String, Object>> entries = new ArrayList<>(results.size());
+    Map<String, Integer> sources = new TreeMap<>();
+    int failed = 0;
+    for (DailiesBulkReadService.UserResult result : results) {
+      Map<String, Object> entry = new LinkedHashMap<>();
+      entry.put("userId", result.userId());
+      if (result.result() != null) {
+        entry.put("success", true);
+        putSource(entry, result.result());
+        entry.put("summaries", result.result().summaries());
+        sources.merge(result.result().source().tag(), 1, Integer::sum);
+      } else {
+        entry.put("success", false);
+        entry.put("error", result.error());
+        if (result.retryAfter() != null) {
+          entry.put("retryAfterSeconds", Math.max(1, result.retryAfter().toSeconds()));
+        }
+        failed++;
+      }
+      entries.add(entry);
+    }
+
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("date", date);
+    response.put("requested", results.size());
+    response.put("succeeded", results.size() - failed);
+    response.put("failed", failed);
+    response.put("sources", sources);
+    response.put("results", entries);
+    return ResponseEntity.ok(response);
+  }
+
   /**
    * Get connection status
    */
   @GetMapping("/status")
   public ResponseEntity<Map<String, Object>> getConnectionStatus(@RequestParam String userId) {
-    log.info("Checking connection status for user: {}", userId);
+    log.debug("Checking connection status for user: {}", userId);
     Map<String, Object> status = garminService.getConnectionStatus(userId);
     return ResponseEntity.ok(status);
   }
@@ -308,70 +427,86 @@ public class GarminController {
     return ResponseEntity.ok(health);
   }
 
-  // Helper method to build structured health data
-  private Map<String, Object> buildHealthDataMap(DailiesSummary summary) {
-    Map<String, Object> data = new HashMap<>();
-    
-    // Basic info
-    data.put("date", summary.getCalendarDate());
-    data.put("activityType", summary.getActivityType());
-    
-    // Activity metrics
-    Map<String, Object> activity = new HashMap<>();
-    activity.put("steps", summary.getSteps());
-    activity.put("distanceMeters", summary.getDistanceInMeters());
-    activity.put("floorsClimbed", summary.getFloorsClimbed());
-    activity.put("activeTimeSeconds", summary.getActiveTimeInSeconds());
-    data.put("activity", activity);
-    
-    // Calories
-    Map<String, Object> calories = new HashMap<>();
-    calories.put("active", summary.getActiveKilocalories());
-    calories.put("bmr", summary.getBmrKilocalories());
-    calories.put("total", (summary.getActiveKilocalories() != null && summary.getBmrKilocalories() != null) 
-        ? summary.getActiveKilocalories() + summary.getBmrKilocalories() : null);
-    data.put("calories", calories);
-    
-    // Heart rate
-    Map<String, Object> heartRate = new HashMap<>();
-    heartRate.put("average", summary.getAverageHeartRateInBeatsPerMinute());
-    heartRate.put("resting", summary.getRestingHeartRateInBeatsPerMinute());
-    heartRate.put("min", summary.getMinHeartRateInBeatsPerMinute());
-    heartRate.put("max", summary.getMaxHeartRateInBeatsPerMinute());
-    data.put("heartRate", heartRate);
-    
-    // Stress
-    if (summary.getAverageStressLevel() != null) {
-      Map<String, Object> stress = new HashMap<>();
-      stress.put("average", summary.getAverageStressLevel());
-      stress.put("max", summary.getMaxStressLevel());
-      stress.put("qualifier", summary.getStressQualifier());
-      data.put("stress", stress);
+  private ResponseEntity<Map<String, Object>> retryLater(HttpStatus status, String message, Duration retryAfter) {
+    long retryAfterSeconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    Map<String, Object> errorResponse = new HashMap<>();
+    errorResponse.put("success", false);
+    errorResponse.put("error", message);
+    errorResponse.put("retryAfterSeconds", retryAfterSeconds);
+    return ResponseEntity.status(status)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+        .body(errorResponse);
+  }
+
+  // Where the data came from: "local", "garmin" or "stale"
+  private void putSource(Map<String, Object> response, DailiesReadService.ReadResult read) {
+    response.put("source", read.source().tag());
+    if (read.lastModifiedAt() != null) {
+      response.put("lastModifiedAt", read.lastModifiedAt());
     }
-    
-    // Body battery
-    if (summary.getBodyBatteryChargedValue() != null) {
-      Map<String, Object> bodyBattery = new HashMap<>();
-      bodyBattery.put("charged", summary.getBodyBatteryChargedValue());
-      bodyBattery.put("drained", summary.getBodyBatteryDrainedValue());
-      data.put("bodyBattery", bodyBattery);
+  }
+
+  /**
+   * A 304 when the request's validators match the stored summary that
+   * {@link DailiesReadService#read} would answer with, decided from its
+   * version alone.
+   */
+  private Optional<ResponseEntity<Void>> notModified(HttpServletRequest request, String userId, LocalDate date) {
+    if (request.getHeader(HttpHeaders.IF_NONE_MATCH) == null
+        && request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) == null) {
+      return Optional.empty();
     }
-    
-    // Goals
-    Map<String, Object> goals = new HashMap<>();
-    goals.put("steps", summary.getStepsGoal());
-    goals.put("floors", summary.getFloorsClimbedGoal());
-    data.put("goals", goals);
-    
-    return data;
+    Optional<GarminDailiesSummaryRepo.SummaryVersion> version = dailiesReadService.localVersion(userId, date);
+    if (version.isEmpty() || version.get().getSummaryId() == null || version.get().getLastModifiedAt() == null) {
+      return Optional.empty();
+    }
+    String etag = etag(version.get().getSummaryId(), version.get().getLastModifiedAt(),
+        DailiesReadService.Source.LOCAL);
+    long lastModified = epochMillis(version.get().getLastModifiedAt());
+    // Without a response this only compares the request's validators
+    if (!new ServletWebRequest(request).checkNotModified(etag, lastModified)) {
+      return Optional.empty();
+    }
+    return Optional.of(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        .eTag(etag)
+        .lastModified(lastModified)
+        .cacheControl(CacheControl.noCache().cachePrivate())
+        .build());
+  }
+
+  // Spring turns a 200 with validators into a 304 when the request's validators match
+  private static ResponseEntity<DailiesResponse> withValidators(DailiesReadService.ReadResult read,
+      DailiesResponse body) {
+    String summaryId = read.summaries().isEmpty() ? null : read.summaries().get(0).getSummaryId();
+    // Data fetched from Garmin just now has no stored version to validate against
+    if (read.source() == DailiesReadService.Source.GARMIN || read.lastModifiedAt() == null || summaryId == null) {
+      return ResponseEntity.ok(body);
+    }
+    return ResponseEntity.ok()
+        .eTag(etag(summaryId, read.lastModifiedAt(), read.source()))
+        .lastModified(epochMillis(read.lastModifiedAt()))
+        .cacheControl(CacheControl.noCache().cachePrivate())
+        .body(body);
+  }
+
+  // The source is part of the tag because it is part of the body
+  private static String etag(String summaryId, LocalDateTime lastModifiedAt, DailiesReadService.Source source) {
+    long micros = lastModifiedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + lastModifiedAt.getNano() / 1_000;
+    return "\"" + summaryId + "-" + Long.toString(micros, 36) + "-" + source.tag() + "\"";
+  }
+
+  private static long epochMillis(LocalDateTime lastModifiedAt) {
+    return lastModifiedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  private static List<DailiesSummary> rawData(List<DailiesSummary> dailies, Set<HealthData.Section> sections) {
+    return sections.contains(HealthData.Section.RAW) ? dailies : null;
   }
 
   @PostMapping("/dailies")
-  public ResponseEntity<Void> dailies(@RequestBody Map<String, Object> body,
-                                      @RequestHeader Map<String, String> headers) {
-    // Log headers + body so we can confirm Garmin is pushing
-    log.info("📬 DAILIES webhook headers: {}", headers);
-    log.info("📬 DAILIES webhook body: {}", body);
-    return ResponseEntity.ok().build();
+  public ResponseEntity<IngestResponse> dailies(InputStream body) {
+    DailiesIngestService.SubmitResult result = ingestService.submit(body);
+    log.debug("📬 DAILIES push received: {}", result);
+    return IngestResponse.toEntity(result);
   }
 }
@@ -1,24 +1,31 @@
 package io.fermion.az.health.garmin.webhook;
 
+import io.fermion.az.health.garmin.dto.IngestResponse;
+import io.fermion.az.health.garmin.service.DailiesIngestService;
+import io.fermion.az.health.garmin.service.DailiesIngestService.SubmitResult;
+import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.io.InputStream;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/garmin/webhook")
+@RequiredArgsConstructor
 public class GarminWebhookController {
   private static final Logger log = LoggerFactory.getLogger(GarminWebhookController.class);
 
+  private final DailiesIngestService ingestService;
+
   @PostMapping(path="/dailies", consumes=MediaType.APPLICATION_JSON_VALUE, produces=MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<Map<String,Object>> receiveDailies(@RequestBody List<Map<String,Object>> payload){
-    log.info("📬 DAILIES received {} record(s)", payload.size());
-    if (!payload.isEmpty()) log.info("First record: {}", payload.get(0));
-    return ResponseEntity.ok(Map.of("status","ok","received", payload.size()));
+  public ResponseEntity<IngestResponse> receiveDailies(InputStream body){
+    SubmitResult result = ingestService.submit(body);
+    log.debug("📬 DAILIES received: {}", result);
+    return IngestResponse.toEntity(result);
   }
 
   @GetMapping("/ping")
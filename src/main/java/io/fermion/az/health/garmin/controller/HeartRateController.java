@@ -0,0 +1,83 @@
+package io.fermion.az.health.garmin.controller;
+
+import io.fermion.az.health.garmin.service.HeartRateQueryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+
+/**
+ * Heart rate queries computed on the server from the stored samples, so
+ * clients do not have to download a day of samples to answer them. Day
+ * ranges are inclusive; {@code to} defaults to {@code from}.
+ */
+@RestController
+@RequestMapping("/api/garmin/hr")
+@RequiredArgsConstructor
+public class HeartRateController {
+
+  private final HeartRateQueryService heartRateQueryService;
+
+  @Value("${garmin.hr.zone-bounds:100,120,140,160,180}")
+  private int[] defaultZoneBounds;
+
+  /**
+   * Samples of one day between two times of day, e.g. {@code from=14:00&to=16:00}.
+   */
+  @GetMapping("/window")
+  public ResponseEntity<?> window(
+      @RequestParam String userId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+      @RequestParam @DateTimeFormat(pattern = "HH:mm") LocalTime from,
+      @RequestParam(required = false) @DateTimeFormat(pattern = "HH:mm") LocalTime to) {
+    try {
+      return ResponseEntity.ok(heartRateQueryService.window(userId, date, from, to));
+    } catch (IllegalArgumentException e) {
+      return badRequest(e);
+    }
+  }
+
+  /**
+   * Minutes in each heart rate zone per day. {@code bounds} are the lowest
+   * BPM of each zone, ascending.
+   */
+  @GetMapping("/zones")
+  public ResponseEntity<?> zones(
+      @RequestParam String userId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(required = false) int[] bounds) {
+    try {
+      return ResponseEntity.ok(Map.of("userId", userId, "days", heartRateQueryService.zones(userId, from,
+          to == null ? from : to, bounds == null ? defaultZoneBounds : bounds)));
+    } catch (IllegalArgumentException e) {
+      return badRequest(e);
+    }
+  }
+
+  /**
+   * Highest average heart rate over any {@code minutes}-long window per day.
+   */
+  @GetMapping("/max-average")
+  public ResponseEntity<?> maxAverage(
+      @RequestParam String userId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(defaultValue = "5") int minutes) {
+    try {
+      return ResponseEntity.ok(Map.of("userId", userId, "days",
+          heartRateQueryService.maxAverage(userId, from, to == null ? from : to, minutes)));
+    } catch (IllegalArgumentException e) {
+      return badRequest(e);
+    }
+  }
+
+  private static ResponseEntity<Map<String, Object>> badRequest(IllegalArgumentException e) {
+    return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+  }
+}
@@ -0,0 +1,57 @@
+package io.fermion.az.health.garmin.controller;
+
+import io.fermion.az.health.garmin.dto.DailiesRollup;
+import io.fermion.az.health.garmin.dto.RollupRebuildStatus;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.service.RollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weekly and monthly dailies totals and averages, read from the rollup
+ * tables. {@code POST /rebuild} recomputes them from the stored summaries.
+ */
+@RestController
+@RequestMapping("/api/garmin/rollups")
+@RequiredArgsConstructor
+public class RollupController {
+
+  private final RollupService rollupService;
+
+  @GetMapping
+  public ResponseEntity<?> rollups(
+      @RequestParam String userId,
+      @RequestParam String period,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+    try {
+      List<DailiesRollup> rollups = rollupService.query(userId, period, from, to);
+      return ResponseEntity.ok(Map.of("userId", userId, "period", period, "from", from, "to", to,
+          "rollups", rollups));
+    } catch (IllegalArgumentException | GarminApiException e) {
+      return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+    }
+  }
+
+  @PostMapping("/rebuild")
+  public ResponseEntity<?> rebuild(@RequestParam(required = false) String userId) {
+    try {
+      return ResponseEntity.status(HttpStatus.ACCEPTED).body(rollupService.startRebuild(userId));
+    } catch (IllegalStateException e) {
+      return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("success", false, "error", e.getMessage()));
+    }
+  }
+
+  @GetMapping("/rebuild")
+  public ResponseEntity<RollupRebuildStatus> rebuildStatus() {
+    RollupRebuildStatus status = rollupService.rebuildStatus();
+    return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+  }
+}
@@ -0,0 +1,19 @@
+package io.fermion.az.health.garmin.dto;
+
+import io.fermion.az.health.garmin.entity.BackfillJob;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record BackfillStatus(String jobId, String userId, LocalDate startDate, LocalDate endDate,
+    BackfillJob.Status status, int windowsTotal, int windowsDone, int windowsFailed, List<LocalDate> failedDates,
+    long rowsWritten,
+    String lastError, LocalDateTime createdAt, LocalDateTime startedAt, LocalDateTime finishedAt) {
+
+  public static BackfillStatus of(BackfillJob job) {
+    return new BackfillStatus(job.getJobId(), job.getUserId(), job.getStartDate(), job.getEndDate(), job.getStatus(),
+        job.getWindowsTotal(), job.getWindowsDone(), job.getWindowsFailed(), job.failedWindowDates(),
+        job.getRowsWritten(), job.getLastError(), job.getCreatedAt(), job.getStartedAt(), job.getFinishedAt());
+  }
+}
@@ -0,0 +1,10 @@
+package io.fermion.az.health.garmin.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Body of {@code POST /api/garmin/data/bulk}; a missing date means today.
+ */
+public record BulkDailiesRequest(List<String> userIds, LocalDate date) {
+}
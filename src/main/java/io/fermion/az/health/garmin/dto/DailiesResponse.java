@@ -0,0 +1,20 @@
+package io.fermion.az.health.garmin.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Body of {@code /data/today} (with {@code data}) and {@code /data/date}
+ * (with {@code summaries}). {@code rawData} is only present when
+ * {@code fields} asks for {@code raw}.
+ *
+ * @param source         "local", "garmin" or "stale"
+ * @param lastModifiedAt when the stored summary was last written, if it came
+ *                       from the store
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DailiesResponse(boolean success, String source, LocalDateTime lastModifiedAt, String date,
+    HealthData data, List<HealthData> summaries, List<DailiesSummary> rawData, String message) {
+}
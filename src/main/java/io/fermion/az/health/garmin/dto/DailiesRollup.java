@@ -0,0 +1,34 @@
+package io.fermion.az.health.garmin.dto;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup;
+
+import java.time.LocalDate;
+
+/**
+ * Totals and per-day averages for one week or month. An average is
+ * {@code null} when no day in the period reported the metric.
+ */
+public record DailiesRollup(String period, LocalDate periodStart, LocalDate periodEnd, int days,
+    long totalSteps, double totalDistanceInMeters, long totalActiveKilocalories,
+    Double averageSteps, Double averageDistanceInMeters, Double averageActiveKilocalories,
+    Double averageRestingHeartRate, Double averageStressLevel,
+    Double averageBodyBatteryCharged, Double averageBodyBatteryDrained) {
+
+  public static DailiesRollup of(GarminDailiesRollup rollup) {
+    GarminDailiesRollup.Period period = rollup.getId().getPeriod();
+    LocalDate start = rollup.getId().getPeriodStart();
+    int days = rollup.getDays();
+    return new DailiesRollup(period.name().toLowerCase(), start, period.end(start), days,
+        rollup.getSteps(), rollup.getDistanceInMeters(), rollup.getActiveKilocalories(),
+        average(rollup.getSteps(), days), average(rollup.getDistanceInMeters(), days),
+        average(rollup.getActiveKilocalories(), days),
+        average(rollup.getRestingHeartRateSum(), rollup.getRestingHeartRateDays()),
+        average(rollup.getStressLevelSum(), rollup.getStressLevelDays()),
+        average(rollup.getBodyBatteryChargedSum(), rollup.getBodyBatteryDays()),
+        average(rollup.getBodyBatteryDrainedSum(), rollup.getBodyBatteryDays()));
+  }
+
+  private static Double average(double sum, int days) {
+    return days > 0 ? sum / days : null;
+  }
+}
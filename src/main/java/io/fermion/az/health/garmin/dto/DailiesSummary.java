@@ -2,6 +2,9 @@ package io.fermion.az.health.garmin.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import io.fermion.az.health.garmin.codec.RawJsonStringDeserializer;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class DailiesSummary {
@@ -27,6 +30,7 @@ public class DailiesSummary {
   private Integer averageHeartRateInBeatsPerMinute;
   private Integer restingHeartRateInBeatsPerMinute;
   @JsonProperty("timeOffsetHeartRateSamples")
+  @JsonDeserialize(using = RawJsonStringDeserializer.class)
   private String timeOffsetHeartRateSamples;
   private String source;
   private Integer stepsGoal;
@@ -0,0 +1,108 @@
+package io.fermion.az.health.garmin.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Structured view of one dailies summary, split into sections that clients
+ * can ask for with {@code fields=}. Sections not asked for, and stress or
+ * body battery when the summary has none, are left out of the JSON.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record HealthData(String date, String activityType, Activity activity, Calories calories,
+    HeartRate heartRate, Stress stress, BodyBattery bodyBattery, Goals goals) {
+
+  public enum Section {
+    ACTIVITY("activity"),
+    CALORIES("calories"),
+    HEART_RATE("heartRate"),
+    STRESS("stress"),
+    BODY_BATTERY("bodyBattery"),
+    GOALS("goals"),
+    /** The Garmin-shaped summary itself, as {@code rawData} */
+    RAW("raw");
+
+    public static final Set<Section> DEFAULT = EnumSet.range(ACTIVITY, GOALS);
+
+    private final String fieldName;
+
+    Section(String fieldName) {
+      this.fieldName = fieldName;
+    }
+
+    /**
+     * Parse a comma-separated {@code fields} parameter; {@code null} or blank
+     * means every section but {@link #RAW}.
+     *
+     * @throws IllegalArgumentException for an unknown section
+     */
+    public static Set<Section> parse(String fields) {
+      if (fields == null || fields.isBlank()) {
+        return DEFAULT;
+      }
+      Set<Section> sections = EnumSet.noneOf(Section.class);
+      for (String field : fields.split(",")) {
+        String name = field.trim();
+        Section match = null;
+        for (Section section : values()) {
+          if (section.fieldName.equalsIgnoreCase(name)) {
+            match = section;
+          }
+        }
+        if (match == null) {
+          throw new IllegalArgumentException("Unknown field '" + name + "'; expected any of "
+              + String.join(", ", EnumSet.allOf(Section.class).stream().map(s -> s.fieldName).toList()));
+        }
+        sections.add(match);
+      }
+      return sections;
+    }
+  }
+
+  public record Activity(Integer steps, Double distanceMeters, Integer floorsClimbed, Long activeTimeSeconds) {
+  }
+
+  public record Calories(Integer active, Integer bmr, Integer total) {
+  }
+
+  public record HeartRate(Integer average, Integer resting, Integer min, Integer max) {
+  }
+
+  public record Stress(Integer average, Integer max, String qualifier) {
+  }
+
+  public record BodyBattery(Integer charged, Integer drained) {
+  }
+
+  public record Goals(Integer steps, Integer floors) {
+  }
+
+  public static HealthData of(DailiesSummary summary, Set<Section> sections) {
+    Integer active = summary.getActiveKilocalories();
+    Integer bmr = summary.getBmrKilocalories();
+    return new HealthData(summary.getCalendarDate(), summary.getActivityType(),
+        sections.contains(Section.ACTIVITY)
+            ? new Activity(summary.getSteps(), summary.getDistanceInMeters(), summary.getFloorsClimbed(),
+                summary.getActiveTimeInSeconds())
+            : null,
+        sections.contains(Section.CALORIES)
+            ? new Calories(active, bmr, active != null && bmr != null ? active + bmr : null)
+            : null,
+        sections.contains(Section.HEART_RATE)
+            ? new HeartRate(summary.getAverageHeartRateInBeatsPerMinute(),
+                summary.getRestingHeartRateInBeatsPerMinute(), summary.getMinHeartRateInBeatsPerMinute(),
+                summary.getMaxHeartRateInBeatsPerMinute())
+            : null,
+        sections.contains(Section.STRESS) && summary.getAverageStressLevel() != null
+            ? new Stress(summary.getAverageStressLevel(), summary.getMaxStressLevel(), summary.getStressQualifier())
+            : null,
+        sections.contains(Section.BODY_BATTERY) && summary.getBodyBatteryChargedValue() != null
+            ? new BodyBattery(summary.getBodyBatteryChargedValue(), summary.getBodyBatteryDrainedValue())
+            : null,
+        sections.contains(Section.GOALS)
+            ? new Goals(summary.getStepsGoal(), summary.getFloorsClimbedGoal())
+            : null);
+  }
+}
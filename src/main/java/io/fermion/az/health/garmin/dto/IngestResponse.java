@@ -0,0 +1,33 @@
+package io.fermion.az.health.garmin.dto;
+
+import io.fermion.az.health.garmin.service.DailiesIngestService.SubmitResult;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Answer to a dailies push, shared by every endpoint Garmin delivers to.
+ */
+public record IngestResponse(String status, int accepted, int rejected, int duplicates) {
+
+  public static IngestResponse of(SubmitResult result) {
+    return new IngestResponse(result.outcome().tag(), result.accepted(), result.rejected(), result.duplicates());
+  }
+
+  /**
+   * When we cannot take the payload right now we answer 503 so that Garmin
+   * retries the delivery later instead of us dropping it.
+   */
+  public static ResponseEntity<IngestResponse> toEntity(SubmitResult result) {
+    IngestResponse body = of(result);
+    return switch (result.outcome()) {
+      case ACCEPTED -> ResponseEntity.ok(body);
+      case INVALID, MALFORMED -> ResponseEntity.badRequest().body(body);
+      case TOO_LARGE -> ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(body);
+      case QUEUE_FULL, UNAVAILABLE -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+          .header(HttpHeaders.RETRY_AFTER, "30")
+          .body(body);
+    };
+  }
+}
@@ -0,0 +1,7 @@
+package io.fermion.az.health.garmin.dto;
+
+import java.time.LocalDateTime;
+
+public record RollupRebuildStatus(boolean running, int usersTotal, int usersDone, int usersFailed,
+    long rollupsWritten, String lastError, LocalDateTime startedAt, LocalDateTime finishedAt) {
+}
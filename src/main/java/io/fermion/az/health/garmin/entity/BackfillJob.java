@@ -0,0 +1,114 @@
+package io.fermion.az.health.garmin.entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.List;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * A historical dailies backfill for one user over a date range, split into
+ * one-day upload windows. {@code completedWindows} is a bitset of the windows
+ * whose summaries have been persisted, so a job resumes where it stopped.
+ * {@code failedWindows} holds the windows whose last attempt failed; they are
+ * not done, so a resume retries them, and a success clears them.
+ */
+@Entity
+@Table(name = "garmin_backfill_job", indexes = {
+    @Index(name = "idx_backfill_job_user_id", columnList = "user_id"),
+    @Index(name = "idx_backfill_job_status", columnList = "status")
+})
+@Data
+public class BackfillJob {
+
+  public enum Status {
+    PENDING, RUNNING, COMPLETED, FAILED
+  }
+
+  @Id
+  @Column(name = "job_id", length = 36)
+  private String jobId;
+
+  @Column(name = "user_id", nullable = false)
+  private String userId;
+
+  @Column(name = "garmin_user_id", nullable = false)
+  private String garminUserId;
+
+  @Column(name = "start_date", nullable = false)
+  private LocalDate startDate;
+
+  @Column(name = "end_date", nullable = false)
+  private LocalDate endDate;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "status", nullable = false, length = 20)
+  private Status status;
+
+  @Column(name = "windows_total", nullable = false)
+  private int windowsTotal;
+
+  @Column(name = "windows_done", nullable = false)
+  private int windowsDone;
+
+  @Column(name = "windows_failed", nullable = false)
+  private int windowsFailed;
+
+  @Column(name = "rows_written", nullable = false)
+  private long rowsWritten;
+
+  @Column(name = "completed_windows", length = 1024)
+  private byte[] completedWindows;
+
+  @Column(name = "failed_windows", length = 1024)
+  private byte[] failedWindows;
+
+  @Column(name = "last_error", length = 500)
+  private String lastError;
+
+  @Column(name = "created_at")
+  private LocalDateTime createdAt;
+
+  @Column(name = "started_at")
+  private LocalDateTime startedAt;
+
+  @Column(name = "finished_at")
+  private LocalDateTime finishedAt;
+
+  @Column(name = "last_modified_at")
+  private LocalDateTime lastModifiedAt;
+
+  public LocalDate windowDate(int window) {
+    return startDate.plusDays(window);
+  }
+
+  public BitSet completedWindowSet() {
+    return completedWindows == null ? new BitSet() : BitSet.valueOf(completedWindows);
+  }
+
+  public void setCompletedWindowSet(BitSet completed) {
+    this.completedWindows = completed.toByteArray();
+    this.windowsDone = completed.cardinality();
+  }
+
+  public BitSet failedWindowSet() {
+    return failedWindows == null ? new BitSet() : BitSet.valueOf(failedWindows);
+  }
+
+  public void setFailedWindowSet(BitSet failed) {
+    this.failedWindows = failed.toByteArray();
+    this.windowsFailed = failed.cardinality();
+  }
+
+  public List<LocalDate> failedWindowDates() {
+    return failedWindowSet().stream().mapToObj(this::windowDate).toList();
+  }
+}
@@ -0,0 +1,150 @@
+package io.fermion.az.health.garmin.entity;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * Running totals of the dailies summaries a user synced from one Garmin
+ * account over one ISO week or calendar month. Averages are sums divided by
+ * the number of days that reported the metric, so each averaged metric keeps
+ * its own day count.
+ */
+@Entity
+@Table(name = "garmin_dailies_rollup", indexes = {
+    @Index(name = "idx_dailies_rollup_user_period", columnList = "user_id, garmin_user_id, period, period_start")
+})
+@Data
+public class GarminDailiesRollup {
+
+  public enum Period {
+    WEEK {
+      @Override
+      public LocalDate start(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+      }
+
+      @Override
+      public LocalDate end(LocalDate start) {
+        return start.plusDays(6);
+      }
+    },
+    MONTH {
+      @Override
+      public LocalDate start(LocalDate date) {
+        return date.withDayOfMonth(1);
+      }
+
+      @Override
+      public LocalDate end(LocalDate start) {
+        return start.with(TemporalAdjusters.lastDayOfMonth());
+      }
+    };
+
+    /** First day of the period containing {@code date} */
+    public abstract LocalDate start(LocalDate date);
+
+    /** Last day of the period starting on {@code start} */
+    public abstract LocalDate end(LocalDate start);
+  }
+
+  /**
+   * What one or more days add to a rollup. Missing metrics add nothing; a
+   * negative stress level is Garmin's "not enough data" and is skipped too.
+   */
+  public record Totals(int days, long steps, double distanceInMeters, long activeKilocalories,
+      long restingHeartRateSum, int restingHeartRateDays, long stressLevelSum, int stressLevelDays,
+      long bodyBatteryChargedSum, long bodyBatteryDrainedSum, int bodyBatteryDays) {
+
+    public static final Totals ZERO = new Totals(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    public static Totals ofDay(Integer steps, Double distanceInMeters, Integer activeKilocalories,
+        Integer restingHeartRate, Integer averageStressLevel, Integer bodyBatteryCharged,
+        Integer bodyBatteryDrained) {
+      boolean restingHeartRateKnown = restingHeartRate != null && restingHeartRate > 0;
+      boolean stressKnown = averageStressLevel != null && averageStressLevel >= 0;
+      boolean bodyBatteryKnown = bodyBatteryCharged != null || bodyBatteryDrained != null;
+      return new Totals(1, orZero(steps), distanceInMeters == null ? 0 : distanceInMeters,
+          orZero(activeKilocalories),
+          restingHeartRateKnown ? restingHeartRate : 0, restingHeartRateKnown ? 1 : 0,
+          stressKnown ? averageStressLevel : 0, stressKnown ? 1 : 0,
+          orZero(bodyBatteryCharged), orZero(bodyBatteryDrained), bodyBatteryKnown ? 1 : 0);
+    }
+
+    public static Totals ofDay(GarminUserDailiesSummary summary) {
+      return ofDay(summary.getSteps(), summary.getDistanceInMeters(), summary.getActiveKilocalories(),
+          summary.getRestingHeartRateInBeatsPerMinute(), summary.getAverageStressLevel(),
+          summary.getBodyBatteryChargedValue(), summary.getBodyBatteryDrainedValue());
+    }
+
+    public Totals plus(Totals other) {
+      return new Totals(days + other.days, steps + other.steps, distanceInMeters + other.distanceInMeters,
+          activeKilocalories + other.activeKilocalories,
+          restingHeartRateSum + other.restingHeartRateSum, restingHeartRateDays + other.restingHeartRateDays,
+          stressLevelSum + other.stressLevelSum, stressLevelDays + other.stressLevelDays,
+          bodyBatteryChargedSum + other.bodyBatteryChargedSum, bodyBatteryDrainedSum + other.bodyBatteryDrainedSum,
+          bodyBatteryDays + other.bodyBatteryDays);
+    }
+
+    public Totals minus(Totals other) {
+      return plus(new Totals(-other.days, -other.steps, -other.distanceInMeters, -other.activeKilocalories,
+          -other.restingHeartRateSum, -other.restingHeartRateDays, -other.stressLevelSum, -other.stressLevelDays,
+          -other.bodyBatteryChargedSum, -other.bodyBatteryDrainedSum, -other.bodyBatteryDays));
+    }
+
+    public boolean isZero() {
+      return equals(ZERO);
+    }
+
+    private static long orZero(Integer value) {
+      return value == null ? 0 : value;
+    }
+  }
+
+  @EmbeddedId
+  private GarminDailiesRollupId id;
+
+  @Column(name = "days", nullable = false)
+  private int days;
+
+  @Column(name = "steps", nullable = false)
+  private long steps;
+
+  @Column(name = "distance_in_meters", nullable = false)
+  private double distanceInMeters;
+
+  @Column(name = "active_kilocalories", nullable = false)
+  private long activeKilocalories;
+
+  @Column(name = "resting_heart_rate_sum", nullable = false)
+  private long restingHeartRateSum;
+
+  @Column(name = "resting_heart_rate_days", nullable = false)
+  private int restingHeartRateDays;
+
+  @Column(name = "stress_level_sum", nullable = false)
+  private long stressLevelSum;
+
+  @Column(name = "stress_level_days", nullable = false)
+  private int stressLevelDays;
+
+  @Column(name = "body_battery_charged_sum", nullable = false)
+  private long bodyBatteryChargedSum;
+
+  @Column(name = "body_battery_drained_sum", nullable = false)
+  private long bodyBatteryDrainedSum;
+
+  @Column(name = "body_battery_days", nullable = false)
+  private int bodyBatteryDays;
+
+  @Column(name = "last_modified_at")
+  private LocalDateTime lastModifiedAt;
+}
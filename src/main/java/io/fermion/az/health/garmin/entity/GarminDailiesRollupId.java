@@ -0,0 +1,87 @@
+package io.fermion.az.health.garmin.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+@Embeddable
+public class GarminDailiesRollupId implements Serializable {
+
+  @Column(name = "user_id", length = 36)
+  private String userId;
+
+  @Column(name = "garmin_user_id")
+  private String garminUserId;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "period", length = 10)
+  private GarminDailiesRollup.Period period;
+
+  @Column(name = "period_start")
+  private LocalDate periodStart;
+
+  public GarminDailiesRollupId() {
+  }
+
+  public GarminDailiesRollupId(String userId, String garminUserId, GarminDailiesRollup.Period period,
+      LocalDate periodStart) {
+    this.userId = userId;
+    this.garminUserId = garminUserId;
+    this.period = period;
+    this.periodStart = periodStart;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  public void setUserId(String userId) {
+    this.userId = userId;
+  }
+
+  public String getGarminUserId() {
+    return garminUserId;
+  }
+
+  public void setGarminUserId(String garminUserId) {
+    this.garminUserId = garminUserId;
+  }
+
+  public GarminDailiesRollup.Period getPeriod() {
+    return period;
+  }
+
+  public void setPeriod(GarminDailiesRollup.Period period) {
+    this.period = period;
+  }
+
+  public LocalDate getPeriodStart() {
+    return periodStart;
+  }
+
+  public void setPeriodStart(LocalDate periodStart) {
+    this.periodStart = periodStart;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+    GarminDailiesRollupId that = (GarminDailiesRollupId) o;
+    return Objects.equals(userId, that.userId) &&
+        Objects.equals(garminUserId, that.garminUserId) &&
+        period == that.period &&
+        Objects.equals(periodStart, that.periodStart);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(userId, garminUserId, period, periodStart);
+  }
+}
@@ -0,0 +1,27 @@
+package io.fermion.az.health.garmin.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * One row per user, locked by every transaction that changes the user's
+ * rollups so that a rebuild and an ingest of the same user run one after the
+ * other. See {@code GarminDailiesRollupWriter#lockUsers}.
+ */
+@Entity
+@Table(name = "garmin_dailies_rollup_lock")
+@Data
+public class GarminDailiesRollupLock {
+
+  @Id
+  @Column(name = "user_id", length = 36)
+  private String userId;
+
+  @Column(name = "locked_at")
+  private LocalDateTime lockedAt;
+}
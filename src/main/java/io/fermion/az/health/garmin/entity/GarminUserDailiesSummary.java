@@ -5,15 +5,22 @@ import java.time.LocalDateTime;
 import jakarta.persistence.Column;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import lombok.Data;
 
 @Entity
-@Table(name = "garmin_dailies_summary")
+@Table(name = "garmin_dailies_summary", indexes = {
+    @Index(name = "idx_dailies_summary_summary_id", columnList = "summary_id"),
+    @Index(name = GarminUserDailiesSummary.USER_DATE_INDEX, columnList = "user_id, garmin_user_id, calendar_date")
+})
 @Data
 public class GarminUserDailiesSummary {
+  /** Per-user lookups; the primary key leads with {@code calendar_date}. */
+  public static final String USER_DATE_INDEX = "idx_dailies_summary_user_date";
+
   @EmbeddedId
   private GarminDailiesSummaryId id;
 
@@ -78,9 +85,14 @@ public class GarminUserDailiesSummary {
   @Column(name = "resting_heart_rate_in_beats_per_minute")
   private Integer restingHeartRateInBeatsPerMinute;
 
+  // Samples Garmin sent that could not be encoded; new rows normally use heartRateSamples
   @Column(name = "time_offset_heart_rate_samples", columnDefinition = "JSON")
   private String timeOffsetHeartRateSamples;
 
+  // timeOffsetHeartRateSamples in HeartRateSampleCodec form
+  @Column(name = "heart_rate_samples", columnDefinition = "BYTEA")
+  private byte[] heartRateSamples;
+
   @Column(name = "source", length = 100)
   private String source;
 
@@ -133,6 +145,10 @@ public class GarminUserDailiesSummary {
   private Integer bodyBatteryDrainedValue;
 
   // Metadata
+  // Hash of the summary as received from Garmin, used to drop unchanged redeliveries
+  @Column(name = "content_fingerprint", length = 32)
+  private String contentFingerprint;
+
   @Column(name = "created_at")
   private LocalDateTime createdAt;
 
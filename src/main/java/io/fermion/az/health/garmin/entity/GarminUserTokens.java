@@ -34,6 +34,16 @@ public class GarminUserTokens {
   @Column(name = "connect_status", nullable = false)
   private ConnectStatus connectStatus;
 
+  // Background refresh bookkeeping, reset on every successful refresh
+  @Column(name = "refresh_failure_count", nullable = false, columnDefinition = "integer default 0")
+  private int refreshFailureCount;
+
+  @Column(name = "last_refresh_error", length = 500)
+  private String lastRefreshError;
+
+  @Column(name = "next_refresh_attempt_at")
+  private LocalDateTime nextRefreshAttemptAt;
+
   public enum ConnectStatus {
     CONNECTED, DISCONNECTED
   }
@@ -101,4 +111,28 @@ public class GarminUserTokens {
   public void setConnectStatus(ConnectStatus connected) {
     this.connectStatus = connected;
   }
+
+  public int getRefreshFailureCount() {
+    return refreshFailureCount;
+  }
+
+  public void setRefreshFailureCount(int refreshFailureCount) {
+    this.refreshFailureCount = refreshFailureCount;
+  }
+
+  public String getLastRefreshError() {
+    return lastRefreshError;
+  }
+
+  public void setLastRefreshError(String lastRefreshError) {
+    this.lastRefreshError = lastRefreshError;
+  }
+
+  public LocalDateTime getNextRefreshAttemptAt() {
+    return nextRefreshAttemptAt;
+  }
+
+  public void setNextRefreshAttemptAt(LocalDateTime nextRefreshAttemptAt) {
+    this.nextRefreshAttemptAt = nextRefreshAttemptAt;
+  }
 }
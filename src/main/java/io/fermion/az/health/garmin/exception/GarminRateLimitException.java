@@ -0,0 +1,20 @@
+package io.fermion.az.health.garmin.exception;
+
+import java.time.Duration;
+
+/**
+ * A Garmin call was not made, or was rejected by Garmin, because the rate
+ * limit is exhausted. {@link #getRetryAfter()} says when to try again.
+ */
+public class GarminRateLimitException extends GarminApiException {
+  private final Duration retryAfter;
+
+  public GarminRateLimitException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,20 @@
+package io.fermion.az.health.garmin.exception;
+
+import java.time.Duration;
+
+/**
+ * A Garmin call was not attempted because the endpoint's circuit breaker is
+ * open.
+ */
+public class GarminUnavailableException extends GarminApiException {
+  private final Duration retryAfter;
+
+  public GarminUnavailableException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
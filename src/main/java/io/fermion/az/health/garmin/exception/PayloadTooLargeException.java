@@ -0,0 +1,15 @@
+package io.fermion.az.health.garmin.exception;
+
+import java.io.IOException;
+
+/**
+ * A request body grew past its size limit while being read, e.g. a gzip body
+ * that inflates to more than {@code garmin.request-decompression.max-bytes}.
+ * An {@link IOException} so it surfaces from the body's stream.
+ */
+public class PayloadTooLargeException extends IOException {
+
+  public PayloadTooLargeException(String message) {
+    super(message);
+  }
+}
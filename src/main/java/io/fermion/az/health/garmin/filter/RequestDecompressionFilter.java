@@ -0,0 +1,321 @@
+package io.fermion.az.health.garmin.filter;
+
+import io.fermion.az.health.garmin.exception.PayloadTooLargeException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Inflates request bodies sent with {@code Content-Encoding: gzip} on the
+ * configured path prefixes, so webhook senders can compress their batches.
+ *
+ * The body is inflated as the handler reads it; nothing is buffered here.
+ * Reading more than {@code max-bytes} of inflated data fails with
+ * {@link PayloadTooLargeException}, so a small body cannot expand without
+ * bound. Other content codings are refused with 415.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestDecompressionFilter.class);
+
+  private final List<String> paths;
+  private final long maxBytes;
+  private final DistributionSummary compressedBytes;
+  private final DistributionSummary inflatedBytes;
+  private final Counter tooLarge;
+  private final Counter malformed;
+
+  public RequestDecompressionFilter(
+      @Value("${garmin.request-decompression.paths:/api/garmin/webhook/,/api/garmin/dailies}") List<String> paths,
+      @Value("${garmin.request-decompression.max-bytes:16777216}") long maxBytes,
+      MeterRegistry meterRegistry) {
+    this.paths = paths;
+    this.maxBytes = maxBytes;
+    this.compressedBytes = DistributionSummary.builder("garmin.request.decompression.bytes").tag("side", "compressed")
+        .baseUnit("bytes").description("Gzip request bodies as received").register(meterRegistry);
+    this.inflatedBytes = DistributionSummary.builder("garmin.request.decompression.bytes").tag("side", "inflated")
+        .baseUnit("bytes").description("Gzip request bodies after inflating").register(meterRegistry);
+    this.tooLarge = Counter.builder("garmin.request.decompression.rejected").tag("reason", "too_large")
+        .description("Gzip request bodies that inflated past the limit").register(meterRegistry);
+    this.malformed = Counter.builder("garmin.request.decompression.rejected").tag("reason", "malformed")
+        .description("Request bodies that were not valid gzip").register(meterRegistry);
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+    if (encoding == null || encoding.isBlank() || encoding.trim().equalsIgnoreCase("identity")) {
+      return true;
+    }
+    String path = request.getRequestURI().substring(request.getContextPath().length());
+    return paths.stream().noneMatch(path::startsWith);
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING).trim();
+    if (!encoding.equalsIgnoreCase("gzip") && !encoding.equalsIgnoreCase("x-gzip")) {
+      response.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+      response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported Content-Encoding: " + encoding);
+      return;
+    }
+    InflatingRequest inflating = new InflatingRequest(request);
+    try {
+      chain.doFilter(inflating, response);
+    } finally {
+      inflating.record();
+    }
+  }
+
+  /**
+   * The request with its body inflated, and without the Content-Encoding and
+   * Content-Length headers that described the compressed body.
+   */
+  private class InflatingRequest extends HttpServletRequestWrapper {
+    private CountingInputStream compressed;
+    private CountingInputStream inflated;
+    private ServletInputStream body;
+    private boolean failed;
+
+    InflatingRequest(HttpServletRequest request) {
+      super(request);
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+      if (body == null) {
+        compressed = new CountingInputStream(super.getInputStream(), Long.MAX_VALUE);
+        body = new InflatedServletInputStream(this);
+      }
+      return body;
+    }
+
+    // Opened on the first read, so a body that is not gzip fails there rather than in argument resolution
+    InputStream inflated() throws IOException {
+      if (inflated == null) {
+        try {
+          inflated = new CountingInputStream(new GZIPInputStream(compressed, 8192), maxBytes);
+        } catch (IOException e) {
+          failed = true;
+          throw e;
+        }
+      }
+      return inflated;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+      String encoding = getCharacterEncoding();
+      Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+      return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+
+    @Override
+    public int getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+      return -1;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return isBodyHeader(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      return isBodyHeader(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+      List<String> names = Collections.list(super.getHeaderNames());
+      names.removeIf(this::isBodyHeader);
+      return Collections.enumeration(names);
+    }
+
+    private boolean isBodyHeader(String name) {
+      return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+    }
+
+    void record() {
+      if (compressed == null) {
+        return;
+      }
+      compressedBytes.record(compressed.count);
+      // The handler may have opened the body without reading it
+      if (inflated == null) {
+        if (failed && !compressed.failed) {
+          malformed.increment();
+        }
+        return;
+      }
+      inflatedBytes.record(inflated.count);
+      if (inflated.tooLarge) {
+        tooLarge.increment();
+        log.warn("Rejected gzip body on {} that inflated past {} bytes from {} bytes",
+            getRequestURI(), maxBytes, compressed.count);
+      } else if ((failed || inflated.failed) && !compressed.failed) {
+        // Failures reading the connection itself are the client's, not bad gzip
+        malformed.increment();
+      }
+    }
+  }
+
+  /**
+   * Counts the bytes read through it, and fails once more than
+   * {@code limit} have been read.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private final long limit;
+    private long count;
+    private boolean tooLarge;
+    private boolean failed;
+
+    CountingInputStream(InputStream in, long limit) {
+      super(in);
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = guard(() -> super.read());
+      if (b >= 0) {
+        advance(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int n = guard(() -> super.read(buffer, offset, length));
+      if (n > 0) {
+        advance(n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      advance(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void advance(long n) throws PayloadTooLargeException {
+      count += n;
+      if (count > limit) {
+        tooLarge = true;
+        throw new PayloadTooLargeException("Request body inflates to more than " + limit + " bytes");
+      }
+    }
+
+    private int guard(IoRead read) throws IOException {
+      try {
+        return read.read();
+      } catch (IOException e) {
+        failed = true;
+        throw e;
+      }
+    }
+
+    @FunctionalInterface
+    private interface IoRead {
+      int read() throws IOException;
+    }
+  }
+
+  private static class InflatedServletInputStream extends ServletInputStream {
+    private final InflatingRequest request;
+    private boolean finished;
+
+    InflatedServletInputStream(InflatingRequest request) {
+      this.request = request;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = request.inflated().read();
+      finished = b < 0;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int n = request.inflated().read(buffer, offset, length);
+      finished = n < 0;
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (request.inflated != null) {
+        request.inflated.close();
+      } else {
+        request.compressed.close();
+      }
+    }
+
+    @Override
+    public boolean isFinished() {
+      return finished;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    /**
+     * Not supported: a gzip member can end mid-read of the compressed stream,
+     * so {@link #isReady()} could not promise a non-blocking read. The
+     * filtered paths are read blocking by their handlers.
+     *
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      throw new IllegalStateException("Non-blocking reads are not supported for gzip request bodies");
+    }
+  }
+}
@@ -0,0 +1,311 @@
+package io.fermion.az.health.garmin.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal for accepted webhook payloads.
+ *
+ * Raw payloads are appended to memory-mapped segment files and
+ * {@link #append} returns only once the record has been forced to disk.
+ * Durability uses group commit: a single flusher thread forces everything
+ * written since its last pass, so one fsync covers all requests that arrived
+ * in the meantime. Each append returns a {@link Ticket}; once the ingest
+ * pipeline has committed the payload's records to the database it commits the
+ * ticket, and fully committed segments are deleted. Segments left over from a
+ * previous run are handed to {@link #replay} on startup.
+ */
+@Component
+public class IngestJournal {
+
+  private static final Logger log = LoggerFactory.getLogger(IngestJournal.class);
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  @Value("${garmin.journal.enabled:true}")
+  private boolean enabled;
+
+  @Value("${garmin.journal.dir:data/journal}")
+  private String directory;
+
+  @Value("${garmin.journal.segment-bytes:16777216}")
+  private int segmentBytes;
+
+  @Value("${garmin.journal.group-commit-window-ms:2}")
+  private long groupCommitWindowMs;
+
+  @Value("${garmin.journal.append-timeout-ms:5000}")
+  private long appendTimeoutMs;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition flushRequested = lock.newCondition();
+  private final Condition flushed = lock.newCondition();
+  // Never signalled; awaited to pause the flusher without holding the lock
+  private final Condition groupCommitWindow = lock.newCondition();
+
+  private Path journalDir;
+  private JournalSegment current;
+  private long nextSegmentNumber;
+  private long appendedSequence;
+  private long durableSequence;
+  private volatile boolean running;
+  private Thread flusher;
+  private final List<Path> recoveredSegments = new ArrayList<>();
+
+  /**
+   * Handle for one journaled payload. {@link #commit()} must be called once
+   * the payload no longer needs to be replayed.
+   */
+  public static final class Ticket {
+    public static final Ticket NONE = new Ticket(null);
+
+    private final JournalSegment segment;
+
+    private Ticket(JournalSegment segment) {
+      this.segment = segment;
+    }
+
+    public void commit() {
+      if (segment != null) {
+        segment.commit();
+      }
+    }
+  }
+
+  @FunctionalInterface
+  public interface ReplayHandler {
+    void replay(byte[] payload, Ticket ticket) throws InterruptedException;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @PostConstruct
+  public void open() throws IOException {
+    if (!enabled) {
+      return;
+    }
+    journalDir = Paths.get(directory).toAbsolutePath();
+    Files.createDirectories(journalDir);
+    try (Stream<Path> files = Files.list(journalDir)) {
+      files.filter(IngestJournal::isSegment).sorted().forEach(recoveredSegments::add);
+    }
+    nextSegmentNumber = recoveredSegments.isEmpty() ? 0 : segmentNumber(recoveredSegments.get(recoveredSegments.size() - 1)) + 1;
+    current = createSegment(segmentBytes);
+
+    running = true;
+    flusher = new Thread(this::flushLoop, "ingest-journal-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+    log.info("Ingest journal open at {} ({} segment(s) to replay)", journalDir, recoveredSegments.size());
+  }
+
+  @PreDestroy
+  public void close() throws InterruptedException {
+    if (!enabled || flusher == null) {
+      return;
+    }
+    running = false;
+    flusher.interrupt();
+    flusher.join(appendTimeoutMs);
+    lock.lock();
+    try {
+      current.force();
+      // Deletes the segment if nothing in it is left to replay
+      current.seal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Retire the active segment once everything in it has been committed, so
+   * that a quiet journal does not keep replayable data around.
+   */
+  @Scheduled(fixedDelayString = "${garmin.journal.checkpoint-ms:10000}")
+  public void checkpoint() throws IOException {
+    if (!enabled || !running) {
+      return;
+    }
+    lock.lock();
+    try {
+      if (current.isDrained()) {
+        roll(segmentBytes);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Append a payload and wait until it is durable.
+   *
+   * @throws IOException if the payload could not be journaled in time
+   */
+  public Ticket append(byte[] payload) throws IOException, InterruptedException {
+    if (!enabled) {
+      return Ticket.NONE;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+
+    lock.lock();
+    try {
+      if (current.remaining() < JournalSegment.HEADER_BYTES * 2 + payload.length) {
+        roll(JournalSegment.HEADER_BYTES * 2 + payload.length);
+      }
+      JournalSegment segment = current;
+      segment.write(payload, (int) crc.getValue());
+      long sequence = ++appendedSequence;
+      flushRequested.signal();
+
+      long remainingNanos = TimeUnit.MILLISECONDS.toNanos(appendTimeoutMs);
+      while (durableSequence < sequence) {
+        if (remainingNanos <= 0) {
+          throw new IOException("Timed out waiting for journal flush");
+        }
+        remainingNanos = flushed.awaitNanos(remainingNanos);
+      }
+      return new Ticket(segment);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Feed every record of the segments left by a previous run to
+   * {@code handler}. Each segment is deleted once all its tickets are
+   * committed.
+   */
+  public void replay(ReplayHandler handler) throws InterruptedException {
+    for (Path path : recoveredSegments) {
+      try {
+        replaySegment(path, handler);
+      } catch (IOException e) {
+        log.error("Could not replay journal segment {}: {}", path, e.getMessage(), e);
+      }
+    }
+    recoveredSegments.clear();
+  }
+
+  private void replaySegment(Path path, ReplayHandler handler) throws IOException, InterruptedException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    JournalSegment segment = new JournalSegment(path, channel, buffer);
+
+    Ticket ticket = new Ticket(segment);
+    int replayed = 0;
+    int position = 0;
+    while (position + JournalSegment.HEADER_BYTES <= buffer.capacity()) {
+      int length = buffer.getInt(position);
+      if (length <= 0 || position + JournalSegment.HEADER_BYTES + length > buffer.capacity()) {
+        break;
+      }
+      byte[] payload = new byte[length];
+      buffer.get(position + JournalSegment.HEADER_BYTES, payload);
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+        log.warn("Journal segment {} has a corrupt record at offset {}, ignoring the rest", path.getFileName(), position);
+        break;
+      }
+      // Counted before handing over; the segment cannot be deleted before it is sealed
+      segment.recovered();
+      handler.replay(payload, ticket);
+      replayed++;
+      position += JournalSegment.HEADER_BYTES + length;
+    }
+    segment.seal();
+    log.info("Replayed {} payload(s) from journal segment {}", replayed, path.getFileName());
+  }
+
+  private void flushLoop() {
+    while (running) {
+      JournalSegment segment;
+      long target;
+      int from;
+      int to;
+      lock.lock();
+      try {
+        while (durableSequence == appendedSequence) {
+          flushRequested.await();
+        }
+        // Give concurrent appenders a moment to join this flush
+        if (groupCommitWindowMs > 0) {
+          groupCommitWindow.await(groupCommitWindowMs, TimeUnit.MILLISECONDS);
+        }
+        segment = current;
+        target = appendedSequence;
+        from = segment.flushedPosition;
+        to = segment.writePosition;
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        lock.unlock();
+      }
+
+      // Force outside the lock so appends can continue meanwhile. Earlier
+      // segments were forced when they were rolled.
+      if (to > from) {
+        segment.buffer().force(from, to - from);
+      }
+
+      lock.lock();
+      try {
+        segment.flushedPosition = Math.max(segment.flushedPosition, to);
+        durableSequence = Math.max(durableSequence, target);
+        flushed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  // Caller holds the lock
+  private void roll(int minimumBytes) throws IOException {
+    JournalSegment previous = current;
+    previous.force();
+    current = createSegment(Math.max(segmentBytes, minimumBytes));
+    previous.seal();
+  }
+
+  private JournalSegment createSegment(int size) throws IOException {
+    Path path = journalDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    return new JournalSegment(path, channel, buffer);
+  }
+
+  private static boolean isSegment(Path path) {
+    String name = path.getFileName().toString();
+    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+  }
+
+  private static long segmentNumber(Path path) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+}
@@ -0,0 +1,115 @@
+package io.fermion.az.health.garmin.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One memory-mapped journal file.
+ *
+ * Records are laid out as {@code [int length][int crc32][payload]}; a zero
+ * length marks the end of written data. A segment is deleted once it has been
+ * sealed (no more appends) and every record in it has been committed.
+ */
+class JournalSegment {
+
+  static final int HEADER_BYTES = 8;
+
+  private static final Logger log = LoggerFactory.getLogger(JournalSegment.class);
+
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+
+  // Guarded by the journal lock
+  int writePosition;
+  int flushedPosition;
+  private int appended;
+
+  private final AtomicInteger committed = new AtomicInteger();
+  private volatile boolean sealed;
+  private final AtomicBoolean deleted = new AtomicBoolean();
+
+  JournalSegment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+    this.path = path;
+    this.channel = channel;
+    this.buffer = buffer;
+  }
+
+  Path path() {
+    return path;
+  }
+
+  MappedByteBuffer buffer() {
+    return buffer;
+  }
+
+  int remaining() {
+    return buffer.capacity() - writePosition;
+  }
+
+  /**
+   * Write a record at the current position. Caller holds the journal lock and
+   * has checked {@link #remaining()}.
+   */
+  void write(byte[] payload, int crc) {
+    int position = writePosition;
+    buffer.putInt(position + 4, crc);
+    buffer.put(position + HEADER_BYTES, payload, 0, payload.length);
+    // Length last, so a torn write reads back as end-of-data
+    buffer.putInt(position, payload.length);
+    writePosition = position + HEADER_BYTES + payload.length;
+    appended++;
+  }
+
+  /**
+   * Count a record found while replaying an existing segment.
+   */
+  void recovered() {
+    appended++;
+  }
+
+  /**
+   * Whether records were written and all of them have been committed. Caller
+   * holds the journal lock.
+   */
+  boolean isDrained() {
+    return appended > 0 && committed.get() >= appended;
+  }
+
+  void force() {
+    if (writePosition > flushedPosition) {
+      buffer.force(flushedPosition, writePosition - flushedPosition);
+      flushedPosition = writePosition;
+    }
+  }
+
+  void seal() {
+    sealed = true;
+    deleteIfDone();
+  }
+
+  void commit() {
+    committed.incrementAndGet();
+    deleteIfDone();
+  }
+
+  private void deleteIfDone() {
+    if (sealed && committed.get() >= appended && deleted.compareAndSet(false, true)) {
+      try {
+        channel.close();
+        Files.deleteIfExists(path);
+        log.debug("Deleted fully committed journal segment {}", path.getFileName());
+      } catch (IOException e) {
+        log.warn("Could not delete journal segment {}: {}", path, e.getMessage());
+      }
+    }
+  }
+}
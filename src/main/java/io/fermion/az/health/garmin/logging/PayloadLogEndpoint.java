@@ -0,0 +1,40 @@
+package io.fermion.az.health.garmin.logging;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/payloadlog}: sample rates and buffer of the
+ * {@link PayloadLogger}. POST {@code {"userId": "..."}} to capture one user's
+ * payloads in full, or {@code {"userId": null}} to stop.
+ */
+@Component
+@Endpoint(id = "payloadlog")
+public class PayloadLogEndpoint {
+
+  private final PayloadLogger payloadLogger;
+
+  public PayloadLogEndpoint(PayloadLogger payloadLogger) {
+    this.payloadLogger = payloadLogger;
+  }
+
+  @ReadOperation
+  public Map<String, Object> payloadLog() {
+    Map<String, Object> status = new HashMap<>();
+    status.put("sampleRates", payloadLogger.getSampleRates());
+    status.put("buffered", payloadLogger.getBuffered());
+    status.put("debugUser", payloadLogger.getDebugUser());
+    return status;
+  }
+
+  @WriteOperation
+  public void debugUser(@Nullable String userId) {
+    payloadLogger.setDebugUser(userId);
+  }
+}
@@ -0,0 +1,234 @@
+package io.fermion.az.health.garmin.logging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Sampled logging of request and response bodies to the
+ * {@code garmin.payloads} logger.
+ *
+ * Callers ask {@link #capture} whether to log a payload, at the endpoint's
+ * sample rate, and pass it to {@link #log} if so. Payloads are cut to
+ * {@code max-bytes} and put in a ring buffer of {@code buffer-entries},
+ * dropping the oldest when full; one writer thread redacts and logs them, so
+ * a webhook storm never waits on the console. Redaction runs after the cut,
+ * so it also covers a value the cut left unterminated. Payloads of the debug
+ * user are always captured, in full.
+ */
+@Component
+public class PayloadLogger {
+
+  private static final Logger log = LoggerFactory.getLogger(PayloadLogger.class);
+  private static final Logger payloads = LoggerFactory.getLogger("garmin.payloads");
+
+  private final ArrayBlockingQueue<Entry> buffer;
+  private final Map<String, Double> sampleRates;
+  private final double defaultSampleRate;
+  private final int maxBytes;
+  private final List<Pattern> redactions;
+  private final Counter written;
+  private final Counter dropped;
+  private volatile String debugUser;
+  private volatile boolean running;
+  private Thread writer;
+
+  public PayloadLogger(
+      @Value("${garmin.payload-log.sample-rates:}") List<String> sampleRates,
+      @Value("${garmin.payload-log.default-sample-rate:0}") double defaultSampleRate,
+      @Value("${garmin.payload-log.max-bytes:2048}") int maxBytes,
+      @Value("${garmin.payload-log.buffer-entries:256}") int bufferEntries,
+      @Value("${garmin.payload-log.redact-keys:access_token,refresh_token,id_token,code,code_verifier,client_secret,state}")
+      List<String> redactKeys,
+      @Value("${garmin.payload-log.debug-user:}") String debugUser,
+      MeterRegistry meterRegistry) {
+    this.buffer = new ArrayBlockingQueue<>(bufferEntries);
+    this.sampleRates = parseRates(sampleRates);
+    this.defaultSampleRate = defaultSampleRate;
+    this.maxBytes = maxBytes;
+    this.redactions = redactions(redactKeys);
+    this.debugUser = debugUser.isBlank() ? null : debugUser;
+    this.written = Counter.builder("garmin.payload-log.entries").tag("result", "written")
+        .description("Payloads written to the payload log").register(meterRegistry);
+    this.dropped = Counter.builder("garmin.payload-log.entries").tag("result", "dropped")
+        .description("Payloads dropped because the buffer was full").register(meterRegistry);
+  }
+
+  public enum Capture {
+    NONE,
+    /** Sampled; cut to {@code max-bytes} */
+    SAMPLE,
+    /** The debug user's; logged whole */
+    FULL
+  }
+
+  private record Entry(String endpoint, String userId, byte[] payload, int length, boolean full) {
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    writer = Thread.ofPlatform().daemon().name("payload-logger").start(this::writeLoop);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    writer.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  /**
+   * @param userId our user id or a Garmin user id; may be {@code null}
+   */
+  public Capture capture(String endpoint, String userId) {
+    if (userId != null && userId.equals(debugUser)) {
+      return Capture.FULL;
+    }
+    return sampled(endpoint) ? Capture.SAMPLE : Capture.NONE;
+  }
+
+  /**
+   * As {@link #capture(String, String)} for a payload about several users.
+   */
+  public <T> Capture capture(String endpoint, Collection<T> items, Function<T, String> userId) {
+    String debug = debugUser;
+    if (debug != null) {
+      for (T item : items) {
+        if (debug.equals(userId.apply(item))) {
+          return Capture.FULL;
+        }
+      }
+    }
+    return sampled(endpoint) ? Capture.SAMPLE : Capture.NONE;
+  }
+
+  /**
+   * Queue a payload for the writer. {@code payload} must not be changed
+   * afterwards.
+   */
+  public void log(Capture capture, String endpoint, String userId, byte[] payload) {
+    if (capture == Capture.NONE) {
+      return;
+    }
+    boolean full = capture == Capture.FULL || payload.length <= maxBytes;
+    Entry entry = new Entry(endpoint, userId, full ? payload : Arrays.copyOf(payload, maxBytes), payload.length,
+        full);
+    while (!buffer.offer(entry)) {
+      if (buffer.poll() != null) {
+        dropped.increment();
+      }
+    }
+  }
+
+  public void log(Capture capture, String endpoint, String userId, String payload) {
+    if (capture != Capture.NONE) {
+      log(capture, endpoint, userId, payload.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  public String getDebugUser() {
+    return debugUser;
+  }
+
+  /**
+   * Capture every payload of {@code userId} in full; {@code null} to stop.
+   */
+  public void setDebugUser(String userId) {
+    debugUser = userId == null || userId.isBlank() ? null : userId;
+    log.info("Payload debug user is now {}", debugUser);
+  }
+
+  public Map<String, Double> getSampleRates() {
+    return sampleRates;
+  }
+
+  public int getBuffered() {
+    return buffer.size();
+  }
+
+  /**
+   * The payload with the values of the redacted keys, in JSON or in a query
+   * string or form, and bearer tokens replaced.
+   */
+  String redact(String payload) {
+    for (Pattern pattern : redactions) {
+      payload = pattern.matcher(payload).replaceAll("$1[REDACTED]");
+    }
+    return payload;
+  }
+
+  private boolean sampled(String endpoint) {
+    double rate = sampleRates.getOrDefault(endpoint, defaultSampleRate);
+    return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  private void writeLoop() {
+    while (running || !buffer.isEmpty()) {
+      try {
+        Entry entry = buffer.poll(200, TimeUnit.MILLISECONDS);
+        if (entry != null) {
+          write(entry);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Could not write payload log entry: {}", e.getMessage());
+      }
+    }
+  }
+
+  private void write(Entry entry) {
+    String text = redact(new String(entry.payload(), StandardCharsets.UTF_8));
+    payloads.info("endpoint={} user={} bytes={}{} payload={}", entry.endpoint(), entry.userId(), entry.length(),
+        entry.full() ? "" : " truncated=true", text);
+    written.increment();
+  }
+
+  private static Map<String, Double> parseRates(List<String> rates) {
+    Map<String, Double> parsed = new HashMap<>();
+    for (String rate : rates) {
+      if (rate.isBlank()) {
+        continue;
+      }
+      int colon = rate.lastIndexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException("Expected endpoint:rate in garmin.payload-log.sample-rates, got " + rate);
+      }
+      parsed.put(rate.substring(0, colon).trim(), Double.parseDouble(rate.substring(colon + 1).trim()));
+    }
+    return Map.copyOf(parsed);
+  }
+
+  private static List<Pattern> redactions(List<String> keys) {
+    String alternatives = keys.stream().map(String::trim).filter(key -> !key.isEmpty()).map(Pattern::quote)
+        .collect(Collectors.joining("|"));
+    return List.of(
+        // "key": "value", or "key": "val where the payload was cut
+        Pattern.compile("(\"(?:" + alternatives + ")\"\\s*:\\s*)\"(?:[^\"\\\\]|\\\\.)*(?:\"|\\\\?\\z)",
+            Pattern.CASE_INSENSITIVE),
+        // key=value in a query string or form
+        Pattern.compile("((?:^|[?&\\s])(?:" + alternatives + ")=)[^&\\s]*", Pattern.CASE_INSENSITIVE),
+        Pattern.compile("(bearer\\s+)[A-Za-z0-9._~+/=-]+", Pattern.CASE_INSENSITIVE));
+  }
+}
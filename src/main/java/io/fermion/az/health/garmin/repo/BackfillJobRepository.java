@@ -0,0 +1,16 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.entity.BackfillJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BackfillJobRepository extends JpaRepository<BackfillJob, String> {
+
+  List<BackfillJob> findByUserIdOrderByCreatedAtDesc(String userId);
+
+  List<BackfillJob> findByStatusIn(Collection<BackfillJob.Status> statuses);
+}
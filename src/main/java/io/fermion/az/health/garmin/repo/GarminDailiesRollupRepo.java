@@ -0,0 +1,20 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup;
+import io.fermion.az.health.garmin.entity.GarminDailiesRollupId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface GarminDailiesRollupRepo extends JpaRepository<GarminDailiesRollup, GarminDailiesRollupId> {
+
+  @Query("SELECT r FROM GarminDailiesRollup r WHERE r.id.userId = :userId AND r.id.garminUserId = :garminUserId"
+      + " AND r.id.period = :period AND r.id.periodStart BETWEEN :from AND :to AND r.days > 0"
+      + " ORDER BY r.id.periodStart")
+  List<GarminDailiesRollup> findByUserIdAndGarminUserIdAndPeriodStartBetween(String userId, String garminUserId,
+      GarminDailiesRollup.Period period, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,252 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup.Period;
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup.Totals;
+import io.fermion.az.health.garmin.entity.GarminDailiesRollupId;
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Additive writes to {@code garmin_dailies_rollup}.
+ *
+ * Rollups are never rewritten from a read: every change is a delta added to
+ * the stored totals with {@code INSERT ... ON CONFLICT} (PostgreSQL) or
+ * {@code MERGE} (H2), so concurrent writers to the same week or month
+ * compose. Deltas are written in key order to keep lock order stable. Batch
+ * statements are metered like those of {@link GarminDailiesSummaryBulkWriter}.
+ *
+ * Rollups are kept per {@code garmin_user_id}, like the summaries, so a user
+ * who reconnects with another Garmin account starts from empty totals.
+ * A rebuild deletes and re-adds, which does not compose with a concurrent
+ * delta; both therefore take the user's row in
+ * {@code garmin_dailies_rollup_lock} first (see {@link #lockUsers}).
+ */
+@Repository
+public class GarminDailiesRollupWriter {
+
+  private static final String TABLE = "garmin_dailies_rollup";
+  private static final String LOCK_TABLE = "garmin_dailies_rollup_lock";
+
+  private static final List<String> TOTAL_COLUMNS = List.of("days", "steps", "distance_in_meters",
+      "active_kilocalories", "resting_heart_rate_sum", "resting_heart_rate_days", "stress_level_sum",
+      "stress_level_days", "body_battery_charged_sum", "body_battery_drained_sum", "body_battery_days");
+
+  private static final Comparator<GarminDailiesRollupId> KEY_ORDER = Comparator
+      .comparing(GarminDailiesRollupId::getUserId)
+      .thenComparing(GarminDailiesRollupId::getGarminUserId)
+      .thenComparing(GarminDailiesRollupId::getPeriod)
+      .thenComparing(GarminDailiesRollupId::getPeriodStart);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final Timer batchWrites;
+  private final DistributionSummary batchRows;
+  private volatile String addSql;
+  private volatile String lockSql;
+
+  public GarminDailiesRollupWriter(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.batchWrites = Timer.builder("garmin.db.batch.writes").tag("table", TABLE)
+        .description("JDBC batch statements written").register(meterRegistry);
+    this.batchRows = DistributionSummary.builder("garmin.db.batch.rows").tag("table", TABLE).baseUnit("rows")
+        .description("Rows per JDBC batch statement").register(meterRegistry);
+  }
+
+  /**
+   * Lock the rollups of {@code userIds} until the current transaction ends by
+   * upserting their rows in {@code garmin_dailies_rollup_lock}, in sorted
+   * order. Must be called inside the transaction that changes the rollups,
+   * before any summary or rollup row of those users is touched.
+   */
+  @Transactional
+  public void lockUsers(Collection<String> userIds) {
+    if (userIds.isEmpty()) {
+      return;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    List<Object[]> batchArgs = new TreeSet<>(userIds).stream().map(id -> new Object[] { id, now }).toList();
+    try {
+      jdbcTemplate.batchUpdate(lockSql(), batchArgs);
+    } catch (DuplicateKeyException e) {
+      // H2's MERGE does not wait on a row another transaction is inserting;
+      // it fails once that transaction commits. The row exists now, so the
+      // retry updates it and waits like any other lock holder.
+      jdbcTemplate.batchUpdate(lockSql(), batchArgs);
+    }
+  }
+
+  /**
+   * Apply upserted summaries to the rollups: what each summary contributed
+   * before is subtracted and what it contributes now is added.
+   *
+   * @param before totals of the rows as stored before the upsert; absent for
+   *               rows that were inserted
+   */
+  @Transactional
+  public void applyUpsert(Map<GarminDailiesSummaryId, Totals> before, Collection<GarminUserDailiesSummary> after) {
+    Map<GarminDailiesRollupId, Totals> deltas = new TreeMap<>(KEY_ORDER);
+    for (GarminUserDailiesSummary summary : after) {
+      Totals delta = Totals.ofDay(summary).minus(before.getOrDefault(summary.getId(), Totals.ZERO));
+      GarminDailiesSummaryId id = summary.getId();
+      addDay(deltas, id.getUserId(), id.getGarminUserId(), id.getCalendarDate(), delta);
+    }
+    add(deltas);
+  }
+
+  /**
+   * Recompute a user's rollups from their stored summaries.
+   *
+   * The user's lock row is taken first, so an ingest of the same user either
+   * committed before the rebuild (and is read by it) or waits for the rebuild
+   * to commit and adds its delta on top. Without the lock an ingest could add
+   * to a rollup recreated after the DELETE and still be read, counting it
+   * twice.
+   *
+   * @return the number of rollups written
+   */
+  @Transactional
+  public int rebuild(String userId) {
+    lockUsers(List.of(userId));
+    jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE user_id = ?", userId);
+    Map<GarminDailiesRollupId, Totals> totals = new TreeMap<>(KEY_ORDER);
+    jdbcTemplate.query("SELECT garmin_user_id, calendar_date, steps, distance_in_meters, active_kilocalories,"
+        + " resting_heart_rate_in_beats_per_minute, average_stress_level, body_battery_charged_value,"
+        + " body_battery_drained_value FROM garmin_dailies_summary WHERE user_id = ?",
+        rs -> {
+          Totals day = Totals.ofDay(rs.getObject(3, Integer.class), rs.getObject(4, Double.class),
+              rs.getObject(5, Integer.class), rs.getObject(6, Integer.class), rs.getObject(7, Integer.class),
+              rs.getObject(8, Integer.class), rs.getObject(9, Integer.class));
+          addDay(totals, userId, rs.getString(1), rs.getObject(2, LocalDate.class), day);
+        }, userId);
+    add(totals);
+    return totals.size();
+  }
+
+  public List<String> findUserIdsWithSummaries() {
+    return jdbcTemplate.queryForList("SELECT DISTINCT user_id FROM garmin_dailies_summary", String.class);
+  }
+
+  private static void addDay(Map<GarminDailiesRollupId, Totals> into, String userId, String garminUserId,
+      LocalDate date, Totals day) {
+    if (day.isZero()) {
+      return;
+    }
+    for (Period period : Period.values()) {
+      into.merge(new GarminDailiesRollupId(userId, garminUserId, period, period.start(date)), day, Totals::plus);
+    }
+  }
+
+  private void add(Map<GarminDailiesRollupId, Totals> deltas) {
+    if (deltas.isEmpty()) {
+      return;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+    for (Map.Entry<GarminDailiesRollupId, Totals> entry : deltas.entrySet()) {
+      GarminDailiesRollupId id = entry.getKey();
+      Totals t = entry.getValue();
+      batchArgs.add(new Object[] { id.getUserId(), id.getGarminUserId(), id.getPeriod().name(), id.getPeriodStart(), t.days(), t.steps(),
+          t.distanceInMeters(), t.activeKilocalories(), t.restingHeartRateSum(), t.restingHeartRateDays(),
+          t.stressLevelSum(), t.stressLevelDays(), t.bodyBatteryChargedSum(), t.bodyBatteryDrainedSum(),
+          t.bodyBatteryDays(), now });
+    }
+    batchRows.record(batchArgs.size());
+    batchWrites.record(() -> jdbcTemplate.batchUpdate(addSql(), batchArgs));
+  }
+
+  private String addSql() {
+    String sql = addSql;
+    if (sql == null) {
+      sql = isPostgres() ? postgresAdd() : mergeAdd();
+      addSql = sql;
+    }
+    return sql;
+  }
+
+  private String lockSql() {
+    String sql = lockSql;
+    if (sql == null) {
+      sql = isPostgres()
+          ? "INSERT INTO " + LOCK_TABLE + " (user_id, locked_at) VALUES (?, ?)"
+              + " ON CONFLICT (user_id) DO UPDATE SET locked_at = EXCLUDED.locked_at"
+          : "MERGE INTO " + LOCK_TABLE + " t USING (VALUES (CAST(? AS VARCHAR), CAST(? AS TIMESTAMP)))"
+              + " s (user_id, locked_at) ON t.user_id = s.user_id"
+              + " WHEN MATCHED THEN UPDATE SET locked_at = s.locked_at"
+              + " WHEN NOT MATCHED THEN INSERT (user_id, locked_at) VALUES (s.user_id, s.locked_at)";
+      lockSql = sql;
+    }
+    return sql;
+  }
+
+  private boolean isPostgres() {
+    String product = jdbcTemplate.execute(
+        (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+    return "PostgreSQL".equalsIgnoreCase(product);
+  }
+
+  private static List<String> insertColumns() {
+    List<String> columns = new ArrayList<>(List.of("user_id", "garmin_user_id", "period", "period_start"));
+    columns.addAll(TOTAL_COLUMNS);
+    columns.add("last_modified_at");
+    return columns;
+  }
+
+  private static String postgresAdd() {
+    List<String> columns = insertColumns();
+    List<String> updates = new ArrayList<>();
+    for (String column : TOTAL_COLUMNS) {
+      updates.add(column + " = " + TABLE + "." + column + " + EXCLUDED." + column);
+    }
+    updates.add("last_modified_at = EXCLUDED.last_modified_at");
+    return "INSERT INTO " + TABLE + " (" + String.join(", ", columns) + ") VALUES ("
+        + String.join(", ", columns.stream().map(c -> "?").toList())
+        + ") ON CONFLICT (user_id, garmin_user_id, period, period_start) DO UPDATE SET " + String.join(", ", updates);
+  }
+
+  /**
+   * Standard SQL {@code MERGE}, as supported by H2. Parameters are typed
+   * explicitly because the source row is a bare {@code VALUES} list.
+   */
+  private static String mergeAdd() {
+    List<String> columns = insertColumns();
+    Map<String, String> types = new HashMap<>();
+    types.put("user_id", "VARCHAR");
+    types.put("garmin_user_id", "VARCHAR");
+    types.put("period", "VARCHAR");
+    types.put("period_start", "DATE");
+    types.put("distance_in_meters", "DOUBLE PRECISION");
+    types.put("last_modified_at", "TIMESTAMP");
+    List<String> updates = new ArrayList<>();
+    for (String column : TOTAL_COLUMNS) {
+      updates.add(column + " = t." + column + " + s." + column);
+    }
+    updates.add("last_modified_at = s.last_modified_at");
+    return "MERGE INTO " + TABLE + " t USING (VALUES ("
+        + String.join(", ", columns.stream().map(c -> "CAST(? AS " + types.getOrDefault(c, "BIGINT") + ")").toList())
+        + ")) s (" + String.join(", ", columns) + ") ON t.user_id = s.user_id"
+        + " AND t.garmin_user_id = s.garmin_user_id AND t.period = s.period"
+        + " AND t.period_start = s.period_start"
+        + " WHEN MATCHED THEN UPDATE SET " + String.join(", ", updates)
+        + " WHEN NOT MATCHED THEN INSERT (" + String.join(", ", columns) + ") VALUES ("
+        + String.join(", ", columns.stream().map(c -> "s." + c).toList()) + ")";
+  }
+}
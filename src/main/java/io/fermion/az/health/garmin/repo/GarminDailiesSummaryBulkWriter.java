@@ -0,0 +1,302 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup.Totals;
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk upsert of dailies summaries keyed on {@link GarminDailiesSummaryId}.
+ *
+ * Garmin re-sends the same user/day summary as new data syncs, so writes are
+ * upserts. {@code JpaRepository.save} costs a SELECT plus an INSERT or UPDATE
+ * per row; this writer instead probes the batch's keys with one query and
+ * writes every row in a single JDBC batch of {@code INSERT ... ON CONFLICT}
+ * (PostgreSQL) or {@code MERGE} (H2) statements. The weekly and monthly
+ * rollups are updated in the same transaction from the probed old values,
+ * after taking the users' rollup locks; see {@link GarminDailiesRollupWriter}. Each batch statement is timed in
+ * {@code garmin.db.batch.writes} and its size recorded in
+ * {@code garmin.db.batch.rows}.
+ */
+@Repository
+public class GarminDailiesSummaryBulkWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(GarminDailiesSummaryBulkWriter.class);
+
+  private static final String TABLE = "garmin_dailies_summary";
+  private static final int CHUNK_SIZE = 500;
+
+  private record Column(String name, String sqlType, Function<GarminUserDailiesSummary, Object> accessor) {
+  }
+
+  private static final List<Column> KEY_COLUMNS = List.of(
+      new Column("user_id", "VARCHAR", s -> s.getId().getUserId()),
+      new Column("garmin_user_id", "VARCHAR", s -> s.getId().getGarminUserId()),
+      new Column("calendar_date", "DATE", s -> s.getId().getCalendarDate()));
+
+  private static final List<Column> VALUE_COLUMNS = List.of(
+      new Column("summary_id", "VARCHAR", GarminUserDailiesSummary::getSummaryId),
+      new Column("activity_type", "VARCHAR", GarminUserDailiesSummary::getActivityType),
+      new Column("active_kilocalories", "INTEGER", GarminUserDailiesSummary::getActiveKilocalories),
+      new Column("bmr_kilocalories", "INTEGER", GarminUserDailiesSummary::getBmrKilocalories),
+      new Column("steps", "INTEGER", GarminUserDailiesSummary::getSteps),
+      new Column("pushes", "INTEGER", GarminUserDailiesSummary::getPushes),
+      new Column("distance_in_meters", "DOUBLE PRECISION", GarminUserDailiesSummary::getDistanceInMeters),
+      new Column("push_distance_in_meters", "DOUBLE PRECISION", GarminUserDailiesSummary::getPushDistanceInMeters),
+      new Column("duration_in_seconds", "BIGINT", GarminUserDailiesSummary::getDurationInSeconds),
+      new Column("active_time_in_seconds", "BIGINT", GarminUserDailiesSummary::getActiveTimeInSeconds),
+      new Column("start_time_in_seconds", "BIGINT", GarminUserDailiesSummary::getStartTimeInSeconds),
+      new Column("start_time_offset_in_seconds", "BIGINT", GarminUserDailiesSummary::getStartTimeOffsetInSeconds),
+      new Column("moderate_intensity_duration_in_seconds", "BIGINT",
+          GarminUserDailiesSummary::getModerateIntensityDurationInSeconds),
+      new Column("vigorous_intensity_duration_in_seconds", "BIGINT",
+          GarminUserDailiesSummary::getVigorousIntensityDurationInSeconds),
+      new Column("floors_climbed", "INTEGER", GarminUserDailiesSummary::getFloorsClimbed),
+      new Column("min_heart_rate_in_beats_per_minute", "INTEGER",
+          GarminUserDailiesSummary::getMinHeartRateInBeatsPerMinute),
+      new Column("max_heart_rate_in_beats_per_minute", "INTEGER",
+          GarminUserDailiesSummary::getMaxHeartRateInBeatsPerMinute),
+      new Column("average_heart_rate_in_beats_per_minute", "INTEGER",
+          GarminUserDailiesSummary::getAverageHeartRateInBeatsPerMinute),
+      new Column("resting_heart_rate_in_beats_per_minute", "INTEGER",
+          GarminUserDailiesSummary::getRestingHeartRateInBeatsPerMinute),
+      new Column("time_offset_heart_rate_samples", "JSON", GarminUserDailiesSummary::getTimeOffsetHeartRateSamples),
+      new Column("heart_rate_samples", "VARBINARY", GarminUserDailiesSummary::getHeartRateSamples),
+      new Column("source", "VARCHAR", GarminUserDailiesSummary::getSource),
+      new Column("steps_goal", "INTEGER", GarminUserDailiesSummary::getStepsGoal),
+      new Column("pushes_goal", "INTEGER", GarminUserDailiesSummary::getPushesGoal),
+      new Column("intensity_duration_goal_in_seconds", "BIGINT",
+          GarminUserDailiesSummary::getIntensityDurationGoalInSeconds),
+      new Column("floors_climbed_goal", "INTEGER", GarminUserDailiesSummary::getFloorsClimbedGoal),
+      new Column("average_stress_level", "INTEGER", GarminUserDailiesSummary::getAverageStressLevel),
+      new Column("max_stress_level", "INTEGER", GarminUserDailiesSummary::getMaxStressLevel),
+      new Column("stress_duration_in_seconds", "BIGINT", GarminUserDailiesSummary::getStressDurationInSeconds),
+      new Column("rest_stress_duration_in_seconds", "BIGINT",
+          GarminUserDailiesSummary::getRestStressDurationInSeconds),
+      new Column("activity_stress_duration_in_seconds", "BIGINT",
+          GarminUserDailiesSummary::getActivityStressDurationInSeconds),
+      new Column("low_stress_duration_in_seconds", "BIGINT", GarminUserDailiesSummary::getLowStressDurationInSeconds),
+      new Column("medium_stress_duration_in_seconds", "BIGINT",
+          GarminUserDailiesSummary::getMediumStressDurationInSeconds),
+      new Column("high_stress_duration_in_seconds", "BIGINT",
+          GarminUserDailiesSummary::getHighStressDurationInSeconds),
+      new Column("stress_qualifier", "VARCHAR", GarminUserDailiesSummary::getStressQualifier),
+      new Column("body_battery_charged_value", "INTEGER", GarminUserDailiesSummary::getBodyBatteryChargedValue),
+      new Column("body_battery_drained_value", "INTEGER", GarminUserDailiesSummary::getBodyBatteryDrainedValue),
+      new Column("content_fingerprint", "VARCHAR", GarminUserDailiesSummary::getContentFingerprint),
+      new Column("last_modified_at", "TIMESTAMP", GarminUserDailiesSummary::getLastModifiedAt));
+
+  private static final Column CREATED_AT = new Column("created_at", "TIMESTAMP",
+      GarminUserDailiesSummary::getCreatedAt);
+
+  private static final List<Column> INSERT_COLUMNS;
+
+  static {
+    List<Column> columns = new ArrayList<>(KEY_COLUMNS);
+    columns.addAll(VALUE_COLUMNS);
+    columns.add(CREATED_AT);
+    INSERT_COLUMNS = List.copyOf(columns);
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+  private final GarminDailiesRollupWriter rollupWriter;
+  private final Timer batchWrites;
+  private final DistributionSummary batchRows;
+  private volatile String upsertSql;
+  private volatile String probeFrom;
+
+  public GarminDailiesSummaryBulkWriter(JdbcTemplate jdbcTemplate, GarminDailiesRollupWriter rollupWriter,
+      MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.rollupWriter = rollupWriter;
+    this.batchWrites = Timer.builder("garmin.db.batch.writes").tag("table", TABLE)
+        .description("JDBC batch statements written").register(meterRegistry);
+    this.batchRows = DistributionSummary.builder("garmin.db.batch.rows").tag("table", TABLE).baseUnit("rows")
+        .description("Rows per JDBC batch statement").register(meterRegistry);
+  }
+
+  /**
+   * Rows written by an upsert. Under concurrent writers to the same keys the
+   * split between inserted and updated reflects the state seen by the probe.
+   */
+  public record UpsertResult(int inserted, int updated) {
+    public static final UpsertResult EMPTY = new UpsertResult(0, 0);
+
+    public int total() {
+      return inserted + updated;
+    }
+
+    public UpsertResult plus(UpsertResult other) {
+      return new UpsertResult(inserted + other.inserted, updated + other.updated);
+    }
+  }
+
+  /**
+   * Insert or update the given summaries. When a batch holds several rows for
+   * the same key only the last one is written. {@code created_at} is kept on
+   * update; {@code last_modified_at} is set on every write.
+   */
+  @Transactional
+  public UpsertResult upsert(Collection<GarminUserDailiesSummary> summaries) {
+    if (summaries.isEmpty()) {
+      return UpsertResult.EMPTY;
+    }
+    long start = System.nanoTime();
+
+    Map<GarminDailiesSummaryId, GarminUserDailiesSummary> latest = new LinkedHashMap<>();
+    for (GarminUserDailiesSummary summary : summaries) {
+      latest.put(summary.getId(), summary);
+    }
+    List<GarminUserDailiesSummary> rows = new ArrayList<>(latest.values());
+    rollupWriter.lockUsers(
+        latest.keySet().stream().map(GarminDailiesSummaryId::getUserId).collect(Collectors.toSet()));
+
+    UpsertResult result = UpsertResult.EMPTY;
+    for (int from = 0; from < rows.size(); from += CHUNK_SIZE) {
+      result = result.plus(upsertChunk(rows.subList(from, Math.min(rows.size(), from + CHUNK_SIZE))));
+    }
+
+    log.debug("Upserted {} dailies summaries ({} inserted, {} updated) in {} ms", rows.size(),
+        result.inserted(), result.updated(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return result;
+  }
+
+  private UpsertResult upsertChunk(List<GarminUserDailiesSummary> rows) {
+    Map<GarminDailiesSummaryId, Totals> existing = findExisting(rows);
+
+    LocalDateTime now = LocalDateTime.now();
+    List<Object[]> batchArgs = new ArrayList<>(rows.size());
+    for (GarminUserDailiesSummary row : rows) {
+      if (row.getCreatedAt() == null) {
+        row.setCreatedAt(now);
+      }
+      row.setLastModifiedAt(now);
+      batchArgs.add(toArgs(row));
+    }
+    batchRows.record(batchArgs.size());
+    batchWrites.record(() -> jdbcTemplate.batchUpdate(upsertSql(), batchArgs));
+    rollupWriter.applyUpsert(existing, rows);
+
+    return new UpsertResult(rows.size() - existing.size(), existing.size());
+  }
+
+  /**
+   * What the stored rows with the batch's keys contribute to the rollups.
+   * The rows are locked, in key order, so the rollup delta is computed
+   * against the values this upsert replaces.
+   */
+  private Map<GarminDailiesSummaryId, Totals> findExisting(List<GarminUserDailiesSummary> rows) {
+    String tuples = rows.stream().map(r -> "(?, ?, ?)").collect(Collectors.joining(", "));
+    String sql = "SELECT user_id, garmin_user_id, calendar_date, steps, distance_in_meters, active_kilocalories,"
+        + " resting_heart_rate_in_beats_per_minute, average_stress_level, body_battery_charged_value,"
+        + " body_battery_drained_value FROM " + probeFrom()
+        + " WHERE (user_id, garmin_user_id, calendar_date) IN (" + tuples + ")"
+        + " ORDER BY user_id, garmin_user_id, calendar_date FOR UPDATE";
+    Object[] args = new Object[rows.size() * 3];
+    int i = 0;
+    for (GarminUserDailiesSummary row : rows) {
+      args[i++] = row.getId().getUserId();
+      args[i++] = row.getId().getGarminUserId();
+      args[i++] = row.getId().getCalendarDate();
+    }
+    Map<GarminDailiesSummaryId, Totals> existing = new HashMap<>();
+    jdbcTemplate.query(sql, rs -> {
+      existing.put(new GarminDailiesSummaryId(rs.getString(1), rs.getString(2), rs.getObject(3, LocalDate.class)),
+          Totals.ofDay(rs.getObject(4, Integer.class), rs.getObject(5, Double.class), rs.getObject(6, Integer.class),
+              rs.getObject(7, Integer.class), rs.getObject(8, Integer.class), rs.getObject(9, Integer.class),
+              rs.getObject(10, Integer.class)));
+    }, args);
+    return existing;
+  }
+
+  private static Object[] toArgs(GarminUserDailiesSummary row) {
+    List<Column> columns = INSERT_COLUMNS;
+    Object[] args = new Object[columns.size()];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = columns.get(i).accessor().apply(row);
+    }
+    return args;
+  }
+
+  private String upsertSql() {
+    String sql = upsertSql;
+    if (sql == null) {
+      sql = isPostgres() ? postgresUpsert() : mergeUpsert();
+      upsertSql = sql;
+    }
+    return sql;
+  }
+
+  /**
+   * The primary key leads with {@code calendar_date}, so a lookup by user
+   * needs {@code idx_dailies_summary_user_date}. PostgreSQL's planner picks
+   * it; H2 keeps probing the primary key, which scans every user's rows for
+   * the batch's dates, unless told otherwise.
+   */
+  private String probeFrom() {
+    String from = probeFrom;
+    if (from == null) {
+      from = isPostgres() ? TABLE : TABLE + " USE INDEX (" + GarminUserDailiesSummary.USER_DATE_INDEX + ")";
+      probeFrom = from;
+    }
+    return from;
+  }
+
+  private boolean isPostgres() {
+    String product = jdbcTemplate.execute(
+        (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+    return "PostgreSQL".equalsIgnoreCase(product);
+  }
+
+  private static String postgresUpsert() {
+    List<Column> columns = INSERT_COLUMNS;
+    return "INSERT INTO " + TABLE + " ("
+        + columns.stream().map(Column::name).collect(Collectors.joining(", "))
+        + ") VALUES ("
+        + columns.stream().map(c -> "JSON".equals(c.sqlType()) ? "CAST(? AS json)" : "?")
+            .collect(Collectors.joining(", "))
+        + ") ON CONFLICT (user_id, garmin_user_id, calendar_date) DO UPDATE SET "
+        + VALUE_COLUMNS.stream().map(c -> c.name() + " = EXCLUDED." + c.name()).collect(Collectors.joining(", "));
+  }
+
+  /**
+   * Standard SQL {@code MERGE}, as supported by H2. Parameters are typed
+   * explicitly because the source row is a bare {@code VALUES} list.
+   */
+  private static String mergeUpsert() {
+    List<Column> columns = INSERT_COLUMNS;
+    String names = columns.stream().map(Column::name).collect(Collectors.joining(", "));
+    return "MERGE INTO " + TABLE + " t USING (VALUES ("
+        + columns.stream()
+            .map(c -> "JSON".equals(c.sqlType()) ? "? FORMAT JSON" : "CAST(? AS " + c.sqlType() + ")")
+            .collect(Collectors.joining(", "))
+        + ")) s (" + names + ") ON "
+        + KEY_COLUMNS.stream().map(c -> "t." + c.name() + " = s." + c.name()).collect(Collectors.joining(" AND "))
+        + " WHEN MATCHED THEN UPDATE SET "
+        + VALUE_COLUMNS.stream().map(c -> c.name() + " = s." + c.name()).collect(Collectors.joining(", "))
+        + " WHEN NOT MATCHED THEN INSERT (" + names + ") VALUES ("
+        + columns.stream().map(c -> "s." + c.name()).collect(Collectors.joining(", "))
+        + ")";
+  }
+}
@@ -1,17 +1,27 @@
 package io.fermion.az.health.garmin.repo;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import jakarta.persistence.QueryHint;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
 import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
 
 @Repository
-public interface GarminDailiesSummaryRepo extends JpaRepository<GarminUserDailiesSummary, Long> {
+public interface GarminDailiesSummaryRepo extends JpaRepository<GarminUserDailiesSummary, GarminDailiesSummaryId> {
 
   @Query("SELECT s FROM GarminUserDailiesSummary s WHERE s.id.userId = :userId ORDER BY s.id.calendarDate DESC")
   List<GarminUserDailiesSummary> findByUserIdOrderByDateDesc(String userId);
@@ -20,4 +30,69 @@ public interface GarminDailiesSummaryRepo extends JpaRepository<GarminUserDailie
   List<GarminUserDailiesSummary> findByUserIdAndDateRange(String userId,
       LocalDate startDate,
       LocalDate endDate);
+
+  /**
+   * Keyset page of a user's summaries from {@code startDate} to
+   * {@code endDate}, ordered by date and then Garmin user id, starting after
+   * ({@code afterDate}, {@code afterGarminUserId}). Pass the day before
+   * {@code startDate} and an empty id for the first page. Rows are read with
+   * a database cursor; the stream must be consumed inside a transaction and
+   * closed.
+   */
+  @QueryHints({
+      @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "200"),
+      @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  @Query("SELECT g FROM GarminUserDailiesSummary g WHERE g.id.userId = :userId"
+      + " AND g.id.calendarDate BETWEEN :startDate AND :endDate"
+      + " AND (g.id.calendarDate > :afterDate OR (g.id.calendarDate = :afterDate AND g.id.garminUserId > :afterGarminUserId))"
+      + " ORDER BY g.id.calendarDate, g.id.garminUserId")
+  Stream<GarminUserDailiesSummary> streamByUserIdAndDateRangeAfter(String userId,
+      LocalDate startDate,
+      LocalDate endDate,
+      LocalDate afterDate,
+      String afterGarminUserId,
+      Limit limit);
+
+  @Query("SELECT g FROM GarminUserDailiesSummary g WHERE g.id.calendarDate = :date AND g.id.userId IN :userIds")
+  List<GarminUserDailiesSummary> findByDateAndUserIdIn(LocalDate date, Collection<String> userIds);
+
+  /**
+   * Heart rate samples of a user's summaries on the given days, newest row
+   * first within a day.
+   */
+  @Query("SELECT g.id.calendarDate AS calendarDate, g.heartRateSamples AS heartRateSamples,"
+      + " g.timeOffsetHeartRateSamples AS timeOffsetHeartRateSamples FROM GarminUserDailiesSummary g"
+      + " WHERE g.id.userId = :userId AND g.id.calendarDate IN :dates ORDER BY g.id.calendarDate, g.lastModifiedAt DESC")
+  List<HeartRateSamplesRow> findHeartRateSamples(String userId, Collection<LocalDate> dates);
+
+  interface HeartRateSamplesRow {
+    LocalDate getCalendarDate();
+
+    byte[] getHeartRateSamples();
+
+    String getTimeOffsetHeartRateSamples();
+  }
+
+  /**
+   * Which version of a summary is stored, without loading its columns.
+   */
+  @Query("SELECT s.summaryId AS summaryId, s.lastModifiedAt AS lastModifiedAt FROM GarminUserDailiesSummary s"
+      + " WHERE s.id.userId = :userId AND s.id.garminUserId = :garminUserId AND s.id.calendarDate = :date")
+  Optional<SummaryVersion> findVersion(String userId, String garminUserId, LocalDate date);
+
+  interface SummaryVersion {
+    String getSummaryId();
+
+    LocalDateTime getLastModifiedAt();
+  }
+
+  @Query("SELECT s.summaryId AS summaryId, s.contentFingerprint AS contentFingerprint FROM GarminUserDailiesSummary s WHERE s.summaryId IN :summaryIds")
+  List<SummaryFingerprint> findFingerprintsBySummaryIds(Collection<String> summaryIds);
+
+  interface SummaryFingerprint {
+    String getSummaryId();
+
+    String getContentFingerprint();
+  }
 }
@@ -2,10 +2,14 @@ package io.fermion.az.health.garmin.repo;
 
 import io.fermion.az.health.garmin.entity.GarminUserTokens;
 import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,10 +23,24 @@ public interface GarminUserTokensRepository extends JpaRepository<GarminUserToke
 
   Optional<GarminUserTokens> findByIdGarminUserId(String garminUserId);
 
+  List<GarminUserTokens> findByIdGarminUserIdIn(Collection<String> garminUserIds);
+
+  List<GarminUserTokens> findByIdGarminUserIdInAndConnectStatus(Collection<String> garminUserIds,
+      GarminUserTokens.ConnectStatus connectStatus);
+
+  List<GarminUserTokens> findByIdUserIdInAndConnectStatus(Collection<String> userIds,
+      GarminUserTokens.ConnectStatus connectStatus);
+
   boolean existsByIdUserIdAndConnectStatus(String userId, GarminUserTokens.ConnectStatus connectStatus);
 
-  @Query("SELECT u FROM GarminUserTokens u WHERE u.accessTokenExpiry < CURRENT_TIMESTAMP AND u.refreshTokenExpiry > CURRENT_TIMESTAMP")
-  List<GarminUserTokens> findTokensNeedingRefresh();
+  /**
+   * Connected tokens whose access token expires before {@code expiringBefore}
+   * and that are not backing off after a failed refresh, soonest first.
+   */
+  @Query("SELECT u FROM GarminUserTokens u WHERE u.connectStatus = 'CONNECTED' AND u.accessTokenExpiry < :expiringBefore"
+      + " AND (u.nextRefreshAttemptAt IS NULL OR u.nextRefreshAttemptAt <= :now) ORDER BY u.accessTokenExpiry")
+  List<GarminUserTokens> findTokensNeedingRefresh(@Param("expiringBefore") LocalDateTime expiringBefore,
+      @Param("now") LocalDateTime now, Pageable pageable);
 
   // Helper methods
   default boolean hasConnectedAccount(String userId) {
@@ -33,4 +51,12 @@ public interface GarminUserTokensRepository extends JpaRepository<GarminUserToke
     return findByIdUserIdAndConnectStatus(userId, GarminUserTokens.ConnectStatus.CONNECTED)
         .orElse(null);
   }
+
+  default List<GarminUserTokens> findConnectedByUserIdIn(Collection<String> userIds) {
+    return findByIdUserIdInAndConnectStatus(userIds, GarminUserTokens.ConnectStatus.CONNECTED);
+  }
+
+  default List<GarminUserTokens> findConnectedByGarminUserIdIn(Collection<String> garminUserIds) {
+    return findByIdGarminUserIdInAndConnectStatus(garminUserIds, GarminUserTokens.ConnectStatus.CONNECTED);
+  }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.codec.HeartRateSampleCodec;
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves stored {@code time_offset_heart_rate_samples} JSON into the binary
+ * {@code heart_rate_samples} column, one keyset page of rows per
+ * transaction. On databases created before the column existed, add it
+ * first:
+ *
+ * <pre>
+ * ALTER TABLE garmin_dailies_summary ADD COLUMN heart_rate_samples BYTEA;
+ * </pre>
+ */
+@Repository
+public class HeartRateSampleConverter {
+
+  private static final Logger log = LoggerFactory.getLogger(HeartRateSampleConverter.class);
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public HeartRateSampleConverter(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * @param last        key of the last row looked at, or {@code null} when there were none
+   * @param rows        rows looked at; fewer than the limit means the table is done
+   * @param jsonBytes   size of the converted JSON
+   * @param binaryBytes size of the binary form
+   */
+  public record Batch(GarminDailiesSummaryId last, int rows, int converted, long jsonBytes, long binaryBytes) {
+  }
+
+  private record Pending(GarminDailiesSummaryId id, String json) {
+  }
+
+  /**
+   * Convert up to {@code limit} rows after {@code after} (or from the start
+   * when {@code null}). Rows whose JSON cannot be encoded are left as they
+   * are.
+   */
+  @Transactional
+  public Batch convertBatch(GarminDailiesSummaryId after, int limit) {
+    String afterKey = after == null ? ""
+        : " AND (user_id, garmin_user_id, calendar_date) > (?, ?, ?)";
+    Object[] args = after == null ? new Object[0]
+        : new Object[] { after.getUserId(), after.getGarminUserId(), after.getCalendarDate() };
+    List<Pending> pending = jdbcTemplate.query(
+        "SELECT user_id, garmin_user_id, calendar_date, time_offset_heart_rate_samples FROM garmin_dailies_summary"
+            + " WHERE time_offset_heart_rate_samples IS NOT NULL AND heart_rate_samples IS NULL" + afterKey
+            + " ORDER BY user_id, garmin_user_id, calendar_date FETCH FIRST " + limit + " ROWS ONLY FOR UPDATE",
+        (rs, n) -> new Pending(new GarminDailiesSummaryId(rs.getString(1), rs.getString(2),
+            rs.getObject(3, LocalDate.class)), rs.getString(4)),
+        args);
+    if (pending.isEmpty()) {
+      return new Batch(null, 0, 0, 0, 0);
+    }
+
+    List<Object[]> updates = new ArrayList<>(pending.size());
+    long jsonBytes = 0;
+    long binaryBytes = 0;
+    for (Pending row : pending) {
+      byte[] encoded;
+      try {
+        encoded = HeartRateSampleCodec.fromJson(row.json());
+      } catch (IllegalArgumentException e) {
+        log.warn("Leaving heart rate samples of {}/{} on {} as JSON: {}", row.id().getUserId(),
+            row.id().getGarminUserId(), row.id().getCalendarDate(), e.getMessage());
+        continue;
+      }
+      jsonBytes += row.json().getBytes(StandardCharsets.UTF_8).length;
+      binaryBytes += encoded.length;
+      updates.add(new Object[] { encoded, row.id().getUserId(), row.id().getGarminUserId(),
+          row.id().getCalendarDate() });
+    }
+    jdbcTemplate.batchUpdate("UPDATE garmin_dailies_summary SET heart_rate_samples = ?,"
+        + " time_offset_heart_rate_samples = NULL WHERE user_id = ? AND garmin_user_id = ? AND calendar_date = ?",
+        updates);
+    return new Batch(pending.get(pending.size() - 1).id(), pending.size(), updates.size(), jsonBytes, binaryBytes);
+  }
+}
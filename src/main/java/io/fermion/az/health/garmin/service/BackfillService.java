@@ -0,0 +1,347 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.client.GarminApiClient;
+import io.fermion.az.health.garmin.client.RequestPriority;
+import io.fermion.az.health.garmin.dto.BackfillStatus;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.entity.BackfillJob;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
+import io.fermion.az.health.garmin.repo.BackfillJobRepository;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryBulkWriter.UpsertResult;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a user's dailies history from Garmin.
+ *
+ * A job covers a date range split into one-day windows, Garmin's maximum
+ * upload range per request. Windows are fetched concurrently on virtual
+ * threads, at background priority so the outbound rate limiter keeps
+ * interactive requests ahead. The job's own thread collects the results,
+ * bulk-persists them and then records the windows as done in the job's
+ * checkpoint bitset. Jobs still pending or running at startup are resumed;
+ * windows already done are skipped, and a window persisted but not yet
+ * checkpointed is simply upserted again. A window that still fails after
+ * {@code window-attempts} is recorded as failed and left for a resume, which
+ * retries it with the other windows not done.
+ */
+@Service
+public class BackfillService {
+
+  private static final Logger log = LoggerFactory.getLogger(BackfillService.class);
+  private static final int MAX_ERROR_LENGTH = 500;
+
+  private final BackfillJobRepository jobRepository;
+  private final GarminService garminService;
+  private final GarminApiClient garminApiClient;
+  private final ConnectedTokenCache connectedTokenCache;
+  private final DailiesPersistenceService persistenceService;
+  private final ConcurrentHashMap<String, Boolean> running = new ConcurrentHashMap<>();
+  private SimpleAsyncTaskExecutor executor;
+
+  @Value("${garmin.backfill.parallelism:16}")
+  private int parallelism;
+
+  @Value("${garmin.backfill.max-days:730}")
+  private int maxDays;
+
+  @Value("${garmin.backfill.flush-rows:500}")
+  private int flushRows;
+
+  @Value("${garmin.backfill.window-attempts:5}")
+  private int windowAttempts;
+
+  @Value("${garmin.backfill.on-connect-days:90}")
+  private int onConnectDays;
+
+  public BackfillService(BackfillJobRepository jobRepository, GarminService garminService,
+      GarminApiClient garminApiClient, ConnectedTokenCache connectedTokenCache,
+      DailiesPersistenceService persistenceService) {
+    this.jobRepository = jobRepository;
+    this.garminService = garminService;
+    this.garminApiClient = garminApiClient;
+    this.connectedTokenCache = connectedTokenCache;
+    this.persistenceService = persistenceService;
+  }
+
+  private record WindowResult(int window, List<DailiesSummary> summaries, String error) {
+  }
+
+  @PostConstruct
+  public void init() {
+    executor = new SimpleAsyncTaskExecutor("backfill-");
+    executor.setVirtualThreads(true);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void resumeInterrupted() {
+    for (BackfillJob job : jobRepository.findByStatusIn(EnumSet.of(BackfillJob.Status.PENDING, BackfillJob.Status.RUNNING))) {
+      log.info("Resuming backfill {} for user {} ({} of {} windows done)", job.getJobId(), job.getUserId(),
+          job.getWindowsDone(), job.getWindowsTotal());
+      launch(job.getJobId());
+    }
+  }
+
+  /**
+   * Create and start a backfill of {@code [startDate, endDate]}; an end date
+   * in the future is clamped to today.
+   */
+  public BackfillStatus start(String userId, LocalDate startDate, LocalDate endDate) {
+    LocalDate today = LocalDate.now();
+    LocalDate end = endDate.isAfter(today) ? today : endDate;
+    if (startDate.isAfter(end)) {
+      throw new IllegalArgumentException("startDate must not be after endDate");
+    }
+    long days = ChronoUnit.DAYS.between(startDate, end) + 1;
+    if (days > maxDays) {
+      throw new IllegalArgumentException("Backfill range is limited to " + maxDays + " days");
+    }
+    GarminUserTokens tokens = connectedTokenCache.get(userId);
+    if (tokens == null) {
+      throw new GarminApiException("No connected Garmin account found for user: " + userId);
+    }
+
+    BackfillJob job = new BackfillJob();
+    job.setJobId(UUID.randomUUID().toString());
+    job.setUserId(userId);
+    job.setGarminUserId(tokens.getId().getGarminUserId());
+    job.setStartDate(startDate);
+    job.setEndDate(end);
+    job.setStatus(BackfillJob.Status.PENDING);
+    job.setWindowsTotal((int) days);
+    job.setCompletedWindowSet(new BitSet());
+    job.setCreatedAt(LocalDateTime.now());
+    job.setLastModifiedAt(LocalDateTime.now());
+    job = jobRepository.save(job);
+    log.info("Backfill {} created for user {}: {} to {} ({} windows)", job.getJobId(), userId, startDate, end, days);
+    launch(job.getJobId());
+    return BackfillStatus.of(job);
+  }
+
+  /**
+   * Backfill the last {@code garmin.backfill.on-connect-days} days for a user
+   * who has just connected. Never throws.
+   */
+  public void startOnConnect(GarminUserTokens tokens) {
+    if (onConnectDays <= 0) {
+      return;
+    }
+    try {
+      LocalDate today = LocalDate.now();
+      start(tokens.getId().getUserId(), today.minusDays(onConnectDays - 1L), today);
+    } catch (RuntimeException e) {
+      log.warn("Could not start initial backfill for user {}: {}", tokens.getId().getUserId(), e.getMessage());
+    }
+  }
+
+  /**
+   * Re-run the windows of a job that are not done yet.
+   */
+  public Optional<BackfillStatus> resume(String jobId) {
+    return jobRepository.findById(jobId).map(job -> {
+      if (job.getStatus() != BackfillJob.Status.COMPLETED) {
+        launch(jobId);
+      }
+      return BackfillStatus.of(job);
+    });
+  }
+
+  public Optional<BackfillStatus> status(String jobId) {
+    return jobRepository.findById(jobId).map(BackfillStatus::of);
+  }
+
+  public List<BackfillStatus> jobsForUser(String userId) {
+    return jobRepository.findByUserIdOrderByCreatedAtDesc(userId).stream().map(BackfillStatus::of).toList();
+  }
+
+  private void launch(String jobId) {
+    if (running.putIfAbsent(jobId, Boolean.TRUE) != null) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        run(jobId);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.warn("Backfill {} interrupted; it will resume on the next start", jobId);
+      } catch (RuntimeException e) {
+        log.error("Backfill {} failed: {}", jobId, e.getMessage(), e);
+        jobRepository.findById(jobId).ifPresent(job -> finish(job, truncate(e.getMessage())));
+      } finally {
+        running.remove(jobId);
+      }
+    });
+  }
+
+  private void run(String jobId) throws InterruptedException {
+    BackfillJob job = jobRepository.findById(jobId).orElseThrow();
+    LocalDateTime now = LocalDateTime.now();
+    job.setStatus(BackfillJob.Status.RUNNING);
+    if (job.getStartedAt() == null) {
+      job.setStartedAt(now);
+    }
+    job.setLastError(null);
+    job.setFinishedAt(null);
+    job.setLastModifiedAt(now);
+    job = jobRepository.save(job);
+
+    long startNanos = System.nanoTime();
+    BitSet done = job.completedWindowSet();
+    BitSet failed = job.failedWindowSet();
+    Semaphore permits = new Semaphore(parallelism);
+    BlockingQueue<WindowResult> results = new LinkedBlockingQueue<>();
+    List<WindowResult> buffer = new ArrayList<>();
+    int bufferedRows = 0;
+    int nextWindow = done.nextClearBit(0);
+    int outstanding = 0;
+
+    while (nextWindow < job.getWindowsTotal() || outstanding > 0) {
+      while (nextWindow < job.getWindowsTotal() && permits.tryAcquire()) {
+        int window = nextWindow;
+        LocalDate date = job.windowDate(window);
+        String userId = job.getUserId();
+        executor.execute(() -> {
+          try {
+            results.add(fetchWindow(userId, window, date));
+          } finally {
+            permits.release();
+          }
+        });
+        outstanding++;
+        nextWindow = done.nextClearBit(nextWindow + 1);
+      }
+
+      WindowResult result = results.poll(200, TimeUnit.MILLISECONDS);
+      if (result != null) {
+        outstanding--;
+        buffer.add(result);
+        bufferedRows += result.summaries().size();
+      }
+      boolean drained = nextWindow >= job.getWindowsTotal() && outstanding == 0;
+      if (!buffer.isEmpty() && (bufferedRows >= flushRows || result == null || drained)) {
+        job = checkpoint(job, done, failed, buffer);
+        buffer.clear();
+        bufferedRows = 0;
+      }
+    }
+
+    job = finish(job, job.getLastError());
+    log.info("Backfill {} {}: {} of {} windows, {} rows in {} ms", jobId, job.getStatus().name().toLowerCase(),
+        job.getWindowsDone(), job.getWindowsTotal(), job.getRowsWritten(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+
+  // Persist the buffered windows, then mark them done
+  private BackfillJob checkpoint(BackfillJob job, BitSet done, BitSet failed, List<WindowResult> buffer) {
+    List<DailiesSummary> rows = new ArrayList<>();
+    for (WindowResult result : buffer) {
+      rows.addAll(result.summaries());
+    }
+    UpsertResult written = rows.isEmpty() ? UpsertResult.EMPTY : persistenceService.persist(rows);
+    for (WindowResult result : buffer) {
+      if (result.error() == null) {
+        done.set(result.window());
+        failed.clear(result.window());
+      } else {
+        failed.set(result.window());
+        job.setLastError(truncate(result.error()));
+      }
+    }
+    job.setCompletedWindowSet(done);
+    job.setFailedWindowSet(failed);
+    job.setRowsWritten(job.getRowsWritten() + written.total());
+    job.setLastModifiedAt(LocalDateTime.now());
+    return jobRepository.save(job);
+  }
+
+  private BackfillJob finish(BackfillJob job, String error) {
+    job.setStatus(job.getWindowsDone() == job.getWindowsTotal() ? BackfillJob.Status.COMPLETED : BackfillJob.Status.FAILED);
+    job.setLastError(error);
+    job.setFinishedAt(LocalDateTime.now());
+    job.setLastModifiedAt(LocalDateTime.now());
+    return jobRepository.save(job);
+  }
+
+  /**
+   * Fetch one day. Rate limiting and open circuit breakers are waited out;
+   * any other error fails the window.
+   */
+  private WindowResult fetchWindow(String userId, int window, LocalDate date) {
+    long start = date.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    long end = date.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) - 1;
+    String error = "Gave up after " + windowAttempts + " attempts";
+    for (int attempt = 1; attempt <= windowAttempts; attempt++) {
+      Duration retryAfter;
+      try {
+        return RequestPriority.runAs(RequestPriority.BACKGROUND, () -> {
+          GarminUserTokens tokens = currentTokens(userId);
+          List<DailiesSummary> summaries = garminApiClient.fetchDailies(tokens.getId().getGarminUserId(), start, end,
+              tokens.getAccessToken());
+          return new WindowResult(window, summaries, null);
+        });
+      } catch (GarminRateLimitException e) {
+        retryAfter = e.getRetryAfter();
+      } catch (GarminUnavailableException e) {
+        retryAfter = e.getRetryAfter();
+      } catch (RuntimeException e) {
+        log.warn("Backfill window {} for user {} failed: {}", date, userId, e.getMessage());
+        return new WindowResult(window, List.of(), date + ": " + e.getMessage());
+      }
+      try {
+        Thread.sleep(Math.max(100, retryAfter.toMillis()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        error = "Interrupted";
+        break;
+      }
+    }
+    return new WindowResult(window, List.of(), date + ": " + error);
+  }
+
+  private GarminUserTokens currentTokens(String userId) {
+    GarminUserTokens tokens = connectedTokenCache.get(userId);
+    if (tokens == null) {
+      throw new GarminApiException("No connected Garmin account found for user: " + userId);
+    }
+    if (tokens.getAccessTokenExpiry().isBefore(LocalDateTime.now())) {
+      tokens = garminService.refreshAccessToken(tokens);
+    }
+    return tokens;
+  }
+
+  private static String truncate(String message) {
+    if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+      return message;
+    }
+    return message.substring(0, MAX_ERROR_LENGTH);
+  }
+}
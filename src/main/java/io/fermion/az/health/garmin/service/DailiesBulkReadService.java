@@ -0,0 +1,225 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.client.RequestPriority;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.service.DailiesReadService.ReadResult;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Dailies summaries for many users on one date, for callers that would
+ * otherwise ask {@link DailiesReadService} once per user.
+ *
+ * Tokens and stored summaries are loaded with one query each, and users whose
+ * stored summary is fresh are answered from it. The others are fetched from
+ * Garmin in parallel at background priority, at most {@code concurrency} at a
+ * time, until {@code timeout-ms} has passed since the request started. A user
+ * whose fetch fails or is not done by then gets the stored summary as stale
+ * where {@link DailiesReadService} would serve one, or an error, and its fetch
+ * is interrupted so it gives back its concurrency permit and does not go on to
+ * take a rate limit token or hold a connection. Everything fetched is written
+ * back in one batch.
+ */
+@Service
+public class DailiesBulkReadService {
+
+  private static final Logger log = LoggerFactory.getLogger(DailiesBulkReadService.class);
+
+  private final DailiesReadService readService;
+  private final ConnectedTokenCache connectedTokenCache;
+  private final GarminDailiesSummaryRepo dailiesSummaryRepo;
+  private ExecutorService executor;
+
+  @Value("${garmin.bulk.max-users:5000}")
+  private int maxUsers;
+
+  @Value("${garmin.bulk.concurrency:32}")
+  private int concurrency;
+
+  @Value("${garmin.bulk.timeout-ms:20000}")
+  private long timeoutMs;
+
+  public DailiesBulkReadService(DailiesReadService readService, ConnectedTokenCache connectedTokenCache,
+      GarminDailiesSummaryRepo dailiesSummaryRepo) {
+    this.readService = readService;
+    this.connectedTokenCache = connectedTokenCache;
+    this.dailiesSummaryRepo = dailiesSummaryRepo;
+  }
+
+  /**
+   * Outcome for one user: a {@code result}, or an {@code error} with, for
+   * rate limiting and Garmin outages, when to try again.
+   */
+  public record UserResult(String userId, ReadResult result, String error, Duration retryAfter) {
+
+    static UserResult failed(String userId, String error) {
+      return new UserResult(userId, null, error, null);
+    }
+  }
+
+  @PostConstruct
+  public void init() {
+    executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bulk-read-", 0).factory());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @param userIds duplicates are answered once
+   * @return one result per distinct userId, in request order
+   * @throws IllegalArgumentException if there are no userIds or too many
+   */
+  public List<UserResult> readAll(List<String> userIds, LocalDate date) {
+    if (userIds == null || userIds.isEmpty()) {
+      throw new IllegalArgumentException("userIds must not be empty");
+    }
+    Set<String> distinct = new LinkedHashSet<>(userIds);
+    if (distinct.size() > maxUsers) {
+      throw new IllegalArgumentException("At most " + maxUsers + " userIds per request");
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+    Map<String, GarminUserTokens> tokensByUser = connectedTokenCache.getAll(distinct);
+    Map<String, GarminUserDailiesSummary> storedByUser = new HashMap<>();
+    if (!tokensByUser.isEmpty()) {
+      for (GarminUserDailiesSummary row : dailiesSummaryRepo.findByDateAndUserIdIn(date, tokensByUser.keySet())) {
+        GarminUserTokens tokens = tokensByUser.get(row.getId().getUserId());
+        // Rows from an earlier Garmin account of the same user are not theirs any more
+        if (tokens != null && tokens.getId().getGarminUserId().equals(row.getId().getGarminUserId())) {
+          storedByUser.put(row.getId().getUserId(), row);
+        }
+      }
+    }
+
+    Map<String, UserResult> results = new LinkedHashMap<>();
+    Map<String, Future<List<DailiesSummary>>> fetches = new LinkedHashMap<>();
+    Semaphore permits = new Semaphore(concurrency);
+    int local = 0;
+    for (String userId : distinct) {
+      GarminUserTokens tokens = tokensByUser.get(userId);
+      if (tokens == null) {
+        results.put(userId, UserResult.failed(userId, "No connected Garmin account found for user: " + userId));
+        continue;
+      }
+      Optional<ReadResult> stored = readService.readLocal(tokens, date, Optional.ofNullable(storedByUser.get(userId)));
+      if (stored.isPresent()) {
+        results.put(userId, new UserResult(userId, stored.get(), null, null));
+        local++;
+        continue;
+      }
+      results.put(userId, null);
+      fetches.put(userId, submit(tokens, date, permits, deadline));
+    }
+
+    List<DailiesSummary> fetched = new ArrayList<>();
+    List<GarminUserTokens> fetchedTokens = new ArrayList<>();
+    for (Map.Entry<String, Future<List<DailiesSummary>>> fetch : fetches.entrySet()) {
+      String userId = fetch.getKey();
+      GarminUserTokens tokens = tokensByUser.get(userId);
+      try {
+        List<DailiesSummary> summaries = fetch.getValue()
+            .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        fetched.addAll(summaries);
+        fetchedTokens.add(tokens);
+        results.put(userId, new UserResult(userId, readService.fetched(summaries), null, null));
+      } catch (TimeoutException e) {
+        fetch.getValue().cancel(true);
+        results.put(userId, fallback(tokens, date, storedByUser.get(userId),
+            new GarminUnavailableException("Not fetched within " + timeoutMs + " ms", null)));
+      } catch (ExecutionException e) {
+        results.put(userId, fallback(tokens, date, storedByUser.get(userId), e.getCause()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        fetches.values().forEach(future -> future.cancel(true));
+        throw new IllegalStateException("Interrupted while reading dailies", e);
+      }
+    }
+
+    if (readService.writeBack(fetched)) {
+      fetchedTokens.forEach(tokens -> readService.markFetched(tokens, date));
+    }
+    log.info("Bulk dailies read for {} users on {}: {} not connected, {} local, {} fetched, {} not fetched",
+        distinct.size(), date, distinct.size() - tokensByUser.size(), local, fetchedTokens.size(),
+        fetches.size() - fetchedTokens.size());
+    return new ArrayList<>(results.values());
+  }
+
+  // Waits for a permit on the caller's thread so at most `concurrency` fetches run at once.
+  // Submitted to the executor rather than supplyAsync so that cancel(true) interrupts the fetch.
+  private Future<List<DailiesSummary>> submit(GarminUserTokens tokens, LocalDate date,
+      Semaphore permits, long deadline) {
+    try {
+      if (!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+        return CompletableFuture.failedFuture(
+            new GarminUnavailableException("Not fetched within " + timeoutMs + " ms", null));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return CompletableFuture.failedFuture(e);
+    }
+    try {
+      return executor.submit(() -> {
+        try {
+          return RequestPriority.runAs(RequestPriority.BACKGROUND, () -> readService.fetch(tokens, date));
+        } finally {
+          permits.release();
+        }
+      });
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  private UserResult fallback(GarminUserTokens tokens, LocalDate date, GarminUserDailiesSummary stored,
+      Throwable cause) {
+    String userId = tokens.getId().getUserId();
+    if (cause instanceof GarminRateLimitException || cause instanceof GarminUnavailableException) {
+      RuntimeException unavailable = (RuntimeException) cause;
+      Optional<ReadResult> stale = readService.readStale(tokens, date, Optional.ofNullable(stored), unavailable);
+      if (stale.isPresent()) {
+        return new UserResult(userId, stale.get(), null, null);
+      }
+      Duration retryAfter = cause instanceof GarminRateLimitException rateLimited
+          ? rateLimited.getRetryAfter()
+          : ((GarminUnavailableException) cause).getRetryAfter();
+      return new UserResult(userId, null, cause.getMessage(), retryAfter);
+    }
+    log.warn("Bulk dailies fetch for user {} on {} failed: {}", userId, date, cause.getMessage());
+    return UserResult.failed(userId, cause.getMessage());
+  }
+}
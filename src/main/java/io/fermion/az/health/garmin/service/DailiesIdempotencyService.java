@@ -0,0 +1,143 @@
+package io.fermion.az.health.garmin.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.fermion.az.health.garmin.WebhookCache;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo.SummaryFingerprint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Suppresses duplicate dailies deliveries before they reach the repository.
+ *
+ * Garmin retries webhook deliveries and re-sends unchanged summaries. Each
+ * summary is identified by its summaryId plus a fingerprint of its content;
+ * an exact match against the recently seen fingerprints in
+ * {@link WebhookCache}, or failing that against the {@code content_fingerprint}
+ * column, means the delivery can be acknowledged and dropped. A changed
+ * summary with the same summaryId has a different fingerprint and goes through.
+ */
+@Service
+public class DailiesIdempotencyService {
+
+  private final WebhookCache webhookCache;
+  private final GarminDailiesSummaryRepo dailiesSummaryRepo;
+  private final ObjectWriter fingerprintWriter;
+
+  private final Counter memoryHits;
+  private final Counter databaseHits;
+  private final Counter misses;
+
+  public record FingerprintedSummary(DailiesSummary summary, String fingerprint) {
+  }
+
+  public DailiesIdempotencyService(WebhookCache webhookCache, GarminDailiesSummaryRepo dailiesSummaryRepo,
+      ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+    this.webhookCache = webhookCache;
+    this.dailiesSummaryRepo = dailiesSummaryRepo;
+    this.fingerprintWriter = objectMapper.writerFor(DailiesSummary.class);
+
+    this.memoryHits = Counter.builder("garmin.ingest.dedup").tag("result", "memory_hit")
+        .description("Dailies deliveries checked for duplicates").register(meterRegistry);
+    this.databaseHits = Counter.builder("garmin.ingest.dedup").tag("result", "db_hit")
+        .description("Dailies deliveries checked for duplicates").register(meterRegistry);
+    this.misses = Counter.builder("garmin.ingest.dedup").tag("result", "miss")
+        .description("Dailies deliveries checked for duplicates").register(meterRegistry);
+    Gauge.builder("garmin.ingest.dedup.hit.ratio", this, DailiesIdempotencyService::hitRatio)
+        .description("Share of dailies deliveries dropped as exact duplicates").register(meterRegistry);
+  }
+
+  /**
+   * Hash of every field of the summary, as 32 hex characters.
+   */
+  public String fingerprint(DailiesSummary summary) {
+    try {
+      long[] hash = MurmurHash3.hash128x64(fingerprintWriter.writeValueAsBytes(summary));
+      return String.format("%016x%016x", hash[0], hash[1]);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Cannot fingerprint summary " + summary.getSummaryId(), e);
+    }
+  }
+
+  public FingerprintedSummary fingerprinted(DailiesSummary summary) {
+    return new FingerprintedSummary(summary, fingerprint(summary));
+  }
+
+  /**
+   * In-memory check only; cheap enough for the webhook acknowledgement path.
+   */
+  public boolean isRecentDuplicate(FingerprintedSummary candidate) {
+    boolean duplicate = candidate.fingerprint().equals(webhookCache.get(cacheKey(candidate.summary())));
+    if (duplicate) {
+      memoryHits.increment();
+    }
+    return duplicate;
+  }
+
+  /**
+   * Drop summaries whose fingerprint matches what is already stored for their
+   * summaryId, using one query for the whole batch. Summaries that survive are
+   * counted as misses.
+   */
+  public List<FingerprintedSummary> removePersistedDuplicates(List<FingerprintedSummary> batch) {
+    List<String> summaryIds = new ArrayList<>(batch.size());
+    for (FingerprintedSummary candidate : batch) {
+      if (candidate.summary().getSummaryId() != null) {
+        summaryIds.add(candidate.summary().getSummaryId());
+      }
+    }
+    Map<String, String> stored = new HashMap<>();
+    if (!summaryIds.isEmpty()) {
+      for (SummaryFingerprint row : dailiesSummaryRepo.findFingerprintsBySummaryIds(summaryIds)) {
+        stored.put(row.getSummaryId(), row.getContentFingerprint());
+      }
+    }
+
+    List<FingerprintedSummary> fresh = new ArrayList<>(batch.size());
+    for (FingerprintedSummary candidate : batch) {
+      String summaryId = candidate.summary().getSummaryId();
+      if (summaryId != null && Objects.equals(stored.get(summaryId), candidate.fingerprint())) {
+        databaseHits.increment();
+        remember(candidate);
+      } else {
+        misses.increment();
+        fresh.add(candidate);
+      }
+    }
+    return fresh;
+  }
+
+  /**
+   * Record a persisted summary so that identical redeliveries are dropped in
+   * memory.
+   */
+  public void remember(FingerprintedSummary persisted) {
+    webhookCache.put(cacheKey(persisted.summary()), persisted.fingerprint());
+  }
+
+  public double hitRatio() {
+    double hits = memoryHits.count() + databaseHits.count();
+    double total = hits + misses.count();
+    return total == 0 ? 0.0 : hits / total;
+  }
+
+  private static String cacheKey(DailiesSummary summary) {
+    return summary.getSummaryId() != null
+        ? summary.getSummaryId()
+        : summary.getUserId() + "|" + summary.getCalendarDate();
+  }
+}
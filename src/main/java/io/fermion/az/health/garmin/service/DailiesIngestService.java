@@ -0,0 +1,351 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.codec.DailiesSummaryDecoder;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.exception.PayloadTooLargeException;
+import io.fermion.az.health.garmin.journal.IngestJournal;
+import io.fermion.az.health.garmin.logging.PayloadLogger;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryBulkWriter.UpsertResult;
+import io.fermion.az.health.garmin.service.DailiesIdempotencyService.FingerprintedSummary;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous ingestion pipeline for Garmin dailies webhooks.
+ *
+ * Webhook handlers pass the raw body to {@link #submit}, which validates it,
+ * appends it to the {@link IngestJournal} and enqueues it, so acknowledging
+ * Garmin never waits on the database. Worker threads drain the queue in
+ * micro-batches into {@link DailiesPersistenceService} and commit the journal
+ * entries of every payload they have written; payloads still in the journal
+ * after a crash are replayed on startup. The queue is bounded by the number of
+ * pending records, not payloads. Exact redeliveries of recently persisted
+ * summaries are dropped here by {@link DailiesIdempotencyService} before they
+ * take up queue space.
+ *
+ * {@code garmin.webhook.receive} times {@link #submit} by outcome, and
+ * {@code garmin.webhook.records} counts the records of each payload by what
+ * became of them.
+ */
+@Service
+public class DailiesIngestService {
+
+  private static final Logger log = LoggerFactory.getLogger(DailiesIngestService.class);
+  private static final String PAYLOAD_LOG_ENDPOINT = "webhook.dailies";
+
+  private final DailiesPersistenceService persistenceService;
+  private final DailiesIdempotencyService idempotencyService;
+  private final DailiesSummaryDecoder decoder;
+  private final IngestJournal journal;
+  private final PayloadLogger payloadLogger;
+  private final LinkedBlockingQueue<Envelope> queue = new LinkedBlockingQueue<>();
+  private final AtomicInteger pendingRecords = new AtomicInteger();
+  private final List<Thread> workers = new ArrayList<>();
+  private final Map<Outcome, Timer> receives = new EnumMap<>(Outcome.class);
+  private final DistributionSummary acceptedRecords;
+  private final DistributionSummary rejectedRecords;
+  private final DistributionSummary duplicateRecords;
+  private volatile boolean running;
+
+  @Value("${garmin.ingest.queue-capacity:10000}")
+  private int queueCapacity;
+
+  @Value("${garmin.ingest.workers:2}")
+  private int workerCount;
+
+  @Value("${garmin.ingest.batch-size:200}")
+  private int batchSize;
+
+  @Value("${garmin.ingest.max-batch-wait-ms:50}")
+  private long maxBatchWaitMs;
+
+  @Value("${garmin.ingest.max-payload-bytes:16777216}")
+  private int maxPayloadBytes;
+
+  @Value("${garmin.ingest.shutdown-timeout-ms:10000}")
+  private long shutdownTimeoutMs;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  public DailiesIngestService(DailiesPersistenceService persistenceService,
+      DailiesIdempotencyService idempotencyService, DailiesSummaryDecoder decoder, IngestJournal journal,
+      PayloadLogger payloadLogger, MeterRegistry meterRegistry) {
+    this.persistenceService = persistenceService;
+    this.idempotencyService = idempotencyService;
+    this.decoder = decoder;
+    this.journal = journal;
+    this.payloadLogger = payloadLogger;
+    for (Outcome outcome : Outcome.values()) {
+      receives.put(outcome, Timer.builder("garmin.webhook.receive").tag("outcome", outcome.tag())
+          .description("Dailies webhook bodies read, validated, journaled and enqueued").register(meterRegistry));
+    }
+    this.acceptedRecords = records("accepted", meterRegistry);
+    this.rejectedRecords = records("rejected", meterRegistry);
+    this.duplicateRecords = records("duplicate", meterRegistry);
+    Gauge.builder("garmin.ingest.pending", pendingRecords, AtomicInteger::get)
+        .description("Dailies records enqueued and not yet written").register(meterRegistry);
+  }
+
+  private static DistributionSummary records(String result, MeterRegistry meterRegistry) {
+    return DistributionSummary.builder("garmin.webhook.records").tag("result", result).baseUnit("records")
+        .description("Dailies records per webhook payload").register(meterRegistry);
+  }
+
+  public enum Outcome {
+    ACCEPTED, INVALID, MALFORMED, TOO_LARGE, QUEUE_FULL, UNAVAILABLE;
+
+    public String tag() {
+      return name().toLowerCase();
+    }
+  }
+
+  public record SubmitResult(Outcome outcome, int accepted, int rejected, int duplicates) {
+    static SubmitResult of(Outcome outcome) {
+      return new SubmitResult(outcome, 0, 0, 0);
+    }
+  }
+
+  // Records of one payload, committed to the journal together once written
+  private record Envelope(List<FingerprintedSummary> records, IngestJournal.Ticket ticket) {
+  }
+
+  private record Screened(List<FingerprintedSummary> valid, int rejected, int duplicates) {
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    Thread.Builder builder = virtualThreads
+        ? Thread.ofVirtual().name("dailies-ingest-", 0)
+        : Thread.ofPlatform().daemon().name("dailies-ingest-", 0);
+    for (int i = 0; i < workerCount; i++) {
+      workers.add(builder.start(this::drainLoop));
+    }
+    log.info("Dailies ingest pipeline started: {} {} worker(s), capacity {} records, batch size {}",
+        workerCount, virtualThreads ? "virtual" : "platform", queueCapacity, batchSize);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+    for (Thread worker : workers) {
+      worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+    }
+    if (pendingRecords.get() > 0) {
+      log.warn("Dailies ingest stopped with {} record(s) still queued; they will be replayed from the journal",
+          pendingRecords.get());
+    }
+  }
+
+  /**
+   * Re-ingest payloads that were acknowledged but not yet written when the
+   * previous run stopped.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void replayJournal() throws InterruptedException {
+    journal.replay(this::resubmit);
+  }
+
+  /**
+   * Read, validate, journal and enqueue a webhook body. Invalid records and
+   * recently persisted duplicates are dropped; the rest are enqueued together
+   * or not at all.
+   */
+  public SubmitResult submit(InputStream body) {
+    long start = System.nanoTime();
+    SubmitResult result = read(body);
+    receives.get(result.outcome()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    acceptedRecords.record(result.accepted());
+    rejectedRecords.record(result.rejected());
+    duplicateRecords.record(result.duplicates());
+    return result;
+  }
+
+  private SubmitResult read(InputStream body) {
+    byte[] payload = null;
+    Screened screened;
+    try {
+      payload = body.readNBytes(maxPayloadBytes + 1);
+      if (payload.length > maxPayloadBytes) {
+        return SubmitResult.of(Outcome.TOO_LARGE);
+      }
+      List<DailiesSummary> summaries = decoder.decodeAll(payload);
+      payloadLogger.log(payloadLogger.capture(PAYLOAD_LOG_ENDPOINT, summaries, DailiesSummary::getUserId),
+          PAYLOAD_LOG_ENDPOINT, null, payload);
+      screened = screen(summaries);
+    } catch (PayloadTooLargeException e) {
+      return SubmitResult.of(Outcome.TOO_LARGE);
+    } catch (IOException e) {
+      log.warn("Rejecting malformed dailies payload: {}", e.getMessage());
+      if (payload != null) {
+        payloadLogger.log(payloadLogger.capture(PAYLOAD_LOG_ENDPOINT, null), PAYLOAD_LOG_ENDPOINT, null, payload);
+      }
+      return SubmitResult.of(Outcome.MALFORMED);
+    }
+
+    List<FingerprintedSummary> valid = screened.valid();
+    if (valid.isEmpty()) {
+      boolean allInvalid = screened.rejected() > 0 && screened.duplicates() == 0;
+      return new SubmitResult(allInvalid ? Outcome.INVALID : Outcome.ACCEPTED, 0, screened.rejected(),
+          screened.duplicates());
+    }
+
+    if (pendingRecords.addAndGet(valid.size()) > queueCapacity) {
+      pendingRecords.addAndGet(-valid.size());
+      log.warn("Dailies ingest queue full, rejecting {} record(s)", valid.size());
+      return new SubmitResult(Outcome.QUEUE_FULL, 0, valid.size() + screened.rejected(), 0);
+    }
+
+    IngestJournal.Ticket ticket;
+    try {
+      ticket = journal.append(payload);
+    } catch (IOException | InterruptedException e) {
+      pendingRecords.addAndGet(-valid.size());
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      log.error("Could not journal dailies payload: {}", e.getMessage());
+      return SubmitResult.of(Outcome.UNAVAILABLE);
+    }
+    queue.add(new Envelope(valid, ticket));
+    return new SubmitResult(Outcome.ACCEPTED, valid.size(), screened.rejected(), screened.duplicates());
+  }
+
+  public int getPendingRecords() {
+    return pendingRecords.get();
+  }
+
+  private void resubmit(byte[] payload, IngestJournal.Ticket ticket) throws InterruptedException {
+    List<FingerprintedSummary> valid;
+    try {
+      valid = screen(decoder.decodeAll(payload)).valid();
+    } catch (IOException e) {
+      log.warn("Discarding unreadable journaled payload: {}", e.getMessage());
+      ticket.commit();
+      return;
+    }
+    if (valid.isEmpty()) {
+      ticket.commit();
+      return;
+    }
+    // Replay waits for room instead of rejecting; an oversized payload goes
+    // through once the queue is empty.
+    while (true) {
+      int pending = pendingRecords.addAndGet(valid.size());
+      if (pending <= queueCapacity || pending == valid.size()) {
+        break;
+      }
+      pendingRecords.addAndGet(-valid.size());
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+    queue.add(new Envelope(valid, ticket));
+  }
+
+  private Screened screen(List<DailiesSummary> payload) {
+    List<FingerprintedSummary> valid = new ArrayList<>(payload.size());
+    int rejected = 0;
+    int duplicates = 0;
+    for (DailiesSummary summary : payload) {
+      if (!isValid(summary)) {
+        rejected++;
+        continue;
+      }
+      FingerprintedSummary candidate = idempotencyService.fingerprinted(summary);
+      if (idempotencyService.isRecentDuplicate(candidate)) {
+        duplicates++;
+      } else {
+        valid.add(candidate);
+      }
+    }
+    return new Screened(valid, rejected, duplicates);
+  }
+
+  private boolean isValid(DailiesSummary summary) {
+    if (summary == null || summary.getUserId() == null || summary.getCalendarDate() == null) {
+      return false;
+    }
+    try {
+      LocalDate.parse(summary.getCalendarDate());
+      return true;
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+
+  private void drainLoop() {
+    List<Envelope> envelopes = new ArrayList<>();
+    List<FingerprintedSummary> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        Envelope first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        envelopes.add(first);
+        batch.addAll(first.records());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchWaitMs);
+        while (batch.size() < batchSize) {
+          Envelope next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          envelopes.add(next);
+          batch.addAll(next.records());
+        }
+        if (writeBatch(batch)) {
+          envelopes.forEach(envelope -> envelope.ticket().commit());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        pendingRecords.addAndGet(-batch.size());
+        batch.clear();
+        envelopes.clear();
+      }
+    }
+  }
+
+  /**
+   * @return whether the batch was written; failed batches stay in the journal
+   *         and are retried on the next start
+   */
+  private boolean writeBatch(List<FingerprintedSummary> batch) {
+    long start = System.nanoTime();
+    try {
+      UpsertResult written = persistenceService.persistFingerprinted(batch);
+      log.debug("Persisted {} of {} dailies record(s) ({} new) in {} ms", written.total(), batch.size(),
+          written.inserted(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      return true;
+    } catch (Exception e) {
+      log.error("Failed to persist batch of {} dailies record(s): {}", batch.size(), e.getMessage(), e);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryBulkWriter;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryBulkWriter.UpsertResult;
+import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
+import io.fermion.az.health.garmin.service.DailiesIdempotencyService.FingerprintedSummary;
+
+import lombok.RequiredArgsConstructor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes batches of Garmin dailies summaries to {@code garmin_dailies_summary}.
+ */
+@Service
+@RequiredArgsConstructor
+public class DailiesPersistenceService {
+
+  private static final Logger log = LoggerFactory.getLogger(DailiesPersistenceService.class);
+
+  private static final Comparator<GarminUserTokens> OWNER_ORDER = Comparator
+      .comparing(GarminUserTokens::getLastModifiedAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+      .thenComparing(tokens -> tokens.getId().getUserId(), Comparator.reverseOrder());
+
+  private final GarminDailiesSummaryBulkWriter bulkWriter;
+  private final GarminUserTokensRepository garminUserTokensRepository;
+  private final DailiesIdempotencyService idempotencyService;
+
+  @Transactional
+  public UpsertResult persist(List<DailiesSummary> summaries) {
+    List<FingerprintedSummary> fingerprinted = new ArrayList<>(summaries.size());
+    for (DailiesSummary summary : summaries) {
+      fingerprinted.add(idempotencyService.fingerprinted(summary));
+    }
+    return persistFingerprinted(fingerprinted);
+  }
+
+  /**
+   * Persist a batch of summaries. Summaries whose content is already stored
+   * are dropped first. Summaries carry the Garmin user id, which is resolved
+   * to our user id with a single token lookup for the whole batch; summaries
+   * for Garmin users with no connected token are skipped.
+   */
+  @Transactional
+  public UpsertResult persistFingerprinted(List<FingerprintedSummary> batch) {
+    List<FingerprintedSummary> summaries = idempotencyService.removePersistedDuplicates(batch);
+    if (summaries.isEmpty()) {
+      return UpsertResult.EMPTY;
+    }
+
+    Set<String> garminUserIds = new HashSet<>();
+    for (FingerprintedSummary candidate : summaries) {
+      garminUserIds.add(candidate.summary().getUserId());
+    }
+    Map<String, String> userIdsByGarminUserId = resolveConnectedUsers(garminUserIds);
+
+    List<GarminUserDailiesSummary> entities = new ArrayList<>(summaries.size());
+    List<FingerprintedSummary> written = new ArrayList<>(summaries.size());
+    for (FingerprintedSummary candidate : summaries) {
+      DailiesSummary summary = candidate.summary();
+      String userId = userIdsByGarminUserId.get(summary.getUserId());
+      if (userId == null) {
+        log.warn("Skipping summary {}: no connected user for Garmin user {}", summary.getSummaryId(), summary.getUserId());
+        continue;
+      }
+      GarminUserDailiesSummary entity = DailiesSummaryMapper.toEntity(summary, userId);
+      entity.setContentFingerprint(candidate.fingerprint());
+      entities.add(entity);
+      written.add(candidate);
+    }
+
+    UpsertResult result = bulkWriter.upsert(entities);
+    rememberAfterCommit(written);
+    return result;
+  }
+
+  /**
+   * Map each Garmin user id to the user that has it connected. A Garmin
+   * account linked to several of our users goes to the most recently
+   * modified link, ties going to the lowest user id so the choice is stable.
+   */
+  private Map<String, String> resolveConnectedUsers(Set<String> garminUserIds) {
+    Map<String, GarminUserTokens> owners = new HashMap<>();
+    for (GarminUserTokens tokens : garminUserTokensRepository.findConnectedByGarminUserIdIn(garminUserIds)) {
+      owners.merge(tokens.getId().getGarminUserId(), tokens, (current, candidate) -> {
+        log.warn("Garmin user {} is connected to users {} and {}", candidate.getId().getGarminUserId(),
+            current.getId().getUserId(), candidate.getId().getUserId());
+        return OWNER_ORDER.compare(candidate, current) > 0 ? candidate : current;
+      });
+    }
+    Map<String, String> userIds = new HashMap<>();
+    owners.forEach((garminUserId, tokens) -> userIds.put(garminUserId, tokens.getId().getUserId()));
+    return userIds;
+  }
+
+  private void rememberAfterCommit(List<FingerprintedSummary> written) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      written.forEach(idempotencyService::remember);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        written.forEach(idempotencyService::remember);
+      }
+    });
+  }
+}
@@ -0,0 +1,152 @@
+package io.fermion.az.health.garmin.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+
+import jakarta.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams a user's stored dailies summaries for a date range as JSON, one
+ * keyset page at a time.
+ *
+ * A page is read through a database cursor and each summary is written and
+ * detached before the next is read, so memory use does not depend on the
+ * page size or the length of the range. The response ends with the cursor
+ * for the next page, or {@code null} after the last one.
+ */
+@Service
+public class DailiesRangeService {
+
+  private static final int FLUSH_EVERY = 100;
+
+  private final GarminDailiesSummaryRepo dailiesSummaryRepo;
+  private final EntityManager entityManager;
+  private final ObjectMapper objectMapper;
+
+  @Value("${garmin.range.default-page-size:100}")
+  private int defaultPageSize;
+
+  @Value("${garmin.range.max-page-size:1000}")
+  private int maxPageSize;
+
+  public DailiesRangeService(GarminDailiesSummaryRepo dailiesSummaryRepo, EntityManager entityManager,
+      ObjectMapper objectMapper) {
+    this.dailiesSummaryRepo = dailiesSummaryRepo;
+    this.entityManager = entityManager;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Position after the last summary of a page. Clients see it only as an
+   * opaque string.
+   */
+  public record Cursor(LocalDate calendarDate, String garminUserId) {
+
+    public String encode() {
+      String raw = calendarDate + "|" + garminUserId;
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code encoded} is not a cursor
+     */
+    public static Cursor decode(String encoded) {
+      try {
+        String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        int separator = raw.indexOf('|');
+        if (separator < 0) {
+          throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new Cursor(LocalDate.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+    }
+  }
+
+  /**
+   * A validated request for one page.
+   */
+  public record RangeQuery(String userId, LocalDate from, LocalDate to, Cursor after, int pageSize) {
+  }
+
+  /**
+   * Validate the request parameters; {@code cursor} and {@code pageSize} may
+   * be {@code null}.
+   *
+   * @throws IllegalArgumentException if they do not describe a page
+   */
+  public RangeQuery query(String userId, LocalDate from, LocalDate to, String cursor, Integer pageSize) {
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("'to' must not be before 'from'");
+    }
+    int size = pageSize == null ? defaultPageSize : pageSize;
+    if (size < 1 || size > maxPageSize) {
+      throw new IllegalArgumentException("pageSize must be between 1 and " + maxPageSize);
+    }
+    Cursor after = cursor == null || cursor.isEmpty()
+        ? new Cursor(from.minusDays(1), "")
+        : Cursor.decode(cursor);
+    return new RangeQuery(userId, from, to, after, size);
+  }
+
+  /**
+   * Write one page as
+   * {@code {"userId", "from", "to", "pageSize", "summaries": [...], "count", "nextCursor"}}.
+   */
+  @Transactional(readOnly = true)
+  public void writePage(RangeQuery query, OutputStream out) throws IOException {
+    // One extra row tells us whether there is another page
+    Limit limit = Limit.of(query.pageSize() + 1);
+    try (Stream<GarminUserDailiesSummary> rows = dailiesSummaryRepo.streamByUserIdAndDateRangeAfter(query.userId(),
+        query.from(), query.to(), query.after().calendarDate(), query.after().garminUserId(), limit);
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      json.writeStartObject();
+      json.writeStringField("userId", query.userId());
+      json.writeStringField("from", query.from().toString());
+      json.writeStringField("to", query.to().toString());
+      json.writeNumberField("pageSize", query.pageSize());
+      json.writeArrayFieldStart("summaries");
+
+      int count = 0;
+      Cursor last = null;
+      boolean more = false;
+      Iterator<GarminUserDailiesSummary> iterator = rows.iterator();
+      while (iterator.hasNext()) {
+        GarminUserDailiesSummary row = iterator.next();
+        if (count == query.pageSize()) {
+          more = true;
+          break;
+        }
+        json.writeObject(DailiesSummaryMapper.toDto(row));
+        entityManager.detach(row);
+        last = new Cursor(row.getId().getCalendarDate(), row.getId().getGarminUserId());
+        if (++count % FLUSH_EVERY == 0) {
+          json.flush();
+        }
+      }
+
+      json.writeEndArray();
+      json.writeNumberField("count", count);
+      json.writeStringField("nextCursor", more ? last.encode() : null);
+      json.writeEndObject();
+    }
+  }
+}
@@ -0,0 +1,254 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.BoundedTtlCache;
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Local-first read path for a user's dailies summary on one date.
+ *
+ * The stored summary is returned when it is fresh: written within the last
+ * {@code today-max-age-ms} for today, within {@code past-max-age-ms} for an
+ * earlier day, or at any time once it was written {@code final-after-ms}
+ * after the day ended. Otherwise the summary is fetched from Garmin and
+ * written back. A fetch that returns content we already store does not touch
+ * the row, so each fetch is also remembered in memory for the same max age;
+ * this covers days Garmin has no data for as well. If Garmin cannot be called
+ * the stored summary is served as stale, when there is one.
+ */
+@Service
+public class DailiesReadService {
+
+  private static final Logger log = LoggerFactory.getLogger(DailiesReadService.class);
+
+  private final GarminService garminService;
+  private final DailiesPersistenceService persistenceService;
+  private final GarminDailiesSummaryRepo dailiesSummaryRepo;
+  private final ConnectedTokenCache connectedTokenCache;
+  // "userId|garminUserId|date" -> when Garmin was last asked for that day
+  private final BoundedTtlCache<String, LocalDateTime> fetched;
+  private final Map<Source, Counter> reads = new EnumMap<>(Source.class);
+
+  private final long todayMaxAgeMs;
+  private final long pastMaxAgeMs;
+  private final long finalAfterMs;
+
+  // While Garmin cannot be called, answer from a stored summary however old
+  @Value("${garmin.resilience.serve-stale-when-unavailable:true}")
+  private boolean serveStaleWhenUnavailable;
+
+  public DailiesReadService(GarminService garminService, DailiesPersistenceService persistenceService,
+      GarminDailiesSummaryRepo dailiesSummaryRepo, ConnectedTokenCache connectedTokenCache,
+      @Value("${garmin.read.today-max-age-ms:900000}") long todayMaxAgeMs,
+      @Value("${garmin.read.past-max-age-ms:21600000}") long pastMaxAgeMs,
+      @Value("${garmin.read.final-after-ms:86400000}") long finalAfterMs,
+      @Value("${garmin.read.fetched-max-entries:100000}") long fetchedMaxEntries,
+      @Value("${garmin.read.tick-ms:1000}") long tickMs,
+      MeterRegistry meterRegistry) {
+    this.garminService = garminService;
+    this.persistenceService = persistenceService;
+    this.dailiesSummaryRepo = dailiesSummaryRepo;
+    this.connectedTokenCache = connectedTokenCache;
+    this.todayMaxAgeMs = todayMaxAgeMs;
+    this.pastMaxAgeMs = pastMaxAgeMs;
+    this.finalAfterMs = finalAfterMs;
+    this.fetched = new BoundedTtlCache<>("dailies-fetched", fetchedMaxEntries, Long.MAX_VALUE, tickMs, (k, v) -> 1);
+    this.fetched.bindTo(meterRegistry);
+    for (Source source : Source.values()) {
+      reads.put(source, Counter.builder("garmin.dailies.reads").tag("source", source.tag())
+          .description("Dailies reads by where the data came from").register(meterRegistry));
+    }
+  }
+
+  public enum Source {
+    /** Fresh summary from our store */
+    LOCAL,
+    /** Fetched from Garmin for this request */
+    GARMIN,
+    /** Outdated stored summary, served because Garmin could not be called */
+    STALE;
+
+    public String tag() {
+      return name().toLowerCase();
+    }
+  }
+
+  /**
+   * @param lastModifiedAt when the stored summary was last written;
+   *                       {@code null} for data fetched from Garmin or when
+   *                       there is no stored summary
+   */
+  public record ReadResult(List<DailiesSummary> summaries, Source source, LocalDateTime lastModifiedAt) {
+  }
+
+  public ReadResult readToday(String userId) {
+    return read(userId, LocalDate.now());
+  }
+
+  public ReadResult read(String userId, LocalDate date) {
+    GarminUserTokens tokens = connectedTokenCache.get(userId);
+    if (tokens == null) {
+      throw new GarminApiException("No connected Garmin account found for user: " + userId);
+    }
+    Optional<GarminUserDailiesSummary> stored = dailiesSummaryRepo
+        .findById(new GarminDailiesSummaryId(userId, tokens.getId().getGarminUserId(), date));
+
+    Optional<ReadResult> local = readLocal(tokens, date, stored);
+    if (local.isPresent()) {
+      return local.get();
+    }
+
+    List<DailiesSummary> summaries;
+    try {
+      summaries = fetch(tokens, date);
+    } catch (GarminRateLimitException | GarminUnavailableException e) {
+      return readStale(tokens, date, stored, e).orElseThrow(() -> e);
+    }
+
+    if (writeBack(summaries)) {
+      markFetched(tokens, date);
+    }
+    if (!summaries.isEmpty()) {
+      log.info("✅ {} Garmin Daily Summaries fetched for user {} on {}", summaries.size(), userId, date);
+    } else {
+      log.warn("⚠️ No Garmin Daily Summary found for user {} on {}", userId, date);
+    }
+    return fetched(summaries);
+  }
+
+  /**
+   * Version of the stored summary when {@link #read} would answer from it
+   * with {@link Source#LOCAL}, looked up without loading the summary, so a
+   * conditional request can be answered before anything else is read.
+   */
+  public Optional<GarminDailiesSummaryRepo.SummaryVersion> localVersion(String userId, LocalDate date) {
+    GarminUserTokens tokens = connectedTokenCache.get(userId);
+    if (tokens == null) {
+      return Optional.empty();
+    }
+    boolean askedRecently = fetched.get(fetchKey(tokens, date)) != null;
+    return dailiesSummaryRepo.findVersion(userId, tokens.getId().getGarminUserId(), date)
+        .filter(version -> askedRecently || isFresh(version.getLastModifiedAt(), date));
+  }
+
+  /**
+   * The stored summary, if it is fresh or Garmin was asked recently.
+   */
+  Optional<ReadResult> readLocal(GarminUserTokens tokens, LocalDate date,
+      Optional<GarminUserDailiesSummary> stored) {
+    if (fetched.get(fetchKey(tokens, date)) != null
+        || stored.filter(summary -> isFresh(summary.getLastModifiedAt(), date)).isPresent()) {
+      return Optional.of(result(stored, Source.LOCAL));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * The stored summary however old, if serving stale data is enabled and
+   * Garmin could not be called.
+   */
+  Optional<ReadResult> readStale(GarminUserTokens tokens, LocalDate date, Optional<GarminUserDailiesSummary> stored,
+      RuntimeException cause) {
+    if (stored.isEmpty() || !serveStaleWhenUnavailable) {
+      return Optional.empty();
+    }
+    log.warn("⚠️ Garmin unavailable ({}), serving stored summary for user {} on {} last written {}",
+        cause.getMessage(), tokens.getId().getUserId(), date, stored.get().getLastModifiedAt());
+    return Optional.of(result(stored, Source.STALE));
+  }
+
+  /**
+   * Fetch from Garmin, refreshing an expired access token first. The result
+   * is not stored; pass it to {@link #writeBack} and then
+   * {@link #markFetched}.
+   */
+  List<DailiesSummary> fetch(GarminUserTokens tokens, LocalDate date) {
+    if (tokens.getAccessTokenExpiry().isBefore(LocalDateTime.now())) {
+      tokens = garminService.refreshAccessToken(tokens);
+    }
+    return garminService.getDailiesSummary(tokens.getId().getGarminUserId(), date, tokens.getAccessToken());
+  }
+
+  ReadResult fetched(List<DailiesSummary> summaries) {
+    reads.get(Source.GARMIN).increment();
+    return new ReadResult(summaries, Source.GARMIN, null);
+  }
+
+  /**
+   * Store fetched summaries. A failed write only costs the next reader
+   * another fetch.
+   *
+   * @return whether they were stored
+   */
+  boolean writeBack(List<DailiesSummary> summaries) {
+    if (summaries.isEmpty()) {
+      return true;
+    }
+    try {
+      persistenceService.persist(summaries);
+      return true;
+    } catch (RuntimeException e) {
+      log.warn("Could not store {} fetched dailies summaries: {}", summaries.size(), e.getMessage());
+      return false;
+    }
+  }
+
+  // Garmin's answer for this day is stored, even if nothing changed
+  void markFetched(GarminUserTokens tokens, LocalDate date) {
+    fetched.put(fetchKey(tokens, date), LocalDateTime.now(), maxAgeMs(date));
+  }
+
+  @Scheduled(fixedRateString = "${garmin.read.tick-ms:1000}")
+  public void tick() {
+    fetched.tick();
+  }
+
+  private boolean isFresh(LocalDateTime written, LocalDate date) {
+    if (written == null) {
+      return false;
+    }
+    if (!written.isBefore(date.plusDays(1).atStartOfDay().plus(Duration.ofMillis(finalAfterMs)))) {
+      return true;
+    }
+    return written.isAfter(LocalDateTime.now().minus(Duration.ofMillis(maxAgeMs(date))));
+  }
+
+  private long maxAgeMs(LocalDate date) {
+    return date.isBefore(LocalDate.now()) ? pastMaxAgeMs : todayMaxAgeMs;
+  }
+
+  private static String fetchKey(GarminUserTokens tokens, LocalDate date) {
+    return tokens.getId().getUserId() + "|" + tokens.getId().getGarminUserId() + "|" + date;
+  }
+
+  private ReadResult result(Optional<GarminUserDailiesSummary> stored, Source source) {
+    reads.get(source).increment();
+    return stored
+        .map(summary -> new ReadResult(List.of(DailiesSummaryMapper.toDto(summary)), source,
+            summary.getLastModifiedAt()))
+        .orElseGet(() -> new ReadResult(List.of(), source, null));
+  }
+}
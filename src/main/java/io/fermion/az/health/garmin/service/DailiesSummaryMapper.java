@@ -0,0 +1,148 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.codec.HeartRateSampleCodec;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Maps Garmin dailies payloads to and from the persisted summary entity.
+ */
+public final class DailiesSummaryMapper {
+
+  private static final Logger log = LoggerFactory.getLogger(DailiesSummaryMapper.class);
+
+  private DailiesSummaryMapper() {
+  }
+
+  /**
+   * Build an entity for the given summary. The summary's own userId is the
+   * Garmin user id; {@code userId} is our internal user it belongs to.
+   */
+  public static GarminUserDailiesSummary toEntity(DailiesSummary summary, String userId) {
+    GarminUserDailiesSummary entity = new GarminUserDailiesSummary();
+    entity.setId(new GarminDailiesSummaryId(userId, summary.getUserId(), LocalDate.parse(summary.getCalendarDate())));
+    entity.setSummaryId(summary.getSummaryId());
+    entity.setActivityType(summary.getActivityType());
+
+    entity.setActiveKilocalories(Objects.requireNonNullElse(summary.getActiveKilocalories(), 0));
+    entity.setBmrKilocalories(Objects.requireNonNullElse(summary.getBmrKilocalories(), 0));
+    entity.setSteps(Objects.requireNonNullElse(summary.getSteps(), 0));
+    entity.setPushes(Objects.requireNonNullElse(summary.getPushes(), 0));
+    entity.setDistanceInMeters(Objects.requireNonNullElse(summary.getDistanceInMeters(), 0.0));
+    entity.setPushDistanceInMeters(Objects.requireNonNullElse(summary.getPushDistanceInMeters(), 0.0));
+
+    entity.setDurationInSeconds(Objects.requireNonNullElse(summary.getDurationInSeconds(), 0L));
+    entity.setActiveTimeInSeconds(Objects.requireNonNullElse(summary.getActiveTimeInSeconds(), 0L));
+    entity.setStartTimeInSeconds(summary.getStartTimeInSeconds());
+    entity.setStartTimeOffsetInSeconds(summary.getStartTimeOffsetInSeconds());
+    entity.setModerateIntensityDurationInSeconds(
+        Objects.requireNonNullElse(summary.getModerateIntensityDurationInSeconds(), 0L));
+    entity.setVigorousIntensityDurationInSeconds(
+        Objects.requireNonNullElse(summary.getVigorousIntensityDurationInSeconds(), 0L));
+
+    entity.setFloorsClimbed(Objects.requireNonNullElse(summary.getFloorsClimbed(), 0));
+
+    entity.setMinHeartRateInBeatsPerMinute(summary.getMinHeartRateInBeatsPerMinute());
+    entity.setMaxHeartRateInBeatsPerMinute(summary.getMaxHeartRateInBeatsPerMinute());
+    entity.setAverageHeartRateInBeatsPerMinute(summary.getAverageHeartRateInBeatsPerMinute());
+    entity.setRestingHeartRateInBeatsPerMinute(summary.getRestingHeartRateInBeatsPerMinute());
+    setHeartRateSamples(entity, summary.getTimeOffsetHeartRateSamples());
+    entity.setSource(summary.getSource());
+
+    entity.setStepsGoal(summary.getStepsGoal());
+    entity.setPushesGoal(summary.getPushesGoal());
+    entity.setIntensityDurationGoalInSeconds(summary.getIntensityDurationGoalInSeconds());
+    entity.setFloorsClimbedGoal(summary.getFloorsClimbedGoal());
+
+    entity.setAverageStressLevel(summary.getAverageStressLevel());
+    entity.setMaxStressLevel(summary.getMaxStressLevel());
+    entity.setStressDurationInSeconds(Objects.requireNonNullElse(summary.getStressDurationInSeconds(), 0L));
+    entity.setRestStressDurationInSeconds(Objects.requireNonNullElse(summary.getRestStressDurationInSeconds(), 0L));
+    entity.setActivityStressDurationInSeconds(
+        Objects.requireNonNullElse(summary.getActivityStressDurationInSeconds(), 0L));
+    entity.setLowStressDurationInSeconds(Objects.requireNonNullElse(summary.getLowStressDurationInSeconds(), 0L));
+    entity.setMediumStressDurationInSeconds(
+        Objects.requireNonNullElse(summary.getMediumStressDurationInSeconds(), 0L));
+    entity.setHighStressDurationInSeconds(Objects.requireNonNullElse(summary.getHighStressDurationInSeconds(), 0L));
+    entity.setStressQualifier(summary.getStressQualifier());
+
+    entity.setBodyBatteryChargedValue(summary.getBodyBatteryChargedValue());
+    entity.setBodyBatteryDrainedValue(summary.getBodyBatteryDrainedValue());
+    return entity;
+  }
+
+  /**
+   * Rebuild a Garmin-shaped summary from a stored row, with the Garmin user
+   * id as its userId.
+   */
+  public static DailiesSummary toDto(GarminUserDailiesSummary entity) {
+    DailiesSummary summary = new DailiesSummary();
+    summary.setUserId(entity.getId().getGarminUserId());
+    summary.setCalendarDate(entity.getId().getCalendarDate().toString());
+    summary.setSummaryId(entity.getSummaryId());
+    summary.setActivityType(entity.getActivityType());
+
+    summary.setActiveKilocalories(entity.getActiveKilocalories());
+    summary.setBmrKilocalories(entity.getBmrKilocalories());
+    summary.setSteps(entity.getSteps());
+    summary.setPushes(entity.getPushes());
+    summary.setDistanceInMeters(entity.getDistanceInMeters());
+    summary.setPushDistanceInMeters(entity.getPushDistanceInMeters());
+
+    summary.setDurationInSeconds(entity.getDurationInSeconds());
+    summary.setActiveTimeInSeconds(entity.getActiveTimeInSeconds());
+    summary.setStartTimeInSeconds(entity.getStartTimeInSeconds());
+    summary.setStartTimeOffsetInSeconds(entity.getStartTimeOffsetInSeconds());
+    summary.setModerateIntensityDurationInSeconds(entity.getModerateIntensityDurationInSeconds());
+    summary.setVigorousIntensityDurationInSeconds(entity.getVigorousIntensityDurationInSeconds());
+
+    summary.setFloorsClimbed(entity.getFloorsClimbed());
+
+    summary.setMinHeartRateInBeatsPerMinute(entity.getMinHeartRateInBeatsPerMinute());
+    summary.setMaxHeartRateInBeatsPerMinute(entity.getMaxHeartRateInBeatsPerMinute());
+    summary.setAverageHeartRateInBeatsPerMinute(entity.getAverageHeartRateInBeatsPerMinute());
+    summary.setRestingHeartRateInBeatsPerMinute(entity.getRestingHeartRateInBeatsPerMinute());
+    summary.setTimeOffsetHeartRateSamples(entity.getHeartRateSamples() != null
+        ? HeartRateSampleCodec.toJson(entity.getHeartRateSamples())
+        : entity.getTimeOffsetHeartRateSamples());
+    summary.setSource(entity.getSource());
+
+    summary.setStepsGoal(entity.getStepsGoal());
+    summary.setPushesGoal(entity.getPushesGoal());
+    summary.setIntensityDurationGoalInSeconds(entity.getIntensityDurationGoalInSeconds());
+    summary.setFloorsClimbedGoal(entity.getFloorsClimbedGoal());
+
+    summary.setAverageStressLevel(entity.getAverageStressLevel());
+    summary.setMaxStressLevel(entity.getMaxStressLevel());
+    summary.setStressDurationInSeconds(entity.getStressDurationInSeconds());
+    summary.setRestStressDurationInSeconds(entity.getRestStressDurationInSeconds());
+    summary.setActivityStressDurationInSeconds(entity.getActivityStressDurationInSeconds());
+    summary.setLowStressDurationInSeconds(entity.getLowStressDurationInSeconds());
+    summary.setMediumStressDurationInSeconds(entity.getMediumStressDurationInSeconds());
+    summary.setHighStressDurationInSeconds(entity.getHighStressDurationInSeconds());
+    summary.setStressQualifier(entity.getStressQualifier());
+
+    summary.setBodyBatteryChargedValue(entity.getBodyBatteryChargedValue());
+    summary.setBodyBatteryDrainedValue(entity.getBodyBatteryDrainedValue());
+    return summary;
+  }
+
+  // Store samples in binary form; keep the JSON only if Garmin sent something we cannot encode
+  private static void setHeartRateSamples(GarminUserDailiesSummary entity, String json) {
+    try {
+      entity.setHeartRateSamples(HeartRateSampleCodec.fromJson(json));
+      entity.setTimeOffsetHeartRateSamples(null);
+    } catch (IllegalArgumentException e) {
+      log.warn("Keeping heart rate samples of {} as JSON: {}", entity.getSummaryId(), e.getMessage());
+      entity.setHeartRateSamples(null);
+      entity.setTimeOffsetHeartRateSamples(json);
+    }
+  }
+}
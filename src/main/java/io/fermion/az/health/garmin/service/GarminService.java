@@ -1,5 +1,8 @@
 package io.fermion.az.health.garmin.service;
 
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.client.GarminApiClient;
+import io.fermion.az.health.garmin.concurrent.SingleFlight;
 import io.fermion.az.health.garmin.dto.AuthorizationRequest;
 import io.fermion.az.health.garmin.dto.DailiesSummary;
 import io.fermion.az.health.garmin.dto.TokenResponse;
@@ -8,8 +11,13 @@ import io.fermion.az.health.garmin.entity.GarminUserTokens;
 import io.fermion.az.health.garmin.entity.GarminUserTokensId;
 import io.fermion.az.health.garmin.entity.OidcState;
 import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
 import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
 import io.fermion.az.health.garmin.repo.OidcStateRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import lombok.RequiredArgsConstructor;
 
@@ -19,8 +27,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
@@ -34,6 +45,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import java.util.Base64;
 
@@ -44,7 +56,19 @@ public class GarminService {
 
     private final OidcStateRepository oidcStateRepository;
     private final GarminUserTokensRepository garminUserTokensRepository;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final GarminApiClient garminApiClient;
+    private final ConnectedTokenCache connectedTokenCache;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    // One refresh per token and one upstream fetch per user and day at a time
+    private final SingleFlight<GarminUserTokensId, GarminUserTokens> tokenRefreshes = new SingleFlight<>();
+    private final SingleFlight<String, List<DailiesSummary>> dailiesFetches = new SingleFlight<>();
+    private TransactionTemplate refreshTransaction;
+    private Timer refreshSuccesses;
+    private Timer refreshFailures;
+    private Counter exchangeSuccesses;
+    private Counter exchangeFailures;
 
     private static final String GARMIN_API_BASE = "https://apis.garmin.com/wellness-api/rest";
     private static final Logger log = LoggerFactory.getLogger(GarminService.class);
@@ -58,26 +82,34 @@ public class GarminService {
     @Value("${GARMIN_REDIRECT_URI:${garmin.redirect.uri:https://garmin-webhook-app-production.up.railway.app/api/garmin/auth/callback}}")
     private String redirectUri;
 
-    @Value("${GARMIN_TOKEN_URL:${garmin.token.url:https://diauth.garmin.com/di-oauth2-service/oauth/token}}")
-    private String tokenUrl;
-
-    @Value("${GARMIN_USER_ID_URL:${garmin.user.id.url:https://apis.garmin.com/wellness-api/rest/user/id}}")
-    private String userIdUrl;
-
-    @Value("${GARMIN_DAILIES_URL:${garmin.dailies.url:https://apis.garmin.com/wellness-api/rest/dailies}}")
-    private String dailiesUrl;
-
     @PostConstruct
     public void init() {
+        refreshTransaction = new TransactionTemplate(transactionManager);
+        refreshTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        refreshSuccesses = refreshTimer("success");
+        refreshFailures = refreshTimer("failure");
+        exchangeSuccesses = exchangeCounter("success");
+        exchangeFailures = exchangeCounter("failure");
+
         log.info("=== GARMIN CONFIGURATION ===");
         log.info("Client ID: {}", clientId);
         log.info("Redirect URI: {}", redirectUri);
-        log.info("Token URL: {}", tokenUrl);
-        log.info("User ID URL: {}", userIdUrl);
-        log.info("Dailies URL: {}", dailiesUrl);
+        log.info("Token URL: {}", garminApiClient.getTokenUrl());
+        log.info("User ID URL: {}", garminApiClient.getUserIdUrl());
+        log.info("Dailies URL: {}", garminApiClient.getDailiesUrl());
         log.info("=== END GARMIN CONFIG ===");
     }
 
+    private Timer refreshTimer(String result) {
+        return Timer.builder("garmin.tokens.refreshes").tag("result", result)
+                .description("Access token refreshes sent to Garmin").register(meterRegistry);
+    }
+
+    private Counter exchangeCounter(String result) {
+        return Counter.builder("garmin.tokens.exchanges").tag("result", result)
+                .description("Authorization codes exchanged for tokens").register(meterRegistry);
+    }
+
     // ======================
     // AUTH & TOKEN HANDLING
     // ======================
@@ -100,10 +132,10 @@ public class GarminService {
     form.add("redirect_uri", redirectUri);
 
     HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(form, headers);
-    log.info("📡 Exchanging authorization code for tokens at {}", tokenUrl);
+    log.info("📡 Exchanging authorization code for tokens at {}", garminApiClient.getTokenUrl());
 
     try {
-        ResponseEntity<TokenResponse> response = restTemplate.postForEntity(tokenUrl, entity, TokenResponse.class);
+        ResponseEntity<TokenResponse> response = garminApiClient.requestToken(entity);
 
         if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
             TokenResponse tokenResponse = response.getBody();
@@ -123,13 +155,20 @@ public class GarminService {
             tokens.setLastModifiedAt(LocalDateTime.now());
             tokens.setConnectStatus(GarminUserTokens.ConnectStatus.CONNECTED);
 
-            return garminUserTokensRepository.save(tokens);
+            GarminUserTokens saved = garminUserTokensRepository.save(tokens);
+            connectedTokenCache.update(saved);
+            exchangeSuccesses.increment();
+            return saved;
         } else {
             log.error("❌ Token exchange failed. HTTP status: {}", response.getStatusCode());
             throw new GarminApiException("Token exchange failed: " + response.getStatusCode());
         }
 
+    } catch (GarminRateLimitException | GarminUnavailableException e) {
+        exchangeFailures.increment();
+        throw e;
     } catch (Exception e) {
+        exchangeFailures.increment();
         log.error("❌ Token exchange failed: {}", e.getMessage());
         throw new GarminApiException("Token exchange failed: " + e.getMessage());
     }
@@ -144,17 +183,15 @@ public class GarminService {
 
 
     private UserIdResponse fetchUserId(String accessToken) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(accessToken);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
         try {
-            ResponseEntity<UserIdResponse> response = restTemplate.exchange(userIdUrl, HttpMethod.GET, entity, UserIdResponse.class);
+            ResponseEntity<UserIdResponse> response = garminApiClient.fetchUserId(accessToken);
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
                 return response.getBody();
             } else {
                 throw new GarminApiException("Failed to fetch user ID: HTTP " + response.getStatusCode());
             }
+        } catch (GarminRateLimitException | GarminUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error fetching user ID: {}", e.getMessage());
             throw new GarminApiException("Failed to fetch user ID: " + e.getMessage());
@@ -165,37 +202,28 @@ public class GarminService {
     // GARMIN DATA FETCH
     // ======================
 
-   public Map<String, Object> getDailiesSummary(String garminUserId, LocalDate date, String accessToken) {
-    long start = date.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
-    long end   = date.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) - 1; // 23:59:59
-
-    // Use the injected property, not a hard-coded base
-    String url = String.format(
-        "%s?userId=%s&uploadStartTimeInSeconds=%d&uploadEndTimeInSeconds=%d",
-        dailiesUrl, garminUserId, start, end
-    );
-
-    HttpHeaders headers = new HttpHeaders();
-    headers.setBearerAuth(accessToken);
-    headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-
-    HttpEntity<Void> entity = new HttpEntity<>(headers);
-
-    // Extra debug to see the exact URL & body Garmin returns
-    log.info("➡️  GET {}", url);
-    ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-    log.info("⬅️  Status: {}, Body: {}", response.getStatusCode(), response.getBody());
-
-    return response.getBody();
-}
-
-
+    /**
+     * Concurrent calls for the same Garmin user and date share one upstream
+     * request, so the returned list is read-only. No transaction is held
+     * while Garmin is called.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<DailiesSummary> getDailiesSummary(String garminUserId, LocalDate date, String accessToken) {
+        long start = date.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long end   = date.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) - 1; // 23:59:59
+
+        return dailiesFetches.execute(garminUserId + "|" + date, () -> {
+            List<DailiesSummary> summaries = garminApiClient.fetchDailies(garminUserId, start, end, accessToken);
+            log.debug("⬅️  {} dailies summaries for Garmin user {} on {}", summaries.size(), garminUserId, date);
+            return Collections.unmodifiableList(summaries);
+        });
+    }
 
     public void logDailiesSummary(String userId, LocalDate date, String accessToken) {
         try {
-            Map<String, Object> summary = getDailiesSummary(userId, date, accessToken);
-            if (summary != null) {
-                log.info("✅ Garmin Daily Summary for user {} on {}: {}", userId, date, summary);
+            List<DailiesSummary> summaries = getDailiesSummary(userId, date, accessToken);
+            if (!summaries.isEmpty()) {
+                log.info("✅ Garmin Daily Summary for user {} on {}: {} summaries", userId, date, summaries.size());
             } else {
                 log.warn("⚠️ No Garmin daily summary data found for user {} on {}", userId, date);
             }
@@ -204,38 +232,41 @@ public class GarminService {
         }
     }
 
-    public DailiesSummary[] getTodayDailiesSummaryForUser(String userId) {
-    LocalDate today = LocalDate.now();
-    return getDailiesSummaryForUser(userId, today);
-    }
-
-    public DailiesSummary[] getDailiesSummaryForUser(String userId, LocalDate date) {
-    GarminUserTokens tokens = garminUserTokensRepository.findConnectedByUserId(userId);
-
-    if (tokens == null) {
-        throw new GarminApiException("No connected Garmin account found for user: " + userId);
-    }
-
-    // Refresh if expired
-    if (tokens.getAccessTokenExpiry().isBefore(LocalDateTime.now())) {
-        tokens = refreshAccessToken(tokens);
+    /**
+     * Refresh the access token of {@code stale}. Concurrent refreshes of the
+     * same token share one call to Garmin. The row is re-read first, so a
+     * caller holding an outdated copy gets the token someone else already
+     * rotated instead of refreshing it again with a spent refresh token.
+     * Reading the row and saving the rotated token each run in their own short
+     * transaction; no connection is held while Garmin is called.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public GarminUserTokens refreshAccessToken(GarminUserTokens stale) {
+        return tokenRefreshes.execute(stale.getId(), () -> {
+            GarminUserTokens current = refreshTransaction.execute(status -> findTokens(stale.getId()));
+            if (!Objects.equals(current.getAccessToken(), stale.getAccessToken())) {
+                log.debug("Token for user {} was already refreshed", stale.getId().getUserId());
+                return current;
+            }
+            long start = System.nanoTime();
+            try {
+                TokenResponse rotated = requestRefresh(current);
+                GarminUserTokens saved = refreshTransaction.execute(status -> saveRefreshed(stale.getId(), rotated));
+                refreshSuccesses.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return saved;
+            } catch (RuntimeException e) {
+                refreshFailures.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+        });
     }
 
-    // Call Garmin API
-    Map<String, Object> response = getDailiesSummary(tokens.getId().getGarminUserId(), date, tokens.getAccessToken());
-
-    if (response != null && !response.isEmpty()) {
-        log.info("✅ Garmin Daily Summary fetched for user {} on {}:", userId, date);
-        log.info("Raw Garmin response: {}", response);
-    } else {
-        log.warn("⚠️ No Garmin Daily Summary found for user {} on {}", userId, date);
+    private GarminUserTokens findTokens(GarminUserTokensId id) {
+        return garminUserTokensRepository.findById(id)
+                .orElseThrow(() -> new GarminApiException("Token not found for user: " + id.getUserId()));
     }
 
-    // You can later parse this into DailiesSummary[] if you want
-    return new DailiesSummary[] {};
-}
-    
-    private GarminUserTokens refreshAccessToken(GarminUserTokens tokens) {
+    private TokenResponse requestRefresh(GarminUserTokens tokens) {
         if (tokens.getRefreshTokenExpiry().isBefore(LocalDateTime.now())) {
             throw new GarminApiException("Refresh token expired. User needs to re-authenticate.");
         }
@@ -249,24 +280,37 @@ public class GarminService {
         HttpEntity<String> entity = new HttpEntity<>(body, headers);
 
         try {
-            ResponseEntity<TokenResponse> response = restTemplate.postForEntity(tokenUrl, entity, TokenResponse.class);
+            ResponseEntity<TokenResponse> response = garminApiClient.requestToken(entity);
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                TokenResponse tokenResponse = response.getBody();
-                tokens.setAccessToken(tokenResponse.getAccessToken());
-                tokens.setAccessTokenExpiry(LocalDateTime.now().plusSeconds(tokenResponse.getExpiresIn()));
-                tokens.setLastModifiedAt(LocalDateTime.now());
-                if (tokenResponse.getRefreshToken() != null) {
-                    tokens.setRefreshToken(tokenResponse.getRefreshToken());
-                    tokens.setRefreshTokenExpiry(LocalDateTime.now().plusSeconds(tokenResponse.getRefreshTokenExpiresIn()));
-                }
-                return garminUserTokensRepository.save(tokens);
+                return response.getBody();
             } else {
                 throw new GarminApiException("Token refresh failed: HTTP " + response.getStatusCode());
             }
+        } catch (GarminRateLimitException | GarminUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Token refresh error: {}", e.getMessage());
-            throw new GarminApiException("Failed to refresh token: " + e.getMessage());
+            // Keep the cause so callers can tell a revoked grant from an outage
+            throw new GarminApiException("Failed to refresh token: " + e.getMessage(), e);
+        }
+    }
+
+    // Applied to a fresh read so bookkeeping saved during the call is kept
+    private GarminUserTokens saveRefreshed(GarminUserTokensId id, TokenResponse tokenResponse) {
+        GarminUserTokens tokens = findTokens(id);
+        tokens.setAccessToken(tokenResponse.getAccessToken());
+        tokens.setAccessTokenExpiry(LocalDateTime.now().plusSeconds(tokenResponse.getExpiresIn()));
+        tokens.setLastModifiedAt(LocalDateTime.now());
+        if (tokenResponse.getRefreshToken() != null) {
+            tokens.setRefreshToken(tokenResponse.getRefreshToken());
+            tokens.setRefreshTokenExpiry(LocalDateTime.now().plusSeconds(tokenResponse.getRefreshTokenExpiresIn()));
         }
+        tokens.setRefreshFailureCount(0);
+        tokens.setLastRefreshError(null);
+        tokens.setNextRefreshAttemptAt(null);
+        GarminUserTokens saved = garminUserTokensRepository.save(tokens);
+        connectedTokenCache.update(saved);
+        return saved;
     }
 
     // ======================
@@ -275,7 +319,7 @@ public class GarminService {
 
     public Map<String, Object> getConnectionStatus(String userId) {
         Map<String, Object> status = new HashMap<>();
-        GarminUserTokens connectedToken = garminUserTokensRepository.findConnectedByUserId(userId);
+        GarminUserTokens connectedToken = connectedTokenCache.get(userId);
 
         if (connectedToken != null) {
             status.put("connected", true);
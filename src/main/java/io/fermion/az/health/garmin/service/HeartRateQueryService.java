@@ -0,0 +1,386 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.BoundedTtlCache;
+import io.fermion.az.health.garmin.codec.HeartRateSampleCodec;
+import io.fermion.az.health.garmin.codec.HeartRateSampleCodec.SampleConsumer;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo.HeartRateSamplesRow;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Heart rate queries over the stored {@code timeOffsetHeartRateSamples} of a
+ * user's days.
+ *
+ * Each query is one pass of {@link HeartRateSampleCodec#forEach} over a
+ * day's samples into an accumulator holding primitives only; the buffers a
+ * pass needs are sized once per day. Results are cached per user, day and
+ * query. A day is cached for {@code past-ttl-ms} once it is final in the
+ * sense of {@code garmin.read.final-after-ms}, and for
+ * {@code recent-ttl-ms} before that, while Garmin may still send more
+ * samples. A day with no samples is always cached for {@code recent-ttl-ms},
+ * so a backfill that adds them later shows up.
+ */
+@Service
+public class HeartRateQueryService {
+
+  private static final int SECONDS_PER_DAY = 86_400;
+
+  private final GarminDailiesSummaryRepo dailiesSummaryRepo;
+  // "userId|date|query" -> the query's result for that day, weighed by a rough size in bytes
+  private final BoundedTtlCache<String, Object> results;
+
+  private final long pastTtlMs;
+  private final long recentTtlMs;
+  private final long finalAfterMs;
+
+  @Value("${garmin.hr.max-days:92}")
+  private int maxDays;
+
+  // A sample stands for the time until the next one, but for no more than this
+  @Value("${garmin.hr.max-sample-gap-seconds:60}")
+  private int maxSampleGapSeconds;
+
+  public HeartRateQueryService(GarminDailiesSummaryRepo dailiesSummaryRepo,
+      @Value("${garmin.hr.cache.max-entries:50000}") long maxEntries,
+      @Value("${garmin.hr.cache.max-weight-bytes:67108864}") long maxWeightBytes,
+      @Value("${garmin.hr.cache.past-ttl-ms:86400000}") long pastTtlMs,
+      @Value("${garmin.hr.cache.recent-ttl-ms:60000}") long recentTtlMs,
+      @Value("${garmin.read.final-after-ms:86400000}") long finalAfterMs,
+      @Value("${garmin.hr.cache.tick-ms:1000}") long tickMs,
+      MeterRegistry meterRegistry) {
+    this.dailiesSummaryRepo = dailiesSummaryRepo;
+    this.pastTtlMs = pastTtlMs;
+    this.recentTtlMs = recentTtlMs;
+    this.finalAfterMs = finalAfterMs;
+    this.results = new BoundedTtlCache<>("heart-rate-days", maxEntries, maxWeightBytes, tickMs,
+        (k, v) -> v instanceof HeartRateWindow window ? 128 + window.count() * 8 : 256);
+    this.results.bindTo(meterRegistry);
+  }
+
+  /**
+   * Samples from {@code from} (inclusive) to {@code to} (exclusive) on one
+   * day, as parallel arrays of seconds since midnight and BPM. The stats are
+   * {@code null} when there are no samples.
+   */
+  public record HeartRateWindow(LocalDate date, LocalTime from, LocalTime to, int count, Integer min, Integer max,
+      Double average, int[] offsets, int[] bpm) {
+  }
+
+  /**
+   * @param maxBpm {@code null} for the top zone
+   */
+  public record ZoneMinutes(int zone, int minBpm, Integer maxBpm, double minutes) {
+  }
+
+  public record DayZones(LocalDate date, double belowZonesMinutes, List<ZoneMinutes> zones) {
+  }
+
+  /**
+   * Highest average over any {@code windowMinutes} of the day and when that
+   * window started; {@code null} when no window was covered by samples.
+   */
+  public record DayMaxAverage(LocalDate date, int windowMinutes, Double maxAverage, LocalTime windowStart) {
+  }
+
+  /**
+   * @param to {@code null} for the end of the day
+   * @throws IllegalArgumentException if {@code to} is not after {@code from}
+   */
+  public HeartRateWindow window(String userId, LocalDate date, LocalTime from, LocalTime to) {
+    int fromOffset = from.toSecondOfDay();
+    int toOffset = to == null ? SECONDS_PER_DAY : to.toSecondOfDay();
+    if (toOffset <= fromOffset) {
+      throw new IllegalArgumentException("'to' must be after 'from'");
+    }
+    return perDay(userId, date, date, "window:" + fromOffset + "-" + toOffset, (day, samples) -> {
+      WindowAccumulator window = new WindowAccumulator(samples == null ? 0 : HeartRateSampleCodec.sampleCount(samples));
+      if (samples != null) {
+        HeartRateSampleCodec.forEach(samples, fromOffset, toOffset, window);
+      }
+      return window.result(day, from, to);
+    }).get(0);
+  }
+
+  /**
+   * Minutes spent in each zone per day. {@code bounds} are the lowest BPM of
+   * zones 1, 2, ... in ascending order.
+   *
+   * @throws IllegalArgumentException for an invalid range or bounds
+   */
+  public List<DayZones> zones(String userId, LocalDate from, LocalDate to, int[] bounds) {
+    for (int i = 0; i < bounds.length; i++) {
+      if (bounds[i] <= 0 || (i > 0 && bounds[i] <= bounds[i - 1])) {
+        throw new IllegalArgumentException("Zone bounds must be positive and ascending");
+      }
+    }
+    if (bounds.length == 0) {
+      throw new IllegalArgumentException("At least one zone bound is required");
+    }
+    return perDay(userId, from, to, "zones:" + Arrays.toString(bounds), (day, samples) -> {
+      ZoneAccumulator zones = new ZoneAccumulator(bounds, maxSampleGapSeconds);
+      if (samples != null) {
+        HeartRateSampleCodec.forEach(samples, zones);
+      }
+      return zones.result(day);
+    });
+  }
+
+  /**
+   * The highest rolling average over {@code windowMinutes} per day.
+   *
+   * @throws IllegalArgumentException for an invalid range or window
+   */
+  public List<DayMaxAverage> maxAverage(String userId, LocalDate from, LocalDate to, int windowMinutes) {
+    if (windowMinutes < 1 || windowMinutes > 24 * 60) {
+      throw new IllegalArgumentException("windowMinutes must be between 1 and 1440");
+    }
+    return perDay(userId, from, to, "max-average:" + windowMinutes, (day, samples) -> {
+      MaxAverageAccumulator rolling = new MaxAverageAccumulator(
+          samples == null ? 0 : HeartRateSampleCodec.sampleCount(samples), windowMinutes * 60, maxSampleGapSeconds);
+      if (samples != null) {
+        HeartRateSampleCodec.forEach(samples, rolling);
+      }
+      return rolling.result(day, windowMinutes);
+    });
+  }
+
+  @Scheduled(fixedRateString = "${garmin.hr.cache.tick-ms:1000}")
+  public void tick() {
+    results.tick();
+  }
+
+  @FunctionalInterface
+  private interface DayQuery<T> {
+    T compute(LocalDate day, byte[] samples);
+  }
+
+  /**
+   * Answer {@code query} for each day from the cache, loading the samples of
+   * the days that are not cached with one query.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> List<T> perDay(String userId, LocalDate from, LocalDate to, String query, DayQuery<T> compute) {
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("'to' must not be before 'from'");
+    }
+    if (from.plusDays(maxDays).isBefore(to.plusDays(1))) {
+      throw new IllegalArgumentException("At most " + maxDays + " days per request");
+    }
+    Function<LocalDate, String> key = day -> userId + "|" + day + "|" + query;
+
+    List<T> answers = new ArrayList<>();
+    List<LocalDate> missing = new ArrayList<>();
+    for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+      T cached = (T) results.get(key.apply(day));
+      answers.add(cached);
+      if (cached == null) {
+        missing.add(day);
+      }
+    }
+    if (missing.isEmpty()) {
+      return answers;
+    }
+
+    Map<LocalDate, byte[]> samplesByDay = new HashMap<>();
+    for (HeartRateSamplesRow row : dailiesSummaryRepo.findHeartRateSamples(userId, missing)) {
+      if (!samplesByDay.containsKey(row.getCalendarDate())) {
+        samplesByDay.put(row.getCalendarDate(), samples(row));
+      }
+    }
+    for (LocalDate day : missing) {
+      byte[] samples = samplesByDay.get(day);
+      T answer = compute.compute(day, samples);
+      // A day without samples yet may still be backfilled, however old it is
+      results.put(key.apply(day), answer, samples == null ? recentTtlMs : ttlFor(day));
+      answers.set((int) (day.toEpochDay() - from.toEpochDay()), answer);
+    }
+    return answers;
+  }
+
+  // Rows stored before the binary column, or that the codec rejected, are encoded on the fly
+  private static byte[] samples(HeartRateSamplesRow row) {
+    if (row.getHeartRateSamples() != null) {
+      return row.getHeartRateSamples();
+    }
+    try {
+      return HeartRateSampleCodec.fromJson(row.getTimeOffsetHeartRateSamples());
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private long ttlFor(LocalDate day) {
+    LocalDateTime finalAt = day.plusDays(1).atStartOfDay().plus(Duration.ofMillis(finalAfterMs));
+    return LocalDateTime.now().isBefore(finalAt) ? recentTtlMs : pastTtlMs;
+  }
+
+  private static final class WindowAccumulator implements SampleConsumer {
+    private final int[] offsets;
+    private final int[] bpm;
+    private int count;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private long sum;
+
+    WindowAccumulator(int capacity) {
+      offsets = new int[capacity];
+      bpm = new int[capacity];
+    }
+
+    @Override
+    public void accept(int offsetSeconds, int beats) {
+      offsets[count] = offsetSeconds;
+      bpm[count] = beats;
+      count++;
+      min = Math.min(min, beats);
+      max = Math.max(max, beats);
+      sum += beats;
+    }
+
+    HeartRateWindow result(LocalDate day, LocalTime from, LocalTime to) {
+      boolean any = count > 0;
+      return new HeartRateWindow(day, from, to, count, any ? min : null, any ? max : null,
+          any ? (double) sum / count : null, Arrays.copyOf(offsets, count), Arrays.copyOf(bpm, count));
+    }
+  }
+
+  /**
+   * Each sample is counted for the time until the next one, capped at the
+   * max gap; the last sample of the day counts as long as the one before it.
+   */
+  private static final class ZoneAccumulator implements SampleConsumer {
+    private final int[] bounds;
+    private final int maxGap;
+    // [0] is below the first zone
+    private final long[] seconds;
+    private int previousOffset = -1;
+    private int previousBpm;
+    private int lastDuration;
+
+    ZoneAccumulator(int[] bounds, int maxGap) {
+      this.bounds = bounds;
+      this.maxGap = maxGap;
+      this.seconds = new long[bounds.length + 1];
+    }
+
+    @Override
+    public void accept(int offsetSeconds, int bpm) {
+      if (previousOffset >= 0) {
+        lastDuration = Math.min(offsetSeconds - previousOffset, maxGap);
+        seconds[zoneOf(previousBpm)] += lastDuration;
+      }
+      previousOffset = offsetSeconds;
+      previousBpm = bpm;
+    }
+
+    private int zoneOf(int bpm) {
+      int zone = 0;
+      while (zone < bounds.length && bpm >= bounds[zone]) {
+        zone++;
+      }
+      return zone;
+    }
+
+    DayZones result(LocalDate day) {
+      if (previousOffset >= 0) {
+        seconds[zoneOf(previousBpm)] += lastDuration;
+      }
+      List<ZoneMinutes> zones = new ArrayList<>(bounds.length);
+      for (int i = 0; i < bounds.length; i++) {
+        zones.add(new ZoneMinutes(i + 1, bounds[i], i + 1 < bounds.length ? bounds[i + 1] - 1 : null,
+            seconds[i + 1] / 60.0));
+      }
+      return new DayZones(day, seconds[0] / 60.0, zones);
+    }
+  }
+
+  /**
+   * Rolling average of the samples in the {@code window} seconds up to each
+   * sample. A window only counts if its samples span all of it but at most
+   * one max gap and no two consecutive samples in it are more than the max
+   * gap apart, so a gap in the data does not make a few samples a window.
+   * The largest gap in the window is a sliding maximum: {@code gaps} holds
+   * the indices of samples in the window by decreasing gap to their
+   * predecessor.
+   */
+  private static final class MaxAverageAccumulator implements SampleConsumer {
+    private final int[] offsets;
+    private final int[] bpm;
+    private final int[] gaps;
+    private final int window;
+    private final int maxGap;
+    private int head;
+    private int tail;
+    private int gapsHead;
+    private int gapsTail;
+    private long sum;
+    private double best = -1;
+    private int bestStart;
+
+    MaxAverageAccumulator(int capacity, int window, int maxGap) {
+      this.offsets = new int[capacity];
+      this.bpm = new int[capacity];
+      this.gaps = new int[capacity];
+      this.window = window;
+      this.maxGap = maxGap;
+    }
+
+    @Override
+    public void accept(int offsetSeconds, int beats) {
+      offsets[tail] = offsetSeconds;
+      bpm[tail] = beats;
+      if (tail > 0) {
+        int gap = offsetSeconds - offsets[tail - 1];
+        while (gapsTail > gapsHead && gapOf(gaps[gapsTail - 1]) <= gap) {
+          gapsTail--;
+        }
+        gaps[gapsTail++] = tail;
+      }
+      tail++;
+      sum += beats;
+      while (offsets[head] <= offsetSeconds - window) {
+        sum -= bpm[head];
+        head++;
+      }
+      // The gap before the first sample in the window is outside it
+      while (gapsTail > gapsHead && gaps[gapsHead] <= head) {
+        gapsHead++;
+      }
+      boolean gapless = gapsTail == gapsHead || gapOf(gaps[gapsHead]) <= maxGap;
+      if (gapless && offsetSeconds - offsets[head] >= window - maxGap) {
+        double average = (double) sum / (tail - head);
+        if (average > best) {
+          best = average;
+          bestStart = offsets[head];
+        }
+      }
+    }
+
+    private int gapOf(int index) {
+      return offsets[index] - offsets[index - 1];
+    }
+
+    // Offsets run past 86,399 on a 25-hour DST day; those starts are shown as the last second
+    DayMaxAverage result(LocalDate day, int windowMinutes) {
+      return best < 0
+          ? new DayMaxAverage(day, windowMinutes, null, null)
+          : new DayMaxAverage(day, windowMinutes, best,
+              LocalTime.ofSecondOfDay(Math.min(Math.max(0, bestStart), SECONDS_PER_DAY - 1)));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.repo.HeartRateSampleConverter;
+import io.fermion.az.health.garmin.repo.HeartRateSampleConverter.Batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts heart rate samples stored as JSON by earlier versions to the
+ * binary form, in the background after startup. New writes are already
+ * binary, so the conversion only has to pass over the table once; it is
+ * safe to interrupt and simply starts over on the next run.
+ */
+@Service
+public class HeartRateSampleMigration {
+
+  private static final Logger log = LoggerFactory.getLogger(HeartRateSampleMigration.class);
+
+  private final HeartRateSampleConverter converter;
+
+  @Value("${garmin.hr-samples.convert-on-startup:true}")
+  private boolean convertOnStartup;
+
+  @Value("${garmin.hr-samples.convert-batch-size:500}")
+  private int batchSize;
+
+  public HeartRateSampleMigration(HeartRateSampleConverter converter) {
+    this.converter = converter;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (convertOnStartup) {
+      Thread.ofVirtual().name("hr-sample-migration").start(this::run);
+    }
+  }
+
+  void run() {
+    long startNanos = System.nanoTime();
+    GarminDailiesSummaryId after = null;
+    long rows = 0;
+    long converted = 0;
+    long jsonBytes = 0;
+    long binaryBytes = 0;
+    try {
+      Batch batch;
+      do {
+        batch = converter.convertBatch(after, batchSize);
+        after = batch.last();
+        rows += batch.rows();
+        converted += batch.converted();
+        jsonBytes += batch.jsonBytes();
+        binaryBytes += batch.binaryBytes();
+      } while (batch.rows() == batchSize);
+    } catch (RuntimeException e) {
+      log.error("Heart rate sample conversion stopped after {} rows: {}", rows, e.getMessage(), e);
+      return;
+    }
+    if (rows > 0) {
+      log.info("Converted heart rate samples of {} of {} rows from {} bytes of JSON to {} bytes in {} ms",
+          converted, rows, jsonBytes, binaryBytes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.dto.DailiesRollup;
+import io.fermion.az.health.garmin.dto.RollupRebuildStatus;
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.repo.GarminDailiesRollupRepo;
+import io.fermion.az.health.garmin.repo.GarminDailiesRollupWriter;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Weekly and monthly dailies rollups.
+ *
+ * The rollups are kept current by the summary upsert itself (see
+ * {@link GarminDailiesRollupWriter}), so reads go straight to the rollup
+ * table, filtered to the user's current Garmin connection as dailies reads
+ * are. A rebuild recomputes them from the stored summaries, one user per
+ * task with up to {@code rebuild-parallelism} users at a time; it is needed
+ * after the rollup rules change or to repair drift. One rebuild runs at a
+ * time and its progress is kept in memory.
+ */
+@Service
+public class RollupService {
+
+  private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+
+  private final GarminDailiesRollupRepo rollupRepo;
+  private final GarminDailiesRollupWriter rollupWriter;
+  private final ConnectedTokenCache connectedTokenCache;
+  private SimpleAsyncTaskExecutor executor;
+
+  @Value("${garmin.rollups.rebuild-parallelism:8}")
+  private int rebuildParallelism;
+
+  private volatile Rebuild rebuild;
+
+  public RollupService(GarminDailiesRollupRepo rollupRepo, GarminDailiesRollupWriter rollupWriter,
+      ConnectedTokenCache connectedTokenCache) {
+    this.rollupRepo = rollupRepo;
+    this.rollupWriter = rollupWriter;
+    this.connectedTokenCache = connectedTokenCache;
+  }
+
+  private static final class Rebuild {
+    final LocalDateTime startedAt = LocalDateTime.now();
+    final AtomicInteger done = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    final AtomicLong rollups = new AtomicLong();
+    volatile int total;
+    volatile String lastError;
+    volatile LocalDateTime finishedAt;
+
+    RollupRebuildStatus status() {
+      return new RollupRebuildStatus(finishedAt == null, total, done.get(), failed.get(), rollups.get(), lastError,
+          startedAt, finishedAt);
+    }
+  }
+
+  @PostConstruct
+  public void init() {
+    executor = new SimpleAsyncTaskExecutor("rollup-rebuild-");
+    executor.setVirtualThreads(true);
+  }
+
+  /**
+   * Rollups of {@code period} ("week" or "month") overlapping
+   * {@code from}..{@code to}, oldest first.
+   *
+   * @throws IllegalArgumentException for an unknown period or an empty range
+   * @throws GarminApiException if the user has no connected Garmin account
+   */
+  public List<DailiesRollup> query(String userId, String period, LocalDate from, LocalDate to) {
+    GarminDailiesRollup.Period parsed;
+    try {
+      parsed = GarminDailiesRollup.Period.valueOf(period.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("period must be 'week' or 'month'");
+    }
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("'to' must not be before 'from'");
+    }
+    GarminUserTokens tokens = connectedTokenCache.get(userId);
+    if (tokens == null) {
+      throw new GarminApiException("No connected Garmin account found for user: " + userId);
+    }
+    String garminUserId = tokens.getId().getGarminUserId();
+    return rollupRepo.findByUserIdAndGarminUserIdAndPeriodStartBetween(userId, garminUserId, parsed,
+        parsed.start(from), to).stream()
+        .map(DailiesRollup::of)
+        .toList();
+  }
+
+  /**
+   * Start rebuilding the rollups of one user, or of every user with stored
+   * summaries when {@code userId} is {@code null}.
+   *
+   * @throws IllegalStateException if a rebuild is already running
+   */
+  public synchronized RollupRebuildStatus startRebuild(String userId) {
+    Rebuild current = rebuild;
+    if (current != null && current.finishedAt == null) {
+      throw new IllegalStateException("A rollup rebuild is already running");
+    }
+    Rebuild started = new Rebuild();
+    rebuild = started;
+    executor.execute(() -> run(started, userId));
+    return started.status();
+  }
+
+  /**
+   * @return the running or last finished rebuild, or {@code null} if none
+   *         has run since startup
+   */
+  public RollupRebuildStatus rebuildStatus() {
+    Rebuild current = rebuild;
+    return current == null ? null : current.status();
+  }
+
+  private void run(Rebuild job, String userId) {
+    long startNanos = System.nanoTime();
+    try {
+      List<String> userIds = userId != null ? List.of(userId) : rollupWriter.findUserIdsWithSummaries();
+      job.total = userIds.size();
+      Semaphore permits = new Semaphore(rebuildParallelism);
+      for (String user : userIds) {
+        permits.acquire();
+        executor.execute(() -> {
+          try {
+            job.rollups.addAndGet(rollupWriter.rebuild(user));
+          } catch (RuntimeException e) {
+            log.warn("Rollup rebuild for user {} failed: {}", user, e.getMessage());
+            job.failed.incrementAndGet();
+            job.lastError = user + ": " + e.getMessage();
+          } finally {
+            job.done.incrementAndGet();
+            permits.release();
+          }
+        });
+      }
+      permits.acquire(rebuildParallelism);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      job.lastError = "Interrupted";
+    } catch (RuntimeException e) {
+      log.error("Rollup rebuild failed: {}", e.getMessage(), e);
+      job.lastError = e.getMessage();
+    } finally {
+      job.finishedAt = LocalDateTime.now();
+    }
+    log.info("Rollup rebuild finished: {} users ({} failed), {} rollups in {} ms", job.done.get(), job.failed.get(),
+        job.rollups.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+}
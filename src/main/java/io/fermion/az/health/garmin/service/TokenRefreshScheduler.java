@@ -0,0 +1,246 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.client.RequestPriority;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Refreshes access tokens shortly before they expire, so user-facing requests
+ * do not pay for the round trip to the token endpoint.
+ *
+ * Each run pages through the connected tokens expiring within the refresh
+ * lead time and refreshes them on a small fixed pool, each after a random
+ * delay so a batch does not hit Garmin at once. A failed refresh is recorded
+ * on the token and retried with exponential backoff, including a task that
+ * failed unexpectedly. A token whose refresh token has expired, or that
+ * Garmin rejects as revoked ({@code 401}, or {@code 400 invalid_grant} as
+ * when the user removes the app), is marked {@code DISCONNECTED} and left
+ * alone. A token is attempted at most once per
+ * run. Each token attempted is counted in {@code garmin.tokens.scheduled} by
+ * outcome.
+ */
+@Component
+public class TokenRefreshScheduler {
+
+  private static final Logger log = LoggerFactory.getLogger(TokenRefreshScheduler.class);
+  private static final int MAX_ERROR_LENGTH = 500;
+
+  private final GarminService garminService;
+  private final GarminUserTokensRepository garminUserTokensRepository;
+  private final ConnectedTokenCache connectedTokenCache;
+  private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+  private ScheduledExecutorService executor;
+
+  @Value("${garmin.token-refresh.enabled:true}")
+  private boolean enabled;
+
+  @Value("${garmin.token-refresh.lead-time-ms:900000}")
+  private long leadTimeMs;
+
+  @Value("${garmin.token-refresh.page-size:100}")
+  private int pageSize;
+
+  @Value("${garmin.token-refresh.max-pages-per-run:50}")
+  private int maxPagesPerRun;
+
+  @Value("${garmin.token-refresh.concurrency:4}")
+  private int concurrency;
+
+  @Value("${garmin.token-refresh.jitter-ms:2000}")
+  private long jitterMs;
+
+  @Value("${garmin.token-refresh.backoff-base-ms:60000}")
+  private long backoffBaseMs;
+
+  @Value("${garmin.token-refresh.backoff-max-ms:3600000}")
+  private long backoffMaxMs;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  public TokenRefreshScheduler(GarminService garminService, GarminUserTokensRepository garminUserTokensRepository,
+      ConnectedTokenCache connectedTokenCache, MeterRegistry meterRegistry) {
+    this.garminService = garminService;
+    this.garminUserTokensRepository = garminUserTokensRepository;
+    this.connectedTokenCache = connectedTokenCache;
+    for (Outcome outcome : Outcome.values()) {
+      outcomes.put(outcome, Counter.builder("garmin.tokens.scheduled").tag("outcome", outcome.name().toLowerCase())
+          .description("Scheduled token refreshes by outcome").register(meterRegistry));
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    Thread.Builder builder = virtualThreads
+        ? Thread.ofVirtual().name("token-refresh-", 0)
+        : Thread.ofPlatform().daemon().name("token-refresh-", 0);
+    executor = Executors.newScheduledThreadPool(concurrency, builder.factory());
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  @Scheduled(fixedDelayString = "${garmin.token-refresh.interval-ms:60000}",
+      initialDelayString = "${garmin.token-refresh.initial-delay-ms:30000}")
+  public void refreshExpiringTokens() throws InterruptedException {
+    if (!enabled) {
+      return;
+    }
+    // Tokens attempted during this run get a later retry time or expiry and
+    // drop out of the query, so the first page is always the next one. One
+    // whose bookkeeping could not be saved would come back; it is skipped.
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime expiringBefore = now.plus(leadTimeMs, ChronoUnit.MILLIS);
+    int refreshed = 0;
+    int failed = 0;
+    int disconnected = 0;
+    Set<GarminUserTokensId> attempted = new HashSet<>();
+    for (int page = 0; page < maxPagesPerRun; page++) {
+      List<GarminUserTokens> batch = garminUserTokensRepository.findTokensNeedingRefresh(expiringBefore, now,
+          PageRequest.of(0, pageSize)).stream()
+          .filter(tokens -> attempted.add(tokens.getId()))
+          .toList();
+      if (batch.isEmpty()) {
+        break;
+      }
+      List<Future<Outcome>> results = new ArrayList<>(batch.size());
+      for (GarminUserTokens tokens : batch) {
+        long delay = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs) : 0;
+        results.add(executor.schedule(() -> refresh(tokens), delay, TimeUnit.MILLISECONDS));
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        try {
+          Outcome outcome = results.get(i).get();
+          outcomes.get(outcome).increment();
+          switch (outcome) {
+            case REFRESHED -> refreshed++;
+            case FAILED -> failed++;
+            case DISCONNECTED -> disconnected++;
+          }
+        } catch (ExecutionException e) {
+          failed++;
+          outcomes.get(Outcome.FAILED).increment();
+          log.error("Token refresh task failed: {}", e.getCause().getMessage(), e.getCause());
+          try {
+            recordFailure(batch.get(i), e.getCause(), LocalDateTime.now());
+          } catch (RuntimeException recordError) {
+            log.warn("Could not record refresh failure for user {}: {}", batch.get(i).getId().getUserId(),
+                recordError.getMessage());
+          }
+        }
+      }
+    }
+    if (refreshed + failed + disconnected > 0) {
+      log.info("Token refresh run: {} refreshed, {} failed, {} disconnected", refreshed, failed, disconnected);
+    }
+  }
+
+  private enum Outcome {
+    REFRESHED, FAILED, DISCONNECTED
+  }
+
+  private Outcome refresh(GarminUserTokens tokens) {
+    LocalDateTime now = LocalDateTime.now();
+    if (tokens.getRefreshTokenExpiry().isBefore(now)) {
+      log.warn("Refresh token for user {} (Garmin user {}) expired at {}; marking disconnected",
+          tokens.getId().getUserId(), tokens.getId().getGarminUserId(), tokens.getRefreshTokenExpiry());
+      return disconnect(tokens, "Refresh token expired", now);
+    }
+    try {
+      RequestPriority.runAs(RequestPriority.BACKGROUND, () -> garminService.refreshAccessToken(tokens));
+      return Outcome.REFRESHED;
+    } catch (RuntimeException e) {
+      HttpClientErrorException rejection = revocation(e);
+      if (rejection != null) {
+        log.warn("Garmin rejected the refresh token for user {} (Garmin user {}) with {}; marking disconnected",
+            tokens.getId().getUserId(), tokens.getId().getGarminUserId(), rejection.getStatusCode());
+        return disconnect(tokens, "Refresh token rejected: " + rejection.getStatusCode(), now);
+      }
+      recordFailure(tokens, e, now);
+      return Outcome.FAILED;
+    }
+  }
+
+  private Outcome disconnect(GarminUserTokens tokens, String reason, LocalDateTime now) {
+    updateLatest(tokens, latest -> {
+      latest.setConnectStatus(GarminUserTokens.ConnectStatus.DISCONNECTED);
+      latest.setLastRefreshError(reason);
+      latest.setNextRefreshAttemptAt(null);
+      latest.setLastModifiedAt(now);
+    });
+    return Outcome.DISCONNECTED;
+  }
+
+  // The token endpoint's answer when the grant is revoked or unknown, if that is what failed
+  private static HttpClientErrorException revocation(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof HttpClientErrorException rejection) {
+        boolean revoked = rejection.getStatusCode().value() == 401
+            || (rejection.getStatusCode().value() == 400
+                && rejection.getResponseBodyAsString().contains("invalid_grant"));
+        return revoked ? rejection : null;
+      }
+    }
+    return null;
+  }
+
+  private void recordFailure(GarminUserTokens tokens, Throwable e, LocalDateTime now) {
+    int failures = tokens.getRefreshFailureCount() + 1;
+    long backoffMs = Math.min(backoffMaxMs, backoffBaseMs << Math.min(failures - 1, 20));
+    log.warn("Refresh failed for user {} (attempt {}), retrying in {} s: {}", tokens.getId().getUserId(),
+        failures, backoffMs / 1000, e.getMessage());
+    updateLatest(tokens, latest -> {
+      latest.setRefreshFailureCount(failures);
+      latest.setLastRefreshError(truncate(e.getMessage()));
+      latest.setNextRefreshAttemptAt(now.plus(backoffMs, ChronoUnit.MILLIS));
+    });
+  }
+
+  // Re-read the row so bookkeeping never overwrites a token rotated meanwhile
+  private void updateLatest(GarminUserTokens tokens, Consumer<GarminUserTokens> update) {
+    garminUserTokensRepository.findById(tokens.getId()).ifPresent(latest -> {
+      update.accept(latest);
+      connectedTokenCache.update(garminUserTokensRepository.save(latest));
+    });
+  }
+
+  private static String truncate(String message) {
+    if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+      return message;
+    }
+    return message.substring(0, MAX_ERROR_LENGTH);
+  }
+}
@@ -0,0 +1,74 @@
+package io.fermion.az.health.garmin.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedTtlCacheTest {
+
+  private static final long HOUR = 3_600_000;
+
+  @Test
+  void evictsLeastRecentlyUsedBeyondMaxEntries() {
+    BoundedTtlCache<String, String> cache = new BoundedTtlCache<>("test", 2, Long.MAX_VALUE, 1000, (k, v) -> 1);
+    cache.put("a", "1", HOUR);
+    cache.put("b", "2", HOUR);
+    cache.get("a");
+    cache.put("c", "3", HOUR);
+
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("a")).isEqualTo("1");
+    assertThat(cache.get("c")).isEqualTo("3");
+    assertThat(cache.stats().evictions()).isEqualTo(1);
+  }
+
+  @Test
+  void evictsBeyondMaxWeight() {
+    BoundedTtlCache<String, String> cache = new BoundedTtlCache<>("test", 100, 10, 1000,
+        (k, v) -> v.length());
+    cache.put("a", "12345", HOUR);
+    cache.put("b", "12345", HOUR);
+    cache.put("c", "1", HOUR);
+
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.stats().weight()).isEqualTo(6);
+  }
+
+  @Test
+  void expiresOnTick() throws InterruptedException {
+    BoundedTtlCache<String, String> cache = new BoundedTtlCache<>("test", 100, Long.MAX_VALUE, 1, (k, v) -> 1);
+    cache.put("short", "1", 5);
+    cache.put("long", "2", HOUR);
+    Thread.sleep(20);
+    cache.tick();
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.get("long")).isEqualTo("2");
+    assertThat(cache.stats().expirations()).isEqualTo(1);
+    assertThat(cache.scheduledExpiries()).isEqualTo(1);
+  }
+
+  @Test
+  void evictedAndReplacedEntriesLeaveTheirExpiryBuckets() {
+    BoundedTtlCache<Integer, String> cache = new BoundedTtlCache<>("test", 100, Long.MAX_VALUE, 1000,
+        (k, v) -> 1);
+    for (int i = 0; i < 100_000; i++) {
+      cache.put(i, "v", HOUR + i);
+      cache.put(i % 10, "replaced", HOUR);
+    }
+    cache.invalidate(99_999);
+
+    assertThat(cache.size()).isEqualTo(99);
+    assertThat(cache.scheduledExpiries()).isEqualTo(cache.size());
+  }
+
+  @Test
+  void putIfAbsentKeepsLiveEntry() {
+    BoundedTtlCache<String, String> cache = new BoundedTtlCache<>("test", 10, Long.MAX_VALUE, 1000, (k, v) -> 1);
+
+    assertThat(cache.putIfAbsent("a", "1", HOUR)).isNull();
+    assertThat(cache.putIfAbsent("a", "2", HOUR)).isEqualTo("1");
+    assertThat(cache.get("a")).isEqualTo("1");
+    assertThat(cache.stats().hitRatio()).isEqualTo(2.0 / 3);
+  }
+}
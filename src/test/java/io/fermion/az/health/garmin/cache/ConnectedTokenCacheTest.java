@@ -0,0 +1,115 @@
+package io.fermion.az.health.garmin.cache;
+
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConnectedTokenCacheTest {
+
+  private GarminUserTokensRepository repo;
+  private ConnectedTokenCache cache;
+
+  @BeforeEach
+  void setUp() {
+    repo = mock(GarminUserTokensRepository.class);
+    cache = new ConnectedTokenCache(repo, 100, 60_000, 60_000, 1000, new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void readsThroughOnceAndCachesMissingUsersToo() {
+    GarminUserTokens tokens = tokens("u1", LocalDateTime.now().plusHours(1));
+    when(repo.findConnectedByUserId("u1")).thenReturn(tokens);
+
+    assertThat(cache.get("u1")).isSameAs(tokens);
+    assertThat(cache.get("u1")).isSameAs(tokens);
+    assertThat(cache.get("u2")).isNull();
+    assertThat(cache.get("u2")).isNull();
+
+    verify(repo, times(1)).findConnectedByUserId("u1");
+    verify(repo, times(1)).findConnectedByUserId("u2");
+  }
+
+  @Test
+  void expiredTokenIsNotCached() {
+    when(repo.findConnectedByUserId("u1")).thenReturn(tokens("u1", LocalDateTime.now().minusMinutes(1)));
+
+    cache.get("u1");
+    cache.get("u1");
+
+    verify(repo, times(2)).findConnectedByUserId("u1");
+  }
+
+  @Test
+  void getAllLoadsOnlyMissesInOneQuery() {
+    GarminUserTokens cached = tokens("u1", LocalDateTime.now().plusHours(1));
+    GarminUserTokens loaded = tokens("u2", LocalDateTime.now().plusHours(1));
+    when(repo.findConnectedByUserId("u1")).thenReturn(cached);
+    when(repo.findConnectedByUserIdIn(List.of("u2", "u3"))).thenReturn(List.of(loaded));
+    cache.get("u1");
+
+    assertThat(cache.getAll(List.of("u1", "u2", "u3"))).containsOnlyKeys("u1", "u2");
+    assertThat(cache.getAll(List.of("u1", "u2", "u3"))).containsOnlyKeys("u1", "u2");
+
+    verify(repo, times(1)).findConnectedByUserIdIn(any());
+  }
+
+  @Test
+  void updateInsideATransactionAppliesAfterCommit() {
+    GarminUserTokens old = tokens("u1", LocalDateTime.now().plusHours(1));
+    when(repo.findConnectedByUserId("u1")).thenReturn(old);
+    cache.get("u1");
+    GarminUserTokens refreshed = tokens("u1", LocalDateTime.now().plusHours(2));
+
+    TransactionSynchronizationManager.initSynchronization();
+    cache.update(refreshed);
+    assertThat(cache.get("u1")).isSameAs(old);
+    TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+    assertThat(cache.get("u1")).isSameAs(refreshed);
+  }
+
+  @Test
+  void disconnectedTokenIsDropped() {
+    when(repo.findConnectedByUserId("u1")).thenReturn(tokens("u1", LocalDateTime.now().plusHours(1)));
+    cache.get("u1");
+    GarminUserTokens disconnected = tokens("u1", LocalDateTime.now().plusHours(1));
+    disconnected.setConnectStatus(GarminUserTokens.ConnectStatus.DISCONNECTED);
+    when(repo.findConnectedByUserId("u1")).thenReturn(null);
+
+    cache.update(disconnected);
+
+    assertThat(cache.get("u1")).isNull();
+  }
+
+  private static GarminUserTokens tokens(String userId, LocalDateTime accessTokenExpiry) {
+    GarminUserTokens tokens = new GarminUserTokens();
+    tokens.setId(new GarminUserTokensId(userId, "g-" + userId));
+    tokens.setAccessTokenExpiry(accessTokenExpiry);
+    tokens.setConnectStatus(GarminUserTokens.ConnectStatus.CONNECTED);
+    return tokens;
+  }
+}
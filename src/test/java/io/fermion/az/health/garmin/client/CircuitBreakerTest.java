@@ -0,0 +1,109 @@
+package io.fermion.az.health.garmin.client;
+
+import io.fermion.az.health.garmin.client.CircuitBreaker.State;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+  @Test
+  void opensOnceTheFailureRateIsReachedOverMinimumCalls() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 0.5, Duration.ofMinutes(1), 1);
+
+    call(breaker, true);
+    call(breaker, true);
+    call(breaker, false);
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    call(breaker, false);
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    // Window now holds fail, false, false, fail: 2 of 4
+    call(breaker, true);
+
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    assertThat(breaker.tryAcquire()).isNull();
+    assertThat(breaker.retryAfter()).isPositive();
+    assertThat(breaker.snapshot().rejected()).isEqualTo(1);
+  }
+
+  @Test
+  void oldOutcomesLeaveTheWindow() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 0.75, Duration.ofMinutes(1), 1);
+    call(breaker, true);
+    call(breaker, true);
+    for (int i = 0; i < 4; i++) {
+      call(breaker, false);
+    }
+
+    assertThat(breaker.snapshot().failures()).isZero();
+    assertThat(breaker.snapshot().calls()).isEqualTo(4);
+  }
+
+  @Test
+  void halfOpenTrialsCloseOnSuccessAndReopenOnFailure() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker("test", 2, 2, 0.5, Duration.ofMillis(20), 2);
+    call(breaker, true);
+    call(breaker, true);
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    Thread.sleep(30);
+
+    CircuitBreaker.Permit first = breaker.tryAcquire();
+    CircuitBreaker.Permit second = breaker.tryAcquire();
+    // Only halfOpenCalls trials at a time
+    assertThat(breaker.tryAcquire()).isNull();
+    first.onSuccess();
+    second.onFailure();
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+
+    Thread.sleep(30);
+    call(breaker, false);
+    call(breaker, false);
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    assertThat(breaker.snapshot().calls()).isZero();
+  }
+
+  @Test
+  void ignoredTrialFreesItsSlot() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, 1.0, Duration.ofMillis(20), 1);
+    call(breaker, true);
+    Thread.sleep(30);
+
+    breaker.tryAcquire().onIgnored();
+
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+    assertThat(breaker.tryAcquire()).isNotNull();
+  }
+
+  @Test
+  void callsAdmittedBeforeAStateChangeDoNotCount() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker("test", 2, 2, 0.5, Duration.ofMillis(20), 1);
+    CircuitBreaker.Permit slow = breaker.tryAcquire();
+    call(breaker, true);
+    call(breaker, true);
+    Thread.sleep(30);
+    CircuitBreaker.Permit trial = breaker.tryAcquire();
+
+    // The slow call was not a trial: it neither closes the breaker nor frees the trial slot
+    slow.onSuccess();
+    slow.onIgnored();
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+    assertThat(breaker.tryAcquire()).isNull();
+
+    trial.onSuccess();
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    assertThat(breaker.snapshot().calls()).isZero();
+  }
+
+  private static void call(CircuitBreaker breaker, boolean fail) {
+    CircuitBreaker.Permit permit = breaker.tryAcquire();
+    assertThat(permit).isNotNull();
+    if (fail) {
+      permit.onFailure();
+    } else {
+      permit.onSuccess();
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package io.fermion.az.health.garmin.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fermion.az.health.garmin.codec.DailiesSummaryDecoder;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
+import io.fermion.az.health.garmin.logging.PayloadLogger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withBadRequest;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class GarminApiClientTest {
+
+  private static final String DAILIES_URL = "http://garmin.test/dailies";
+  private static final String TOKEN_URL = "http://garmin.test/token";
+
+  private SimpleMeterRegistry registry;
+  private MockRestServiceServer server;
+  private GarminRateLimiter rateLimiter;
+  private GarminCircuitBreakers breakers;
+  private GarminApiClient client;
+
+  @BeforeEach
+  void setUp() {
+    registry = new SimpleMeterRegistry();
+    RestTemplate restTemplate = new RestTemplate();
+    server = MockRestServiceServer.bindTo(restTemplate).build();
+    rateLimiter = new GarminRateLimiter(1000, 1000, 1000, 1000, 5, 0, 0, registry);
+    breakers = new GarminCircuitBreakers(4, 4, 0.5, 60_000, 1, registry);
+    PayloadLogger payloadLogger = new PayloadLogger(List.of(), 0, 2048, 16, List.of(), "", registry);
+    client = new GarminApiClient(restTemplate, new DailiesSummaryDecoder(new ObjectMapper()), rateLimiter, breakers,
+        payloadLogger, registry);
+    ReflectionTestUtils.setField(client, "retryMaxAttempts", 3);
+    ReflectionTestUtils.setField(client, "retryBaseDelayMs", 1L);
+    ReflectionTestUtils.setField(client, "retryMaxDelayMs", 1L);
+    ReflectionTestUtils.setField(client, "defaultRetryAfterMs", 30_000L);
+    ReflectionTestUtils.setField(client, "dailiesUrl", DAILIES_URL);
+    ReflectionTestUtils.setField(client, "tokenUrl", TOKEN_URL);
+  }
+
+  @Test
+  void dailiesFetchIsRetriedAfterAServerError() {
+    server.expect(requestTo(startsWith(DAILIES_URL))).andRespond(withServerError());
+    server.expect(requestTo(startsWith(DAILIES_URL)))
+        .andRespond(withSuccess("[{\"summaryId\": \"s1\"}]", MediaType.APPLICATION_JSON));
+
+    List<DailiesSummary> dailies = client.fetchDailies("g1", 0, 86_400, "at");
+
+    assertThat(dailies).extracting(DailiesSummary::getSummaryId).containsExactly("s1");
+    server.verify();
+    assertThat(registry.get("garmin.api.retries").tag("endpoint", "dailies").counter().count()).isEqualTo(1);
+    // Timed once as the caller saw it, retries included
+    assertThat(calls("dailies", "success")).isEqualTo(1);
+  }
+
+  @Test
+  void dailiesFetchGivesUpAfterMaxAttempts() {
+    server.expect(ExpectedCount.times(3), requestTo(startsWith(DAILIES_URL))).andRespond(withServerError());
+
+    assertThatThrownBy(() -> client.fetchDailies("g1", 0, 86_400, "at"))
+        .isInstanceOf(HttpServerErrorException.class);
+    server.verify();
+  }
+
+  @Test
+  void tokenRequestIsNotRetried() {
+    server.expect(ExpectedCount.once(), requestTo(TOKEN_URL)).andExpect(method(HttpMethod.POST))
+        .andRespond(withServerError());
+
+    assertThatThrownBy(() -> client.requestToken(new HttpEntity<>("grant_type=refresh_token")))
+        .isInstanceOf(HttpServerErrorException.class);
+    server.verify();
+  }
+
+  @Test
+  void openBreakerFailsFastWithoutCallingGarmin() {
+    server.expect(ExpectedCount.times(4), requestTo(TOKEN_URL)).andRespond(withServerError());
+    for (int i = 0; i < 4; i++) {
+      assertThatThrownBy(() -> client.requestToken(new HttpEntity<>("x")))
+          .isInstanceOf(HttpServerErrorException.class);
+    }
+
+    assertThatThrownBy(() -> client.requestToken(new HttpEntity<>("x")))
+        .isInstanceOf(GarminUnavailableException.class)
+        .satisfies(e -> assertThat(((GarminUnavailableException) e).getRetryAfter()).isPositive());
+    server.verify();
+    assertThat(calls("token", "server_error")).isEqualTo(4);
+    assertThat(calls("token", "unavailable")).isEqualTo(1);
+    // Other endpoints have their own breaker
+    assertThat(breakers.get(GarminEndpoint.DAILIES).state()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void clientErrorsAreNotRetriedAndKeepTheBreakerClosed() {
+    server.expect(ExpectedCount.times(4), requestTo(startsWith(DAILIES_URL))).andRespond(withBadRequest());
+
+    for (int i = 0; i < 4; i++) {
+      assertThatThrownBy(() -> client.fetchDailies("g1", 0, 86_400, "at"))
+          .isInstanceOf(HttpClientErrorException.BadRequest.class);
+    }
+
+    server.verify();
+    assertThat(breakers.get(GarminEndpoint.DAILIES).state()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void connectionPoolTimeoutsAreNotRetriedAndKeepTheBreakerClosed() {
+    server.expect(ExpectedCount.times(4), requestTo(startsWith(DAILIES_URL))).andRespond(request -> {
+      throw new ConnectionRequestTimeoutException("Timeout deadline: 500 MILLISECONDS");
+    });
+
+    for (int i = 0; i < 4; i++) {
+      assertThatThrownBy(() -> client.fetchDailies("g1", 0, 86_400, "at"))
+          .isInstanceOf(ResourceAccessException.class)
+          .hasCauseInstanceOf(ConnectionRequestTimeoutException.class);
+    }
+
+    server.verify();
+    assertThat(breakers.get(GarminEndpoint.DAILIES).state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(registry.get("garmin.api.retries").tag("endpoint", "dailies").counter().count()).isZero();
+    assertThat(calls("dailies", "pool_exhausted")).isEqualTo(4);
+  }
+
+  @Test
+  void tooManyRequestsSlowsTheRateLimiterDown() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, "7");
+    server.expect(requestTo(startsWith(DAILIES_URL)))
+        .andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(headers));
+
+    assertThatThrownBy(() -> client.fetchDailies("g1", 0, 86_400, "at"))
+        .isInstanceOf(GarminRateLimitException.class)
+        .satisfies(e -> assertThat(((GarminRateLimitException) e).getRetryAfter()).isEqualTo(Duration.ofSeconds(7)));
+    assertThat(rateLimiter.currentRate()).isEqualTo(500);
+    assertThat(calls("dailies", "rate_limited")).isEqualTo(1);
+  }
+
+  private long calls(String endpoint, String outcome) {
+    return registry.get("garmin.api.calls").tag("endpoint", endpoint).tag("outcome", outcome).timer().count();
+  }
+}
@@ -0,0 +1,74 @@
+package io.fermion.az.health.garmin.client;
+
+import io.fermion.az.health.garmin.exception.GarminRateLimitException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GarminRateLimiterTest {
+
+  // Slow refill so nothing comes back within a test
+  private static GarminRateLimiter limiter(double globalBurst, double userBurst, double reserve) {
+    return new GarminRateLimiter(0.001, globalBurst, 0.001, userBurst, reserve, 0, 0, new SimpleMeterRegistry());
+  }
+
+  @Test
+  void rejectsGlobalBurstThatCannotCoverTheBackgroundReserve() {
+    assertThatThrownBy(() -> limiter(5, 5, 5))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("global-burst");
+    assertThatCode(() -> limiter(6, 5, 5)).doesNotThrowAnyException();
+  }
+
+  @Test
+  void rejectsUserBurstBelowOne() {
+    assertThatThrownBy(() -> limiter(20, 0.5, 5)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void backgroundCallsLeaveTheReserveToInteractiveOnes() {
+    GarminRateLimiter limiter = limiter(7, 100, 5);
+
+    limiter.acquire(null, RequestPriority.BACKGROUND);
+    limiter.acquire(null, RequestPriority.BACKGROUND);
+    assertThatThrownBy(() -> limiter.acquire(null, RequestPriority.BACKGROUND))
+        .isInstanceOf(GarminRateLimitException.class);
+
+    for (int i = 0; i < 5; i++) {
+      limiter.acquire(null, RequestPriority.INTERACTIVE);
+    }
+    assertThatThrownBy(() -> limiter.acquire(null, RequestPriority.INTERACTIVE))
+        .isInstanceOf(GarminRateLimitException.class);
+  }
+
+  @Test
+  void userBucketLimitsOneUserOnly() {
+    GarminRateLimiter limiter = limiter(100, 2, 5);
+
+    limiter.acquire("g1", RequestPriority.INTERACTIVE);
+    limiter.acquire("g1", RequestPriority.INTERACTIVE);
+    assertThatThrownBy(() -> limiter.acquire("g1", RequestPriority.INTERACTIVE))
+        .isInstanceOf(GarminRateLimitException.class)
+        .satisfies(e -> assertThat(((GarminRateLimitException) e).getRetryAfter()).isPositive());
+    assertThatCode(() -> limiter.acquire("g2", RequestPriority.INTERACTIVE)).doesNotThrowAnyException();
+  }
+
+  @Test
+  void throttlingHalvesTheRateAndSuccessRestoresIt() {
+    GarminRateLimiter limiter = new GarminRateLimiter(10, 20, 1, 5, 5, 0, 0, new SimpleMeterRegistry());
+
+    limiter.onThrottled(null, Duration.ZERO);
+    assertThat(limiter.currentRate()).isEqualTo(5);
+
+    for (int i = 0; i < 1000; i++) {
+      limiter.onSuccess();
+    }
+    assertThat(limiter.currentRate()).isEqualTo(10);
+  }
+}
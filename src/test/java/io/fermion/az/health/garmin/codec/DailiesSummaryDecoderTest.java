@@ -0,0 +1,84 @@
+package io.fermion.az.health.garmin.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DailiesSummaryDecoderTest {
+
+  private final DailiesSummaryDecoder decoder = new DailiesSummaryDecoder(new ObjectMapper());
+
+  @Test
+  void decodesABareArray() throws IOException {
+    List<DailiesSummary> summaries = decode("""
+        [{"userId": "g1", "summaryId": "s1", "steps": 10}, {"userId": "g1", "summaryId": "s2", "steps": 20}]""");
+
+    assertThat(summaries).extracting(DailiesSummary::getSummaryId).containsExactly("s1", "s2");
+    assertThat(summaries).extracting(DailiesSummary::getSteps).containsExactly(10, 20);
+  }
+
+  @Test
+  void decodesAPushNotificationAndSkipsItsOtherFields() throws IOException {
+    List<DailiesSummary> summaries = decode("""
+        {"version": {"major": 1}, "dailies": [{"summaryId": "s1"}], "epochs": [{"summaryId": "e1"}]}""");
+
+    assertThat(summaries).extracting(DailiesSummary::getSummaryId).containsExactly("s1");
+  }
+
+  @Test
+  void decodesASingleSummaryWhateverItsFieldOrder() throws IOException {
+    List<DailiesSummary> summaries = decode("""
+        {"steps": 42, "unknown": {"nested": [1, 2]}, "summaryId": "s1"}""");
+
+    assertThat(summaries).singleElement().satisfies(summary -> {
+      assertThat(summary.getSummaryId()).isEqualTo("s1");
+      assertThat(summary.getSteps()).isEqualTo(42);
+    });
+  }
+
+  @Test
+  void keepsHeartRateSamplesAsCompactJson() throws IOException {
+    DailiesSummary summary = decode("""
+        [{"summaryId": "s1", "timeOffsetHeartRateSamples": { "0": 60, "15": 61 }}]""").get(0);
+
+    assertThat(summary.getTimeOffsetHeartRateSamples()).isEqualTo("{\"0\":60,\"15\":61}");
+  }
+
+  @Test
+  void emptyBodyHasNoSummaries() throws IOException {
+    assertThat(decode("")).isEmpty();
+    assertThat(decode("[]")).isEmpty();
+  }
+
+  @Test
+  void rejectsDocumentsThatAreNotDailies() {
+    assertThatThrownBy(() -> decode("42")).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> decode("[1, 2]")).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> decode("[{\"summaryId\": \"s1\"}")).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void streamAndByteArrayAgree() throws IOException {
+    String json = "{\"dailies\": [{\"summaryId\": \"s1\"}, {\"summaryId\": \"s2\"}]}";
+
+    List<DailiesSummary> fromStream = decoder.decodeAll(
+        new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+    assertThat(fromStream).extracting(DailiesSummary::getSummaryId)
+        .containsExactlyElementsOf(decode(json).stream().map(DailiesSummary::getSummaryId).toList());
+  }
+
+  private List<DailiesSummary> decode(String json) throws IOException {
+    return decoder.decodeAll(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
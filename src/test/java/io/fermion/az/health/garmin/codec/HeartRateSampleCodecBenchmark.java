@@ -0,0 +1,107 @@
+package io.fermion.az.health.garmin.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size and decode time of a day of heart-rate samples as Garmin's JSON and as
+ * {@link HeartRateSampleCodec} binary; the figures in the README come from
+ * here. Not part of the test suite (surefire only picks up {@code *Test}); run
+ * it with
+ *
+ * <pre>
+ * mvn -B test -Dtest=HeartRateSampleCodecBenchmark
+ * </pre>
+ *
+ * The JSON decode is Jackson into a {@code Map}, the way the column was read
+ * before the codec. The binary decodes are {@code forEach} scans of the whole
+ * day and of 14:00–16:00.
+ */
+class HeartRateSampleCodecBenchmark {
+
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int ROUNDS = 5;
+  private static final int ITERATIONS = 2000;
+  private static final int WINDOW_FROM = 14 * 3600;
+  private static final int WINDOW_TO = 16 * 3600;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private long sink;
+
+  @Test
+  void compareWithJson() throws Exception {
+    String json = syntheticDay();
+    byte[] binary = HeartRateSampleCodec.fromJson(json);
+    System.out.printf("%d samples: json %.1f KB, binary %.1f KB%n", HeartRateSampleCodec.sampleCount(binary),
+        json.length() / 1000.0, binary.length / 1000.0);
+
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      time(json, binary);
+    }
+    long[] total = new long[3];
+    for (int round = 0; round < ROUNDS; round++) {
+      long[] nanos = time(json, binary);
+      for (int i = 0; i < total.length; i++) {
+        total[i] += nanos[i];
+      }
+    }
+    System.out.printf("json parse %.1f us, binary whole day %.1f us, binary 14:00-16:00 %.1f us (sink %d)%n",
+        micros(total[0]), micros(total[1]), micros(total[2]), sink);
+  }
+
+  // Average nanos per decode for JSON, binary whole day and binary window
+  private long[] time(String json, byte[] binary) throws Exception {
+    long[] nanos = new long[3];
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      for (Map.Entry<String, Integer> sample : objectMapper.readValue(json, new TypeReference<Map<String, Integer>>() {
+      }).entrySet()) {
+        sink += Integer.parseInt(sample.getKey()) + sample.getValue();
+      }
+    }
+    nanos[0] = (System.nanoTime() - start) / ITERATIONS;
+
+    long[] sum = new long[1];
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      HeartRateSampleCodec.forEach(binary, (offset, bpm) -> sum[0] += offset + bpm);
+    }
+    nanos[1] = (System.nanoTime() - start) / ITERATIONS;
+
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      HeartRateSampleCodec.forEach(binary, WINDOW_FROM, WINDOW_TO, (offset, bpm) -> sum[0] += offset + bpm);
+    }
+    nanos[2] = (System.nanoTime() - start) / ITERATIONS;
+    sink += sum[0];
+    return nanos;
+  }
+
+  private double micros(long totalNanos) {
+    return totalNanos / (double) ROUNDS / TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  // 15-second samples with 3% gaps and a slow random walk between 40 and 190 bpm
+  static String syntheticDay() {
+    Random random = new Random(1);
+    StringBuilder json = new StringBuilder("{");
+    int bpm = 60;
+    for (int offset = 0; offset < 86_400; offset += 15) {
+      if (random.nextInt(100) < 3) {
+        continue;
+      }
+      bpm = Math.max(40, Math.min(190, bpm + random.nextInt(7) - 3));
+      if (json.length() > 1) {
+        json.append(',');
+      }
+      json.append('"').append(offset).append("\":").append(bpm);
+    }
+    return json.append('}').toString();
+  }
+}
@@ -0,0 +1,60 @@
+package io.fermion.az.health.garmin.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HeartRateSampleCodecTest {
+
+  @Test
+  void roundTripsADay() {
+    String json = HeartRateSampleCodecBenchmark.syntheticDay();
+
+    byte[] encoded = HeartRateSampleCodec.fromJson(json);
+
+    assertThat(HeartRateSampleCodec.toJson(encoded)).isEqualTo(json);
+    assertThat(encoded.length).isLessThan(json.length() / 4);
+  }
+
+  @Test
+  void windowReturnsExactlyTheSamplesInside() {
+    byte[] encoded = HeartRateSampleCodec.fromJson(HeartRateSampleCodecBenchmark.syntheticDay());
+    List<Integer> all = new ArrayList<>();
+    HeartRateSampleCodec.forEach(encoded, (offset, bpm) -> all.add(offset));
+    // Bounds that fall mid-block and on a sample
+    int from = 14 * 3600 + 7;
+    int to = 16 * 3600;
+
+    List<Integer> window = new ArrayList<>();
+    HeartRateSampleCodec.forEach(encoded, from, to, (offset, bpm) -> window.add(offset));
+
+    assertThat(window).isEqualTo(all.stream().filter(offset -> offset >= from && offset < to).toList());
+  }
+
+  @Test
+  void sortsUnorderedInput() {
+    byte[] encoded = HeartRateSampleCodec.fromJson("{\"30\":70,\"0\":60,\"15\":65}");
+
+    assertThat(HeartRateSampleCodec.sampleCount(encoded)).isEqualTo(3);
+    assertThat(HeartRateSampleCodec.toJson(encoded)).isEqualTo("{\"0\":60,\"15\":65,\"30\":70}");
+  }
+
+  @Test
+  void emptyObjectAndNull() {
+    assertThat(HeartRateSampleCodec.toJson(HeartRateSampleCodec.fromJson("{}"))).isEqualTo("{}");
+    assertThat(HeartRateSampleCodec.fromJson(null)).isNull();
+    assertThat(HeartRateSampleCodec.toJson(null)).isNull();
+  }
+
+  @Test
+  void rejectsNonIntegerSamples() {
+    assertThatThrownBy(() -> HeartRateSampleCodec.fromJson("{\"0\":\"sixty\"}"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> HeartRateSampleCodec.forEach(new byte[] { 9 }, (offset, bpm) -> {
+    })).isInstanceOf(IllegalArgumentException.class);
+  }
+}
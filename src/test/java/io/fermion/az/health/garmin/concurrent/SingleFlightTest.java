@@ -0,0 +1,91 @@
+package io.fermion.az.health.garmin.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+  private final SingleFlight<String, Integer> flights = new SingleFlight<>();
+
+  @Test
+  void concurrentCallersShareOneExecution() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    AtomicInteger runs = new AtomicInteger();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Future<Integer> leader = executor.submit(() -> flights.execute("k", () -> {
+        started.countDown();
+        await(finish);
+        return runs.incrementAndGet();
+      }));
+      started.await(5, TimeUnit.SECONDS);
+      List<Future<Integer>> followers = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        followers.add(executor.submit(() -> flights.execute("k", runs::incrementAndGet)));
+      }
+      while (flights.shared() < 5) {
+        Thread.sleep(5);
+      }
+      finish.countDown();
+
+      assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+      for (Future<Integer> follower : followers) {
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+      }
+    }
+    assertThat(runs).hasValue(1);
+    assertThat(flights.executions()).isEqualTo(1);
+    assertThat(flights.inFlight()).isZero();
+  }
+
+  @Test
+  void failureIsSharedAndNotCached() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      executor.submit(() -> flights.execute("k", () -> {
+        started.countDown();
+        await(finish);
+        throw new IllegalStateException("upstream down");
+      }));
+      started.await(5, TimeUnit.SECONDS);
+      Future<Integer> follower = executor.submit(() -> flights.execute("k", () -> 2));
+      while (flights.shared() < 1) {
+        Thread.sleep(5);
+      }
+      finish.countDown();
+
+      assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class)
+          .hasRootCauseMessage("upstream down");
+    }
+
+    assertThat(flights.execute("k", () -> 3)).isEqualTo(3);
+  }
+
+  @Test
+  void differentKeysRunIndependently() {
+    assertThat(flights.execute("a", () -> 1)).isEqualTo(1);
+    assertThat(flights.execute("b", () -> 2)).isEqualTo(2);
+    assertThat(flights.executions()).isEqualTo(2);
+    assertThat(flights.shared()).isZero();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package io.fermion.az.health.garmin.config;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AppConfigTest {
+
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private HttpServer server;
+  private CloseableHttpClient client;
+  private String baseUrl;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/fast", exchange -> {
+      clientPorts.add(exchange.getRemoteAddress().getPort());
+      byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.createContext("/slow", exchange -> {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(204, -1);
+      exchange.close();
+    });
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    release.countDown();
+    if (client != null) {
+      client.close();
+    }
+    server.stop(0);
+  }
+
+  // One pooled connection, so a second concurrent call has to wait for it
+  private RestTemplate restTemplate(long responseTimeoutMs) {
+    AppConfig config = new AppConfig();
+    ReflectionTestUtils.setField(config, "maxConnections", 1);
+    ReflectionTestUtils.setField(config, "maxConnectionsPerRoute", 1);
+    ReflectionTestUtils.setField(config, "connectTimeoutMs", 1000L);
+    ReflectionTestUtils.setField(config, "responseTimeoutMs", responseTimeoutMs);
+    ReflectionTestUtils.setField(config, "poolAcquireTimeoutMs", 200L);
+    ReflectionTestUtils.setField(config, "idleEvictionMs", 30_000L);
+    ReflectionTestUtils.setField(config, "connectionTtlMs", 300_000L);
+    client = config.garminHttpClient(config.garminConnectionManager());
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(client));
+  }
+
+  @Test
+  void reusesPooledConnections() {
+    RestTemplate restTemplate = restTemplate(1000);
+    for (int i = 0; i < 3; i++) {
+      assertThat(restTemplate.getForObject(baseUrl + "/fast", String.class)).isEqualTo("ok");
+    }
+
+    assertThat(clientPorts).hasSize(1);
+  }
+
+  @Test
+  void slowResponseTimesOut() {
+    RestTemplate restTemplate = restTemplate(300);
+    assertThatThrownBy(() -> restTemplate.getForObject(baseUrl + "/slow", String.class))
+        .isInstanceOf(ResourceAccessException.class)
+        .hasMessageContaining("timed out");
+  }
+
+  @Test
+  void waitForAPooledConnectionIsBounded() throws Exception {
+    RestTemplate restTemplate = restTemplate(10_000);
+    CompletableFuture<Void> holder = CompletableFuture.runAsync(
+        () -> restTemplate.getForObject(baseUrl + "/slow", Void.class));
+    Thread.sleep(200);
+
+    long start = System.nanoTime();
+    assertThatThrownBy(() -> restTemplate.getForObject(baseUrl + "/fast", String.class))
+        .isInstanceOf(ResourceAccessException.class);
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+
+    release.countDown();
+    holder.get(5, TimeUnit.SECONDS);
+  }
+}
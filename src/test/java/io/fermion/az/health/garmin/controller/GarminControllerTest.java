@@ -0,0 +1,135 @@
+package io.fermion.az.health.garmin.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.logging.PayloadLogger;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo.SummaryVersion;
+import io.fermion.az.health.garmin.service.BackfillService;
+import io.fermion.az.health.garmin.service.DailiesBulkReadService;
+import io.fermion.az.health.garmin.service.DailiesIngestService;
+import io.fermion.az.health.garmin.service.DailiesRangeService;
+import io.fermion.az.health.garmin.service.DailiesReadService;
+import io.fermion.az.health.garmin.service.DailiesReadService.ReadResult;
+import io.fermion.az.health.garmin.service.DailiesReadService.Source;
+import io.fermion.az.health.garmin.service.GarminService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class GarminControllerTest {
+
+  private static final LocalDate DAY = LocalDate.of(2024, 3, 4);
+  private static final LocalDateTime WRITTEN = LocalDateTime.of(2024, 3, 5, 8, 30, 15, 123_456_000);
+
+  private DailiesReadService readService;
+  private MockMvc mvc;
+
+  @BeforeEach
+  void setUp() {
+    readService = mock(DailiesReadService.class);
+    GarminController controller = new GarminController(mock(GarminService.class), mock(DailiesIngestService.class),
+        mock(BackfillService.class), readService, mock(DailiesRangeService.class),
+        mock(DailiesBulkReadService.class), new ObjectMapper(), mock(PayloadLogger.class));
+    mvc = MockMvcBuilders.standaloneSetup(controller).build();
+  }
+
+  @Test
+  void storedSummaryCarriesValidatorsAndAMatchingPollGets304() throws Exception {
+    when(readService.read("u1", DAY)).thenReturn(new ReadResult(List.of(summary()), Source.LOCAL, WRITTEN));
+    when(readService.localVersion("u1", DAY)).thenReturn(Optional.of(version(WRITTEN)));
+
+    MvcResult first = mvc.perform(get("/api/garmin/data/date").param("userId", "u1").param("date", DAY.toString()))
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+        .andExpect(jsonPath("$.source").value("local"))
+        .andReturn();
+    String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+
+    mvc.perform(get("/api/garmin/data/date").param("userId", "u1").param("date", DAY.toString())
+        .header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, etag))
+        .andExpect(content().string(""));
+    verify(readService).read("u1", DAY);
+  }
+
+  @Test
+  void changedSummaryIsSentInFull() throws Exception {
+    when(readService.read("u1", DAY)).thenReturn(new ReadResult(List.of(summary()), Source.LOCAL, WRITTEN));
+    when(readService.localVersion("u1", DAY)).thenReturn(Optional.of(version(WRITTEN)));
+    String etag = mvc.perform(get("/api/garmin/data/date").param("userId", "u1").param("date", DAY.toString()))
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    LocalDateTime rewritten = WRITTEN.plusNanos(1_000);
+    when(readService.read("u1", DAY)).thenReturn(new ReadResult(List.of(summary()), Source.LOCAL, rewritten));
+    when(readService.localVersion("u1", DAY)).thenReturn(Optional.of(version(rewritten)));
+
+    mvc.perform(get("/api/garmin/data/date").param("userId", "u1").param("date", DAY.toString())
+        .header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.summaries[0].activity.steps").value(8000));
+  }
+
+  @Test
+  void dataFetchedFromGarminHasNoValidators() throws Exception {
+    when(readService.read("u1", DAY)).thenReturn(new ReadResult(List.of(summary()), Source.GARMIN, null));
+
+    mvc.perform(get("/api/garmin/data/date").param("userId", "u1").param("date", DAY.toString()))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+        .andExpect(jsonPath("$.source").value("garmin"));
+  }
+
+  @Test
+  void requestWithoutValidatorsSkipsTheVersionLookup() throws Exception {
+    when(readService.read("u1", DAY)).thenReturn(new ReadResult(List.of(summary()), Source.LOCAL, WRITTEN));
+
+    mvc.perform(get("/api/garmin/data/date").param("userId", "u1").param("date", DAY.toString()))
+        .andExpect(status().isOk());
+
+    verify(readService, never()).localVersion(any(), any());
+  }
+
+  private static DailiesSummary summary() {
+    DailiesSummary summary = new DailiesSummary();
+    summary.setSummaryId("s1");
+    summary.setCalendarDate(DAY.toString());
+    summary.setSteps(8000);
+    return summary;
+  }
+
+  private static SummaryVersion version(LocalDateTime lastModifiedAt) {
+    return new SummaryVersion() {
+      @Override
+      public String getSummaryId() {
+        return "s1";
+      }
+
+      @Override
+      public LocalDateTime getLastModifiedAt() {
+        return lastModifiedAt;
+      }
+    };
+  }
+}
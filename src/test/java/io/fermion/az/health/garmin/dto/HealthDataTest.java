@@ -0,0 +1,76 @@
+package io.fermion.az.health.garmin.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fermion.az.health.garmin.dto.HealthData.Section;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HealthDataTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void parsesFieldsCaseInsensitively() {
+    assertThat(Section.parse(null)).isEqualTo(Section.DEFAULT).doesNotContain(Section.RAW);
+    assertThat(Section.parse(" ")).isEqualTo(Section.DEFAULT);
+    assertThat(Section.parse("heartrate, RAW")).containsExactlyInAnyOrder(Section.HEART_RATE, Section.RAW);
+    assertThatThrownBy(() -> Section.parse("activity,sleep"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("'sleep'");
+  }
+
+  @Test
+  void defaultSectionsSerializeWithoutMissingOnes() {
+    DailiesSummary summary = summary();
+
+    JsonNode json = objectMapper.valueToTree(HealthData.of(summary, Section.DEFAULT));
+
+    assertThat(json.get("date").asText()).isEqualTo("2024-03-04");
+    assertThat(json.get("activity").get("steps").asInt()).isEqualTo(8000);
+    assertThat(json.get("calories").get("total").asInt()).isEqualTo(2100);
+    assertThat(json.get("goals").get("steps").asInt()).isEqualTo(10000);
+    // The summary has no stress or body battery data
+    assertThat(json.has("stress")).isFalse();
+    assertThat(json.has("bodyBattery")).isFalse();
+  }
+
+  @Test
+  void onlyRequestedSectionsAreBuilt() {
+    DailiesSummary summary = summary();
+    summary.setAverageStressLevel(30);
+    summary.setMaxStressLevel(80);
+
+    HealthData data = HealthData.of(summary, EnumSet.of(Section.STRESS));
+
+    assertThat(data.stress()).isEqualTo(new HealthData.Stress(30, 80, null));
+    assertThat(data.activity()).isNull();
+    assertThat(data.calories()).isNull();
+    assertThat(data.heartRate()).isNull();
+    assertThat(data.goals()).isNull();
+  }
+
+  @Test
+  void totalCaloriesNeedBothParts() {
+    DailiesSummary summary = summary();
+    summary.setBmrKilocalories(null);
+
+    assertThat(HealthData.of(summary, Section.DEFAULT).calories()).isEqualTo(new HealthData.Calories(600, null, null));
+  }
+
+  private static DailiesSummary summary() {
+    DailiesSummary summary = new DailiesSummary();
+    summary.setCalendarDate("2024-03-04");
+    summary.setSteps(8000);
+    summary.setActiveKilocalories(600);
+    summary.setBmrKilocalories(1500);
+    summary.setStepsGoal(10000);
+    return summary;
+  }
+}
@@ -0,0 +1,146 @@
+package io.fermion.az.health.garmin.filter;
+
+import io.fermion.az.health.garmin.exception.PayloadTooLargeException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestDecompressionFilterTest {
+
+  private static final String PATH = "/api/garmin/webhook/dailies";
+
+  private MeterRegistry registry;
+  private RequestDecompressionFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    registry = new SimpleMeterRegistry();
+    filter = new RequestDecompressionFilter(List.of("/api/garmin/webhook/"), 64, registry);
+  }
+
+  @Test
+  void inflatesGzipBodyAndHidesEncodingHeaders() throws Exception {
+    AtomicReference<String> body = new AtomicReference<>();
+    AtomicReference<String> encoding = new AtomicReference<>();
+    filter.doFilter(gzipRequest("[{\"userId\":\"g1\"}]"), new MockHttpServletResponse(), (req, res) -> {
+      HttpServletRequest request = (HttpServletRequest) req;
+      encoding.set(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+      body.set(new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+    });
+
+    assertThat(body.get()).isEqualTo("[{\"userId\":\"g1\"}]");
+    assertThat(encoding.get()).isNull();
+    assertThat(registry.get("garmin.request.decompression.bytes").tag("side", "inflated").summary().totalAmount())
+        .isEqualTo(17);
+  }
+
+  @Test
+  void failsOnceInflatedBodyPassesLimit() throws Exception {
+    AtomicReference<Exception> thrown = new AtomicReference<>();
+    filter.doFilter(gzipRequest("x".repeat(1000)), new MockHttpServletResponse(), (req, res) -> {
+      try {
+        req.getInputStream().readAllBytes();
+      } catch (IOException e) {
+        thrown.set(e);
+      }
+    });
+
+    assertThat(thrown.get()).isInstanceOf(PayloadTooLargeException.class);
+    assertThat(rejected("too_large")).isEqualTo(1);
+  }
+
+  @Test
+  void countsBodyThatIsNotGzipAsMalformed() throws Exception {
+    MockHttpServletRequest request = request("not gzip".getBytes(StandardCharsets.UTF_8), "gzip");
+    AtomicReference<Exception> thrown = new AtomicReference<>();
+    filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+      try {
+        req.getInputStream().read();
+      } catch (IOException e) {
+        thrown.set(e);
+      }
+    });
+
+    assertThat(thrown.get()).isInstanceOf(IOException.class);
+    assertThat(rejected("malformed")).isEqualTo(1);
+  }
+
+  @Test
+  void bodyOpenedButNeverReadIsNotAnError() throws Exception {
+    filter.doFilter(gzipRequest("[]"), new MockHttpServletResponse(), (req, res) -> req.getInputStream());
+
+    assertThat(rejected("malformed")).isZero();
+    assertThat(rejected("too_large")).isZero();
+  }
+
+  @Test
+  void refusesOtherContentCodings() throws Exception {
+    MockHttpServletRequest request = request(new byte[0], "br");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    FilterChain chain = (req, res) -> {
+      throw new AssertionError("chain must not run");
+    };
+    filter.doFilter(request, response, chain);
+
+    assertThat(response.getStatus()).isEqualTo(415);
+  }
+
+  @Test
+  void nonBlockingReadsAreRefused() throws Exception {
+    filter.doFilter(gzipRequest("[]"), new MockHttpServletResponse(), (req, res) -> {
+      ServletInputStream in = req.getInputStream();
+      assertThatThrownBy(() -> in.setReadListener(new ReadListener() {
+        @Override
+        public void onDataAvailable() {
+        }
+
+        @Override
+        public void onAllDataRead() {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+      })).isInstanceOf(IllegalStateException.class);
+    });
+  }
+
+  private double rejected(String reason) {
+    return registry.get("garmin.request.decompression.rejected").tag("reason", reason).counter().count();
+  }
+
+  private static MockHttpServletRequest gzipRequest(String body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    return request(out.toByteArray(), "gzip");
+  }
+
+  private static MockHttpServletRequest request(byte[] content, String encoding) {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", PATH);
+    request.addHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+    request.setContent(content);
+    return request;
+  }
+}
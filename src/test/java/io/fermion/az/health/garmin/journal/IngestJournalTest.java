@@ -0,0 +1,112 @@
+package io.fermion.az.health.garmin.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IngestJournalTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void committedPayloadsAreNotReplayed() throws Exception {
+    IngestJournal journal = open();
+    journal.append(bytes("a")).commit();
+    journal.append(bytes("b")).commit();
+    journal.close();
+
+    assertThat(segments()).isEmpty();
+    assertThat(replay(open())).isEmpty();
+  }
+
+  @Test
+  void segmentWithAnUncommittedPayloadIsReplayedUntilCommitted() throws Exception {
+    IngestJournal journal = open();
+    journal.append(bytes("a")).commit();
+    journal.append(bytes("b"));
+    journal.close();
+
+    IngestJournal reopened = open();
+    List<IngestJournal.Ticket> tickets = new ArrayList<>();
+    List<String> replayed = new ArrayList<>();
+    reopened.replay((payload, ticket) -> {
+      replayed.add(new String(payload, StandardCharsets.UTF_8));
+      tickets.add(ticket);
+    });
+    // Commits are tracked per segment, so the committed payload comes back too
+    assertThat(replayed).containsExactly("a", "b");
+    assertThat(segments()).hasSize(2);
+
+    tickets.forEach(IngestJournal.Ticket::commit);
+    reopened.close();
+    assertThat(segments()).isEmpty();
+  }
+
+  @Test
+  void replayStopsAtACorruptRecord() throws Exception {
+    IngestJournal journal = open();
+    journal.append(bytes("first"));
+    journal.append(bytes("second"));
+    journal.close();
+
+    Path segment = segments().get(0);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      // Second record's payload starts after the first record and its own header
+      channel.write(ByteBuffer.wrap(bytes("X")), 8 + 5 + 8);
+    }
+
+    assertThat(replay(open())).containsExactly("first");
+  }
+
+  @Test
+  void payloadLargerThanASegmentGetsASegmentOfItsOwn() throws Exception {
+    IngestJournal journal = open();
+    String large = "x".repeat(10_000);
+    journal.append(bytes(large));
+    journal.close();
+
+    assertThat(replay(open())).containsExactly(large);
+  }
+
+  private IngestJournal open() throws IOException {
+    IngestJournal journal = new IngestJournal();
+    ReflectionTestUtils.setField(journal, "enabled", true);
+    ReflectionTestUtils.setField(journal, "directory", dir.toString());
+    ReflectionTestUtils.setField(journal, "segmentBytes", 4096);
+    ReflectionTestUtils.setField(journal, "groupCommitWindowMs", 0L);
+    ReflectionTestUtils.setField(journal, "appendTimeoutMs", 5000L);
+    journal.open();
+    return journal;
+  }
+
+  private static List<String> replay(IngestJournal journal) throws InterruptedException {
+    List<String> replayed = new ArrayList<>();
+    journal.replay((payload, ticket) -> replayed.add(new String(payload, StandardCharsets.UTF_8)));
+    journal.close();
+    return replayed;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.sorted().toList();
+    }
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
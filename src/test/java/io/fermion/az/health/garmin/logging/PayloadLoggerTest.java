@@ -0,0 +1,72 @@
+package io.fermion.az.health.garmin.logging;
+
+import io.fermion.az.health.garmin.logging.PayloadLogger.Capture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PayloadLoggerTest {
+
+  private static final List<String> KEYS = List.of("access_token", "refresh_token", "code", "state");
+
+  private final PayloadLogger logger = new PayloadLogger(List.of("webhook.dailies:1", "garmin.dailies:0"), 0,
+      40, 4, KEYS, "", new SimpleMeterRegistry());
+
+  @Test
+  void redactsJsonValues() {
+    assertThat(logger.redact("{\"access_token\": \"abc\\\"def\", \"steps\": 10}"))
+        .isEqualTo("{\"access_token\": [REDACTED], \"steps\": 10}");
+  }
+
+  @Test
+  void redactsJsonValueCutOffByTruncation() {
+    String payload = "{\"userId\":\"g1\",\"refresh_token\":\"0123456789abcdef0123456789\"}";
+    String cut = new String(Arrays.copyOf(payload.getBytes(StandardCharsets.UTF_8), 40), StandardCharsets.UTF_8);
+
+    assertThat(cut).contains("\"refresh_token\":\"012");
+    assertThat(logger.redact(cut)).isEqualTo("{\"userId\":\"g1\",\"refresh_token\":[REDACTED]");
+  }
+
+  @Test
+  void redactsValueCutAfterEscape() {
+    assertThat(logger.redact("{\"access_token\":\"ab\\")).isEqualTo("{\"access_token\":[REDACTED]");
+  }
+
+  @Test
+  void redactsQueryStringsAndBearerTokens() {
+    assertThat(logger.redact("code=abc&state=xyz&userId=u1")).isEqualTo("code=[REDACTED]&state=[REDACTED]&userId=u1");
+    assertThat(logger.redact("Authorization: Bearer eyJhbGci.x-y_z")).isEqualTo("Authorization: Bearer [REDACTED]");
+  }
+
+  @Test
+  void leavesOtherKeysAlone() {
+    assertThat(logger.redact("{\"barcode\":\"1\",\"zipcode\":\"2\"}")).isEqualTo("{\"barcode\":\"1\",\"zipcode\":\"2\"}");
+  }
+
+  @Test
+  void capturesAtSampleRateAndDebugUserInFull() {
+    assertThat(logger.capture("webhook.dailies", "u1")).isEqualTo(Capture.SAMPLE);
+    assertThat(logger.capture("garmin.dailies", "u1")).isEqualTo(Capture.NONE);
+    assertThat(logger.capture("unknown", "u1")).isEqualTo(Capture.NONE);
+
+    logger.setDebugUser("g2");
+    assertThat(logger.capture("garmin.dailies", "g2")).isEqualTo(Capture.FULL);
+    assertThat(logger.capture("garmin.dailies", List.of("g1", "g2"), id -> id)).isEqualTo(Capture.FULL);
+    logger.setDebugUser(null);
+    assertThat(logger.capture("garmin.dailies", "g2")).isEqualTo(Capture.NONE);
+  }
+
+  @Test
+  void dropsOldestEntryWhenBufferIsFull() {
+    for (int i = 0; i < 6; i++) {
+      logger.log(Capture.SAMPLE, "webhook.dailies", null, "{}");
+    }
+    assertThat(logger.getBuffered()).isEqualTo(4);
+  }
+}
@@ -0,0 +1,117 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup;
+import io.fermion.az.health.garmin.entity.GarminDailiesRollup.Period;
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({ GarminDailiesRollupWriter.class, GarminDailiesSummaryBulkWriter.class })
+class GarminDailiesRollupWriterTest {
+
+  private static final LocalDate MONDAY = LocalDate.of(2024, 3, 4);
+
+  @TestConfiguration
+  static class Metrics {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
+  @Autowired
+  private GarminDailiesSummaryBulkWriter bulkWriter;
+
+  @Autowired
+  private GarminDailiesRollupWriter rollupWriter;
+
+  @Autowired
+  private GarminDailiesRollupRepo rollupRepo;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Test
+  void keepsRollupsPerGarminAccount() {
+    bulkWriter.upsert(List.of(summary("u1", "g1", MONDAY, 1000), summary("u1", "g2", MONDAY.plusDays(1), 50)));
+
+    assertThat(weekSteps("u1", "g1")).containsExactly(1000L);
+    assertThat(weekSteps("u1", "g2")).containsExactly(50L);
+
+    rollupWriter.rebuild("u1");
+    assertThat(weekSteps("u1", "g1")).containsExactly(1000L);
+    assertThat(weekSteps("u1", "g2")).containsExactly(50L);
+  }
+
+  @Test
+  void updateReplacesTheDayInTheRollup() {
+    bulkWriter.upsert(List.of(summary("u2", "g1", MONDAY, 1000), summary("u2", "g1", MONDAY.plusDays(1), 200)));
+    bulkWriter.upsert(List.of(summary("u2", "g1", MONDAY, 1500)));
+
+    assertThat(weekSteps("u2", "g1")).containsExactly(1700L);
+  }
+
+  @Test
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  void rebuildWaitsForIngestOfTheSameUser() throws Exception {
+    TransactionTemplate tx = new TransactionTemplate(transactionManager);
+    CountDownLatch written = new CountDownLatch(1);
+    CountDownLatch commit = new CountDownLatch(1);
+    CompletableFuture<Void> ingest = CompletableFuture.runAsync(() -> tx.executeWithoutResult(status -> {
+      bulkWriter.upsert(List.of(summary("u3", "g1", MONDAY, 700)));
+      written.countDown();
+      await(commit);
+    }));
+    assertThat(written.await(5, TimeUnit.SECONDS)).isTrue();
+
+    CompletableFuture<Integer> rebuild = CompletableFuture.supplyAsync(() -> rollupWriter.rebuild("u3"));
+    Thread.sleep(300);
+    assertThat(rebuild).isNotDone();
+
+    commit.countDown();
+    ingest.get(5, TimeUnit.SECONDS);
+    assertThat(rebuild.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+    assertThat(weekSteps("u3", "g1")).containsExactly(700L);
+  }
+
+  private List<Long> weekSteps(String userId, String garminUserId) {
+    return rollupRepo.findByUserIdAndGarminUserIdAndPeriodStartBetween(userId, garminUserId, Period.WEEK, MONDAY,
+        MONDAY.plusDays(6)).stream().map(GarminDailiesRollup::getSteps).toList();
+  }
+
+  private static GarminUserDailiesSummary summary(String userId, String garminUserId, LocalDate date, int steps) {
+    GarminUserDailiesSummary summary = new GarminUserDailiesSummary();
+    summary.setId(new GarminDailiesSummaryId(userId, garminUserId, date));
+    summary.setSteps(steps);
+    return summary;
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bulk upsert against per-entity {@code saveAll}, the write path ingest used
+ * before {@link GarminDailiesSummaryBulkWriter}. Not part of the test suite
+ * (surefire only picks up {@code *Test}); run it with
+ *
+ * <pre>
+ * mvn -B test -Dtest=GarminDailiesSummaryBulkWriterBenchmark
+ * </pre>
+ *
+ * Each round writes {@code BATCH} new days for a fresh user and then writes
+ * the same days again, so both the insert and the update path are timed.
+ * The bulk writer also maintains the rollups; {@code saveAll} does not.
+ */
+@DataJpaTest(showSql = false)
+@Import({ GarminDailiesRollupWriter.class, GarminDailiesSummaryBulkWriter.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GarminDailiesSummaryBulkWriterBenchmark {
+
+  private static final int BATCH = 200;
+  private static final int WARMUP_ROUNDS = 20;
+  private static final int ROUNDS = 30;
+
+  @TestConfiguration
+  static class Metrics {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
+  @Autowired
+  private GarminDailiesSummaryBulkWriter bulkWriter;
+
+  @Autowired
+  private GarminDailiesSummaryRepo summaryRepo;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private int users;
+
+  @Test
+  void compareWithSaveAll() {
+    TransactionTemplate tx = new TransactionTemplate(transactionManager);
+    Consumer<List<GarminUserDailiesSummary>> saveAll = rows -> tx.executeWithoutResult(s -> summaryRepo.saveAll(rows));
+    Consumer<List<GarminUserDailiesSummary>> upsert = bulkWriter::upsert;
+
+    run("saveAll", saveAll, WARMUP_ROUNDS);
+    run("upsert", upsert, WARMUP_ROUNDS);
+    report("saveAll", run("saveAll", saveAll, ROUNDS));
+    report("upsert", run("upsert", upsert, ROUNDS));
+  }
+
+  private long[] run(String name, Consumer<List<GarminUserDailiesSummary>> writer, int rounds) {
+    long insertNanos = 0;
+    long updateNanos = 0;
+    for (int round = 0; round < rounds; round++) {
+      String userId = name + "-" + users++;
+      long start = System.nanoTime();
+      writer.accept(batch(userId, 0));
+      long inserted = System.nanoTime();
+      writer.accept(batch(userId, 1));
+      insertNanos += inserted - start;
+      updateNanos += System.nanoTime() - inserted;
+    }
+    return new long[] { insertNanos / rounds, updateNanos / rounds };
+  }
+
+  private static void report(String name, long[] nanos) {
+    System.out.printf("%-8s %d rows: insert %.1f ms, update %.1f ms%n", name, BATCH,
+        nanos[0] / (double) TimeUnit.MILLISECONDS.toNanos(1), nanos[1] / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private static List<GarminUserDailiesSummary> batch(String userId, int steps) {
+    LocalDate first = LocalDate.of(2024, 1, 1);
+    List<GarminUserDailiesSummary> rows = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      GarminUserDailiesSummary summary = new GarminUserDailiesSummary();
+      summary.setId(new GarminDailiesSummaryId(userId, "g-" + userId, first.plusDays(i)));
+      summary.setSummaryId(userId + "-" + i);
+      summary.setSteps(1000 + steps + i);
+      rows.add(summary);
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,122 @@
+package io.fermion.az.health.garmin.repo;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryBulkWriter.UpsertResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(showSql = false)
+@Import({ GarminDailiesRollupWriter.class, GarminDailiesSummaryBulkWriter.class })
+class GarminDailiesSummaryBulkWriterTest {
+
+  private static final LocalDate DAY = LocalDate.of(2024, 3, 4);
+
+  @TestConfiguration
+  static class Metrics {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
+  @Autowired
+  private GarminDailiesSummaryBulkWriter bulkWriter;
+
+  @Autowired
+  private GarminDailiesSummaryRepo summaryRepo;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Test
+  void countsInsertedAndUpdatedRows() {
+    assertThat(bulkWriter.upsert(List.of(summary(DAY, 10), summary(DAY.plusDays(1), 20))))
+        .isEqualTo(new UpsertResult(2, 0));
+
+    assertThat(bulkWriter.upsert(List.of(summary(DAY.plusDays(1), 25), summary(DAY.plusDays(2), 30))))
+        .isEqualTo(new UpsertResult(1, 1));
+
+    assertThat(summaryRepo.findById(id(DAY.plusDays(1)))).get()
+        .extracting(GarminUserDailiesSummary::getSteps).isEqualTo(25);
+    assertThat(summaryRepo.count()).isEqualTo(3);
+  }
+
+  @Test
+  void keepsCreatedAtOnUpdate() {
+    bulkWriter.upsert(List.of(summary(DAY, 10)));
+    LocalDateTime createdAt = summaryRepo.findById(id(DAY)).orElseThrow().getCreatedAt();
+
+    bulkWriter.upsert(List.of(summary(DAY, 11)));
+
+    GarminUserDailiesSummary stored = summaryRepo.findById(id(DAY)).orElseThrow();
+    assertThat(stored.getCreatedAt()).isEqualTo(createdAt);
+    assertThat(stored.getLastModifiedAt()).isAfterOrEqualTo(createdAt);
+  }
+
+  @Test
+  void duplicateKeysInOneBatchCountOnceAndLastWins() {
+    UpsertResult result = bulkWriter.upsert(List.of(summary(DAY, 1), summary(DAY, 2), summary(DAY, 3)));
+
+    assertThat(result).isEqualTo(new UpsertResult(1, 0));
+    assertThat(summaryRepo.findById(id(DAY)).orElseThrow().getSteps()).isEqualTo(3);
+  }
+
+  @Test
+  void countsAcrossChunks() {
+    List<GarminUserDailiesSummary> first = new ArrayList<>();
+    for (int i = 0; i < 700; i++) {
+      first.add(summary(DAY.plusDays(i), i));
+    }
+    assertThat(bulkWriter.upsert(first)).isEqualTo(new UpsertResult(700, 0));
+
+    List<GarminUserDailiesSummary> second = new ArrayList<>();
+    for (int i = 400; i < 1200; i++) {
+      second.add(summary(DAY.plusDays(i), i + 1));
+    }
+    assertThat(bulkWriter.upsert(second)).isEqualTo(new UpsertResult(500, 300));
+    assertThat(summaryRepo.count()).isEqualTo(1200);
+  }
+
+  @Test
+  void recordsEachBatchStatement() {
+    DistributionSummary rows = meterRegistry.get("garmin.db.batch.rows").tag("table", "garmin_dailies_summary")
+        .summary();
+    long statements = rows.count();
+    double written = rows.totalAmount();
+
+    bulkWriter.upsert(List.of(summary(DAY, 1), summary(DAY.plusDays(1), 2), summary(DAY.plusDays(2), 3)));
+
+    assertThat(rows.count() - statements).isEqualTo(1);
+    assertThat(rows.totalAmount() - written).isEqualTo(3);
+    assertThat(meterRegistry.get("garmin.db.batch.writes").tag("table", "garmin_dailies_summary").timer().count())
+        .isEqualTo(rows.count());
+  }
+
+  private static GarminDailiesSummaryId id(LocalDate date) {
+    return new GarminDailiesSummaryId("u1", "g1", date);
+  }
+
+  private static GarminUserDailiesSummary summary(LocalDate date, int steps) {
+    GarminUserDailiesSummary summary = new GarminUserDailiesSummary();
+    summary.setId(id(date));
+    summary.setSummaryId("s-" + date);
+    summary.setSteps(steps);
+    return summary;
+  }
+}
@@ -0,0 +1,113 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.client.GarminApiClient;
+import io.fermion.az.health.garmin.dto.BackfillStatus;
+import io.fermion.az.health.garmin.entity.BackfillJob;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.repo.BackfillJobRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BackfillServiceTest {
+
+  private static final LocalDate START = LocalDate.of(2024, 3, 1);
+
+  private final AtomicReference<BackfillJob> stored = new AtomicReference<>();
+  private GarminApiClient apiClient;
+  private BackfillService service;
+
+  @BeforeEach
+  void setUp() {
+    BackfillJobRepository repo = mock(BackfillJobRepository.class);
+    when(repo.findById("job-1")).thenAnswer(invocation -> Optional.ofNullable(stored.get()));
+    when(repo.save(any())).thenAnswer(invocation -> {
+      stored.set(invocation.getArgument(0));
+      return invocation.getArgument(0);
+    });
+
+    GarminUserTokens tokens = new GarminUserTokens();
+    tokens.setId(new GarminUserTokensId("u1", "g1"));
+    tokens.setAccessToken("at");
+    tokens.setAccessTokenExpiry(LocalDateTime.now().plusDays(1));
+    ConnectedTokenCache tokenCache = mock(ConnectedTokenCache.class);
+    when(tokenCache.get("u1")).thenReturn(tokens);
+
+    apiClient = mock(GarminApiClient.class);
+    service = new BackfillService(repo, mock(GarminService.class), apiClient, tokenCache,
+        mock(DailiesPersistenceService.class));
+    ReflectionTestUtils.setField(service, "parallelism", 2);
+    ReflectionTestUtils.setField(service, "windowAttempts", 1);
+    ReflectionTestUtils.setField(service, "flushRows", 500);
+    service.init();
+
+    BackfillJob job = new BackfillJob();
+    job.setJobId("job-1");
+    job.setUserId("u1");
+    job.setGarminUserId("g1");
+    job.setStartDate(START);
+    job.setEndDate(START.plusDays(2));
+    job.setStatus(BackfillJob.Status.PENDING);
+    job.setWindowsTotal(3);
+    job.setCompletedWindowSet(new BitSet());
+    stored.set(job);
+  }
+
+  @Test
+  void failedWindowsAreReportedAndRetriedOnResume() throws Exception {
+    long failingDay = START.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    AtomicBoolean garminDown = new AtomicBoolean(true);
+    when(apiClient.fetchDailies(eq("g1"), anyLong(), anyLong(), eq("at"))).thenReturn(List.of());
+    when(apiClient.fetchDailies(eq("g1"), eq(failingDay), anyLong(), eq("at"))).thenAnswer(invocation -> {
+      if (garminDown.get()) {
+        throw new GarminApiException("502 from Garmin");
+      }
+      return List.of();
+    });
+
+    BackfillStatus first = runToEnd();
+    assertThat(first.status()).isEqualTo(BackfillJob.Status.FAILED);
+    assertThat(first.windowsDone()).isEqualTo(2);
+    assertThat(first.windowsFailed()).isEqualTo(1);
+    assertThat(first.failedDates()).containsExactly(START.plusDays(1));
+
+    garminDown.set(false);
+    BackfillStatus second = runToEnd();
+    assertThat(second.status()).isEqualTo(BackfillJob.Status.COMPLETED);
+    assertThat(second.windowsDone()).isEqualTo(3);
+    assertThat(second.windowsFailed()).isZero();
+    assertThat(second.failedDates()).isEmpty();
+  }
+
+  private BackfillStatus runToEnd() throws InterruptedException {
+    stored.get().setFinishedAt(null);
+    service.resume("job-1");
+    Map<?, ?> running = (Map<?, ?>) ReflectionTestUtils.getField(service, "running");
+    long deadline = System.currentTimeMillis() + 10_000;
+    while ((stored.get().getFinishedAt() == null || !running.isEmpty()) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    return BackfillStatus.of(stored.get());
+  }
+}
@@ -0,0 +1,89 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.service.DailiesBulkReadService.UserResult;
+import io.fermion.az.health.garmin.service.DailiesReadService.ReadResult;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DailiesBulkReadServiceTest {
+
+  private static final LocalDate DAY = LocalDate.of(2024, 3, 4);
+
+  private DailiesReadService readService;
+  private DailiesBulkReadService service;
+  private GarminUserTokens fast;
+  private GarminUserTokens slow;
+
+  @BeforeEach
+  void setUp() {
+    fast = tokens("u1");
+    slow = tokens("u2");
+    ConnectedTokenCache tokenCache = mock(ConnectedTokenCache.class);
+    when(tokenCache.getAll(any())).thenReturn(Map.of("u1", fast, "u2", slow));
+
+    readService = mock(DailiesReadService.class);
+    when(readService.fetched(anyList())).thenAnswer(invocation -> new ReadResult(invocation.getArgument(0),
+        DailiesReadService.Source.GARMIN, null));
+
+    service = new DailiesBulkReadService(readService, tokenCache, mock(GarminDailiesSummaryRepo.class));
+    ReflectionTestUtils.setField(service, "maxUsers", 10);
+    ReflectionTestUtils.setField(service, "concurrency", 2);
+    ReflectionTestUtils.setField(service, "timeoutMs", 200L);
+    service.init();
+  }
+
+  @AfterEach
+  void tearDown() {
+    service.shutdown();
+  }
+
+  @Test
+  void fetchStillRunningAtTheDeadlineIsInterrupted() throws Exception {
+    CountDownLatch interrupted = new CountDownLatch(1);
+    when(readService.fetch(eq(fast), eq(DAY))).thenReturn(List.of(new DailiesSummary()));
+    when(readService.fetch(eq(slow), eq(DAY))).thenAnswer(invocation -> {
+      try {
+        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+        throw e;
+      }
+      return List.of();
+    });
+
+    List<UserResult> results = service.readAll(List.of("u1", "u2"), DAY);
+
+    assertThat(results).extracting(UserResult::userId).containsExactly("u1", "u2");
+    assertThat(results.get(0).result().summaries()).hasSize(1);
+    assertThat(results.get(1).result()).isNull();
+    assertThat(results.get(1).error()).contains("Not fetched within 200 ms");
+    assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private static GarminUserTokens tokens(String userId) {
+    GarminUserTokens tokens = new GarminUserTokens();
+    tokens.setId(new GarminUserTokensId(userId, "g-" + userId));
+    return tokens;
+  }
+}
@@ -0,0 +1,89 @@
+package io.fermion.az.health.garmin.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fermion.az.health.garmin.WebhookCache;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo.SummaryFingerprint;
+import io.fermion.az.health.garmin.service.DailiesIdempotencyService.FingerprintedSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DailiesIdempotencyServiceTest {
+
+  private GarminDailiesSummaryRepo repo;
+  private DailiesIdempotencyService service;
+
+  @BeforeEach
+  void setUp() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    repo = mock(GarminDailiesSummaryRepo.class);
+    service = new DailiesIdempotencyService(new WebhookCache(1000, 1 << 20, 60_000, 1000, registry), repo,
+        new ObjectMapper(), registry);
+  }
+
+  @Test
+  void fingerprintChangesWithContentOnly() {
+    assertThat(service.fingerprint(summary("s1", 10))).isEqualTo(service.fingerprint(summary("s1", 10)))
+        .hasSize(32)
+        .isNotEqualTo(service.fingerprint(summary("s1", 11)));
+  }
+
+  @Test
+  void rememberedSummaryIsARecentDuplicateUntilItChanges() {
+    service.remember(service.fingerprinted(summary("s1", 10)));
+
+    assertThat(service.isRecentDuplicate(service.fingerprinted(summary("s1", 10)))).isTrue();
+    assertThat(service.isRecentDuplicate(service.fingerprinted(summary("s1", 11)))).isFalse();
+    assertThat(service.isRecentDuplicate(service.fingerprinted(summary("s2", 10)))).isFalse();
+  }
+
+  @Test
+  void storedFingerprintsAreDroppedAndRemembered() {
+    FingerprintedSummary unchanged = service.fingerprinted(summary("s1", 10));
+    FingerprintedSummary changed = service.fingerprinted(summary("s2", 20));
+    FingerprintedSummary unknown = service.fingerprinted(summary("s3", 30));
+    when(repo.findFingerprintsBySummaryIds(any())).thenReturn(List.of(
+        stored("s1", unchanged.fingerprint()), stored("s2", service.fingerprint(summary("s2", 19)))));
+
+    List<FingerprintedSummary> fresh = service.removePersistedDuplicates(List.of(unchanged, changed, unknown));
+
+    assertThat(fresh).containsExactly(changed, unknown);
+    assertThat(service.isRecentDuplicate(unchanged)).isTrue();
+    // One memory hit, one database hit, two misses
+    assertThat(service.hitRatio()).isEqualTo(0.5);
+  }
+
+  private static DailiesSummary summary(String summaryId, int steps) {
+    DailiesSummary summary = new DailiesSummary();
+    summary.setUserId("g1");
+    summary.setSummaryId(summaryId);
+    summary.setCalendarDate("2024-03-04");
+    summary.setSteps(steps);
+    return summary;
+  }
+
+  private static SummaryFingerprint stored(String summaryId, String fingerprint) {
+    return new SummaryFingerprint() {
+      @Override
+      public String getSummaryId() {
+        return summaryId;
+      }
+
+      @Override
+      public String getContentFingerprint() {
+        return fingerprint;
+      }
+    };
+  }
+}
@@ -0,0 +1,233 @@
+package io.fermion.az.health.garmin.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fermion.az.health.garmin.WebhookCache;
+import io.fermion.az.health.garmin.codec.DailiesSummaryDecoder;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.dto.IngestResponse;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokens.ConnectStatus;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.journal.IngestJournal;
+import io.fermion.az.health.garmin.logging.PayloadLogger;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryBulkWriter;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryBulkWriter.UpsertResult;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
+import io.fermion.az.health.garmin.service.DailiesIdempotencyService.FingerprintedSummary;
+import io.fermion.az.health.garmin.service.DailiesIngestService.Outcome;
+import io.fermion.az.health.garmin.service.DailiesIngestService.SubmitResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DailiesIngestServiceTest {
+
+  private static final String TWO_DAYS = """
+      {"dailies": [
+        {"userId": "g1", "summaryId": "s1", "calendarDate": "2024-03-04", "steps": 100},
+        {"userId": "g1", "summaryId": "s2", "calendarDate": "2024-03-05", "steps": 200}
+      ]}""";
+
+  private SimpleMeterRegistry registry;
+  private DailiesPersistenceService persistenceService;
+  private DailiesIdempotencyService idempotencyService;
+  private IngestJournal journal;
+  private IngestJournal.Ticket ticket;
+  private DailiesIngestService service;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    registry = new SimpleMeterRegistry();
+    ObjectMapper objectMapper = new ObjectMapper();
+    persistenceService = mock(DailiesPersistenceService.class);
+    when(persistenceService.persistFingerprinted(any())).thenReturn(new UpsertResult(2, 0));
+    idempotencyService = new DailiesIdempotencyService(new WebhookCache(1000, 1 << 20, 60_000, 1000, registry),
+        mock(GarminDailiesSummaryRepo.class), objectMapper, registry);
+    journal = mock(IngestJournal.class);
+    ticket = mock(IngestJournal.Ticket.class);
+    when(journal.append(any())).thenReturn(ticket);
+
+    service = new DailiesIngestService(persistenceService, idempotencyService, new DailiesSummaryDecoder(objectMapper),
+        journal, mock(PayloadLogger.class), registry);
+    ReflectionTestUtils.setField(service, "queueCapacity", 3);
+    ReflectionTestUtils.setField(service, "workerCount", 1);
+    ReflectionTestUtils.setField(service, "batchSize", 50);
+    ReflectionTestUtils.setField(service, "maxBatchWaitMs", 10L);
+    ReflectionTestUtils.setField(service, "maxPayloadBytes", 1024);
+    ReflectionTestUtils.setField(service, "shutdownTimeoutMs", 1000L);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    service.stop();
+  }
+
+  @Test
+  void acceptedPayloadIsWrittenAndCommittedToTheJournal() {
+    // The worker reuses its batch list, so keep a copy
+    List<String> written = new CopyOnWriteArrayList<>();
+    when(persistenceService.persistFingerprinted(any())).thenAnswer(invocation -> {
+      List<FingerprintedSummary> batch = invocation.getArgument(0);
+      batch.forEach(summary -> written.add(summary.summary().getSummaryId()));
+      return new UpsertResult(batch.size(), 0);
+    });
+    service.start();
+
+    SubmitResult result = service.submit(body(TWO_DAYS));
+
+    assertThat(result).isEqualTo(new SubmitResult(Outcome.ACCEPTED, 2, 0, 0));
+    assertThat(IngestResponse.toEntity(result).getStatusCode()).isEqualTo(HttpStatus.OK);
+    verify(ticket, timeout(2000)).commit();
+    assertThat(written).containsExactly("s1", "s2");
+  }
+
+  @Test
+  void summariesAreOnlyWrittenForConnectedUsers() throws Exception {
+    GarminUserTokensRepository tokensRepo = mock(GarminUserTokensRepository.class);
+    when(tokensRepo.findConnectedByGarminUserIdIn(any())).thenCallRealMethod();
+    // g1 is linked to two users and u2 linked it last; g2 is only linked by a disconnected token
+    LocalDateTime linked = LocalDateTime.of(2024, 3, 1, 9, 0);
+    when(tokensRepo.findByIdGarminUserIdInAndConnectStatus(any(), eq(ConnectStatus.CONNECTED)))
+        .thenReturn(List.of(tokens("u2", "g1", linked.plusDays(1)), tokens("u1", "g1", linked)));
+    GarminDailiesSummaryBulkWriter bulkWriter = mock(GarminDailiesSummaryBulkWriter.class);
+    List<String> written = new CopyOnWriteArrayList<>();
+    when(bulkWriter.upsert(any())).thenAnswer(invocation -> {
+      Collection<GarminUserDailiesSummary> rows = invocation.getArgument(0);
+      rows.forEach(row -> written.add(row.getSummaryId() + "@" + row.getId().getUserId()));
+      return new UpsertResult(rows.size(), 0);
+    });
+    DailiesIngestService connected = new DailiesIngestService(
+        new DailiesPersistenceService(bulkWriter, tokensRepo, idempotencyService), idempotencyService,
+        new DailiesSummaryDecoder(new ObjectMapper()), journal, mock(PayloadLogger.class), registry);
+    ReflectionTestUtils.setField(connected, "queueCapacity", 3);
+    ReflectionTestUtils.setField(connected, "workerCount", 1);
+    ReflectionTestUtils.setField(connected, "batchSize", 50);
+    ReflectionTestUtils.setField(connected, "maxBatchWaitMs", 10L);
+    ReflectionTestUtils.setField(connected, "maxPayloadBytes", 1024);
+    ReflectionTestUtils.setField(connected, "shutdownTimeoutMs", 1000L);
+    connected.start();
+    try {
+      connected.submit(body(TWO_DAYS.replace("\"userId\": \"g1\", \"summaryId\": \"s2\"",
+          "\"userId\": \"g2\", \"summaryId\": \"s2\"")));
+
+      verify(ticket, timeout(2000)).commit();
+      assertThat(written).containsExactly("s1@u2");
+      verify(tokensRepo, never()).findByIdGarminUserIdIn(any());
+    } finally {
+      connected.stop();
+    }
+  }
+
+  @Test
+  void failedWriteLeavesThePayloadInTheJournal() {
+    when(persistenceService.persistFingerprinted(any())).thenThrow(new IllegalStateException("database down"));
+    service.start();
+
+    service.submit(body(TWO_DAYS));
+
+    verify(persistenceService, timeout(2000)).persistFingerprinted(any());
+    verify(ticket, after(200).times(0)).commit();
+  }
+
+  @Test
+  void recentDuplicatesAreDroppedBeforeTheQueue() throws Exception {
+    DailiesSummary first = new DailiesSummaryDecoder(new ObjectMapper()).decodeAll(body(TWO_DAYS)).get(0);
+    idempotencyService.remember(idempotencyService.fingerprinted(first));
+
+    SubmitResult result = service.submit(body(TWO_DAYS));
+
+    assertThat(result).isEqualTo(new SubmitResult(Outcome.ACCEPTED, 1, 0, 1));
+  }
+
+  @Test
+  void invalidRecordsAreRejected() {
+    SubmitResult result = service.submit(body("""
+        [{"userId": "g1", "calendarDate": "not a date"}, {"calendarDate": "2024-03-04"}]"""));
+
+    assertThat(result).isEqualTo(new SubmitResult(Outcome.INVALID, 0, 2, 0));
+    assertThat(IngestResponse.toEntity(result).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+  }
+
+  @Test
+  void malformedAndOversizedBodies() {
+    assertThat(service.submit(body("{\"dailies\": [")).outcome()).isEqualTo(Outcome.MALFORMED);
+    assertThat(service.submit(body("[" + " ".repeat(1100) + "]")).outcome()).isEqualTo(Outcome.TOO_LARGE);
+  }
+
+  @Test
+  void fullQueueIsAnsweredWithRetryAfter() throws Exception {
+    // Workers not started, so nothing drains
+    service.submit(body(TWO_DAYS));
+
+    SubmitResult result = service.submit(body(TWO_DAYS.replace("s1", "s3").replace("s2", "s4")));
+
+    assertThat(result.outcome()).isEqualTo(Outcome.QUEUE_FULL);
+    ResponseEntity<IngestResponse> response = IngestResponse.toEntity(result);
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("30");
+    assertThat(service.getPendingRecords()).isEqualTo(2);
+    verify(journal, times(1)).append(any(byte[].class));
+  }
+
+  @Test
+  void submitsAreTimedByOutcomeAndRecordsCounted() {
+    service.submit(body(TWO_DAYS));
+    service.submit(body("[{\"userId\": \"g1\"}]"));
+    service.submit(body("{"));
+
+    assertThat(receives("accepted")).isEqualTo(1);
+    assertThat(receives("invalid")).isEqualTo(1);
+    assertThat(receives("malformed")).isEqualTo(1);
+    assertThat(records("accepted").totalAmount()).isEqualTo(2);
+    assertThat(records("rejected").totalAmount()).isEqualTo(1);
+    assertThat(registry.get("garmin.ingest.pending").gauge().value()).isEqualTo(2);
+  }
+
+  private long receives(String outcome) {
+    return registry.get("garmin.webhook.receive").tag("outcome", outcome).timer().count();
+  }
+
+  private DistributionSummary records(String result) {
+    return registry.get("garmin.webhook.records").tag("result", result).summary();
+  }
+
+  private static GarminUserTokens tokens(String userId, String garminUserId, LocalDateTime lastModifiedAt) {
+    GarminUserTokens tokens = new GarminUserTokens();
+    tokens.setId(new GarminUserTokensId(userId, garminUserId));
+    tokens.setConnectStatus(ConnectStatus.CONNECTED);
+    tokens.setLastModifiedAt(lastModifiedAt);
+    return tokens;
+  }
+
+  private static ByteArrayInputStream body(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,122 @@
+package io.fermion.az.health.garmin.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.service.DailiesRangeService.Cursor;
+import io.fermion.az.health.garmin.service.DailiesRangeService.RangeQuery;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(showSql = false)
+@Import(DailiesRangeService.class)
+class DailiesRangeServiceTest {
+
+  private static final LocalDate FROM = LocalDate.of(2024, 3, 1);
+
+  @TestConfiguration
+  static class Json {
+    @Bean
+    ObjectMapper objectMapper() {
+      return new ObjectMapper();
+    }
+  }
+
+  @Autowired
+  private DailiesRangeService rangeService;
+
+  @Autowired
+  private GarminDailiesSummaryRepo summaryRepo;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @BeforeEach
+  void setUp() {
+    List<GarminUserDailiesSummary> rows = new ArrayList<>();
+    for (int day = 0; day < 4; day++) {
+      rows.add(summary("u1", "g1", FROM.plusDays(day)));
+    }
+    // A second Garmin account on the same days sorts after the first
+    rows.add(summary("u1", "g2", FROM.plusDays(1)));
+    rows.add(summary("u1", "g2", FROM.plusDays(2)));
+    rows.add(summary("u2", "g3", FROM.plusDays(1)));
+    // Outside the range
+    rows.add(summary("u1", "g1", FROM.plusDays(10)));
+    summaryRepo.saveAll(rows);
+  }
+
+  @Test
+  void pagesCoverTheRangeInKeyOrderWithoutOverlap() throws IOException {
+    List<String> seen = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      JsonNode page = page(rangeService.query("u1", FROM, FROM.plusDays(5), cursor, 4));
+      page.get("summaries").forEach(summary -> seen.add(summary.get("summaryId").asText()));
+      assertThat(page.get("count").asInt()).isEqualTo(page.get("summaries").size());
+      cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+      pages++;
+    } while (cursor != null);
+
+    assertThat(pages).isEqualTo(2);
+    assertThat(seen).containsExactly("g1-2024-03-01", "g1-2024-03-02", "g2-2024-03-02", "g1-2024-03-03",
+        "g2-2024-03-03", "g1-2024-03-04");
+  }
+
+  @Test
+  void lastFullPageHasNoNextCursor() throws IOException {
+    JsonNode page = page(rangeService.query("u1", FROM, FROM.plusDays(5), null, 6));
+
+    assertThat(page.get("count").asInt()).isEqualTo(6);
+    assertThat(page.get("nextCursor").isNull()).isTrue();
+  }
+
+  @Test
+  void validatesTheRequest() {
+    assertThatThrownBy(() -> rangeService.query("u1", FROM, FROM.minusDays(1), null, null))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> rangeService.query("u1", FROM, FROM, null, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> rangeService.query("u1", FROM, FROM, "bm90IGEgY3Vyc29y", null))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void cursorRoundTrips() {
+    Cursor cursor = new Cursor(FROM, "g|1");
+
+    assertThat(Cursor.decode(cursor.encode())).isEqualTo(cursor);
+  }
+
+  private JsonNode page(RangeQuery query) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    rangeService.writePage(query, out);
+    return objectMapper.readTree(out.toByteArray());
+  }
+
+  private static GarminUserDailiesSummary summary(String userId, String garminUserId, LocalDate date) {
+    GarminUserDailiesSummary summary = new GarminUserDailiesSummary();
+    summary.setId(new GarminDailiesSummaryId(userId, garminUserId, date));
+    summary.setSummaryId(garminUserId + "-" + date);
+    return summary;
+  }
+}
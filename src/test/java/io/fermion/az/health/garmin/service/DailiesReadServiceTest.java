@@ -0,0 +1,138 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.dto.DailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminDailiesSummaryId;
+import io.fermion.az.health.garmin.entity.GarminUserDailiesSummary;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.exception.GarminUnavailableException;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.service.DailiesReadService.ReadResult;
+import io.fermion.az.health.garmin.service.DailiesReadService.Source;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DailiesReadServiceTest {
+
+  private static final long TODAY_MAX_AGE_MS = Duration.ofMinutes(15).toMillis();
+  private static final long PAST_MAX_AGE_MS = Duration.ofHours(6).toMillis();
+  private static final long FINAL_AFTER_MS = Duration.ofDays(1).toMillis();
+
+  private GarminService garminService;
+  private DailiesPersistenceService persistenceService;
+  private GarminDailiesSummaryRepo repo;
+  private DailiesReadService service;
+  private final LocalDate today = LocalDate.now();
+
+  @BeforeEach
+  void setUp() {
+    garminService = mock(GarminService.class);
+    persistenceService = mock(DailiesPersistenceService.class);
+    repo = mock(GarminDailiesSummaryRepo.class);
+    when(repo.findById(any())).thenReturn(Optional.empty());
+
+    GarminUserTokens tokens = new GarminUserTokens();
+    tokens.setId(new GarminUserTokensId("u1", "g1"));
+    tokens.setAccessToken("at");
+    tokens.setAccessTokenExpiry(LocalDateTime.now().plusHours(1));
+    ConnectedTokenCache tokenCache = mock(ConnectedTokenCache.class);
+    when(tokenCache.get("u1")).thenReturn(tokens);
+
+    service = new DailiesReadService(garminService, persistenceService, repo, tokenCache, TODAY_MAX_AGE_MS,
+        PAST_MAX_AGE_MS, FINAL_AFTER_MS, 1000, 1000, new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(service, "serveStaleWhenUnavailable", true);
+  }
+
+  @Test
+  void freshStoredSummaryIsServedWithoutCallingGarmin() {
+    store(today, LocalDateTime.now().minusMinutes(5));
+
+    ReadResult result = service.read("u1", today);
+
+    assertThat(result.source()).isEqualTo(Source.LOCAL);
+    assertThat(result.summaries()).extracting(DailiesSummary::getSummaryId).containsExactly("s-" + today);
+    verify(garminService, never()).getDailiesSummary(any(), any(), any());
+  }
+
+  @Test
+  void outdatedSummaryIsFetchedAndTheFetchIsRemembered() {
+    store(today, LocalDateTime.now().minusHours(1));
+    when(garminService.getDailiesSummary("g1", today, "at")).thenReturn(List.of(summary("s-new")));
+
+    ReadResult first = service.read("u1", today);
+    // Unchanged content does not touch the row, so the stored version stays old
+    ReadResult second = service.read("u1", today);
+
+    assertThat(first.source()).isEqualTo(Source.GARMIN);
+    assertThat(first.summaries()).extracting(DailiesSummary::getSummaryId).containsExactly("s-new");
+    assertThat(second.source()).isEqualTo(Source.LOCAL);
+    verify(garminService, times(1)).getDailiesSummary(any(), any(), any());
+    verify(persistenceService).persist(anyList());
+  }
+
+  @Test
+  void pastDaysUseTheLongerMaxAgeAndFinalDaysNeverExpire() {
+    LocalDate lastWeek = today.minusDays(7);
+    store(lastWeek, LocalDateTime.now().minusHours(5));
+    assertThat(service.read("u1", lastWeek).source()).isEqualTo(Source.LOCAL);
+
+    LocalDate lastYear = today.minusYears(1);
+    store(lastYear, lastYear.plusDays(3).atStartOfDay());
+    assertThat(service.read("u1", lastYear).source()).isEqualTo(Source.LOCAL);
+
+    verify(garminService, never()).getDailiesSummary(any(), any(), any());
+  }
+
+  @Test
+  void outdatedSummaryIsServedStaleWhileGarminIsUnavailable() {
+    store(today, LocalDateTime.now().minusHours(1));
+    GarminUnavailableException unavailable = new GarminUnavailableException("breaker open", Duration.ofSeconds(30));
+    when(garminService.getDailiesSummary(any(), any(), any())).thenThrow(unavailable);
+
+    assertThat(service.read("u1", today).source()).isEqualTo(Source.STALE);
+
+    when(repo.findById(any())).thenReturn(Optional.empty());
+    assertThatThrownBy(() -> service.read("u1", today)).isSameAs(unavailable);
+  }
+
+  @Test
+  void userWithoutAConnectedAccountIsRejected() {
+    assertThatThrownBy(() -> service.read("nobody", today)).isInstanceOf(GarminApiException.class);
+  }
+
+  private void store(LocalDate date, LocalDateTime lastModifiedAt) {
+    GarminUserDailiesSummary stored = new GarminUserDailiesSummary();
+    stored.setId(new GarminDailiesSummaryId("u1", "g1", date));
+    stored.setSummaryId("s-" + date);
+    stored.setLastModifiedAt(lastModifiedAt);
+    when(repo.findById(stored.getId())).thenReturn(Optional.of(stored));
+  }
+
+  private static DailiesSummary summary(String summaryId) {
+    DailiesSummary summary = new DailiesSummary();
+    summary.setUserId("g1");
+    summary.setSummaryId(summaryId);
+    return summary;
+  }
+}
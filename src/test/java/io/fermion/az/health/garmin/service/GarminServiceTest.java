@@ -0,0 +1,108 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.client.GarminApiClient;
+import io.fermion.az.health.garmin.dto.TokenResponse;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
+import io.fermion.az.health.garmin.repo.OidcStateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GarminServiceTest {
+
+  private GarminUserTokensRepository repo;
+  private GarminApiClient apiClient;
+  private GarminService service;
+  private GarminUserTokens stored;
+  private final AtomicInteger openTransactions = new AtomicInteger();
+  private final List<Integer> openDuringCall = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    repo = mock(GarminUserTokensRepository.class);
+    apiClient = mock(GarminApiClient.class);
+    PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+      openTransactions.incrementAndGet();
+      return new SimpleTransactionStatus();
+    });
+    doAnswer(invocation -> openTransactions.decrementAndGet()).when(transactionManager).commit(any());
+    doAnswer(invocation -> openTransactions.decrementAndGet()).when(transactionManager).rollback(any());
+
+    service = new GarminService(mock(OidcStateRepository.class), repo, apiClient, mock(ConnectedTokenCache.class),
+        transactionManager, new SimpleMeterRegistry());
+    service.init();
+
+    stored = tokens("at-1", "rt-1");
+    when(repo.findById(stored.getId())).thenAnswer(invocation -> Optional.of(copy(stored)));
+    when(repo.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+  }
+
+  @Test
+  void garminIsCalledOutsideAnyTransactionAndTheRotatedTokenSaved() {
+    TokenResponse rotated = new TokenResponse();
+    rotated.setAccessToken("at-2");
+    rotated.setRefreshToken("rt-2");
+    rotated.setExpiresIn(3600);
+    rotated.setRefreshTokenExpiresIn(86_400);
+    when(apiClient.requestToken(any())).thenAnswer(invocation -> {
+      openDuringCall.add(openTransactions.get());
+      return ResponseEntity.ok(rotated);
+    });
+
+    GarminUserTokens refreshed = service.refreshAccessToken(tokens("at-1", "rt-1"));
+
+    assertThat(openDuringCall).containsExactly(0);
+    assertThat(openTransactions).hasValue(0);
+    assertThat(refreshed.getAccessToken()).isEqualTo("at-2");
+    assertThat(refreshed.getRefreshToken()).isEqualTo("rt-2");
+    verify(repo).save(refreshed);
+  }
+
+  @Test
+  void alreadyRotatedTokenIsReturnedWithoutCallingGarmin() {
+    stored.setAccessToken("at-2");
+
+    GarminUserTokens current = service.refreshAccessToken(tokens("at-1", "rt-1"));
+
+    assertThat(current.getAccessToken()).isEqualTo("at-2");
+    verify(apiClient, never()).requestToken(any());
+    assertThat(openTransactions).hasValue(0);
+  }
+
+  private static GarminUserTokens tokens(String accessToken, String refreshToken) {
+    GarminUserTokens tokens = new GarminUserTokens();
+    tokens.setId(new GarminUserTokensId("u1", "g1"));
+    tokens.setAccessToken(accessToken);
+    tokens.setRefreshToken(refreshToken);
+    tokens.setAccessTokenExpiry(LocalDateTime.now().minusMinutes(1));
+    tokens.setRefreshTokenExpiry(LocalDateTime.now().plusDays(30));
+    tokens.setConnectStatus(GarminUserTokens.ConnectStatus.CONNECTED);
+    return tokens;
+  }
+
+  private static GarminUserTokens copy(GarminUserTokens source) {
+    return tokens(source.getAccessToken(), source.getRefreshToken());
+  }
+}
@@ -0,0 +1,171 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.codec.HeartRateSampleCodec;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo;
+import io.fermion.az.health.garmin.repo.GarminDailiesSummaryRepo.HeartRateSamplesRow;
+import io.fermion.az.health.garmin.service.HeartRateQueryService.DayMaxAverage;
+import io.fermion.az.health.garmin.service.HeartRateQueryService.DayZones;
+import io.fermion.az.health.garmin.service.HeartRateQueryService.HeartRateWindow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HeartRateQueryServiceTest {
+
+  private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+  private GarminDailiesSummaryRepo repo;
+  private HeartRateQueryService service;
+
+  @BeforeEach
+  void setUp() {
+    repo = mock(GarminDailiesSummaryRepo.class);
+    service = service(60_000);
+  }
+
+  private HeartRateQueryService service(long recentTtlMs) {
+    HeartRateQueryService service = new HeartRateQueryService(repo, 1000, Long.MAX_VALUE, 86_400_000, recentTtlMs,
+        86_400_000, 1, new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(service, "maxDays", 92);
+    ReflectionTestUtils.setField(service, "maxSampleGapSeconds", 60);
+    return service;
+  }
+
+  @Test
+  void windowReturnsSamplesInRangeWithStats() {
+    stored(DAY, new int[] { 0, 15, 30, 45 }, new int[] { 60, 70, 80, 90 });
+
+    HeartRateWindow window = service.window("u1", DAY, LocalTime.ofSecondOfDay(15), LocalTime.ofSecondOfDay(45));
+
+    assertThat(window.offsets()).containsExactly(15, 30);
+    assertThat(window.min()).isEqualTo(70);
+    assertThat(window.max()).isEqualTo(80);
+    assertThat(window.average()).isEqualTo(75.0);
+  }
+
+  @Test
+  void zonesCountEachSampleUntilTheNextCappedAtMaxGap() {
+    // 60 s at 90, then 60 s (capped from 600) at 130, then the last sample counts 60 s again
+    stored(DAY, new int[] { 0, 60, 660 }, new int[] { 90, 130, 150 });
+
+    DayZones zones = service.zones("u1", DAY, DAY, new int[] { 100, 140 }).get(0);
+
+    assertThat(zones.belowZonesMinutes()).isEqualTo(1.0);
+    assertThat(zones.zones().get(0).minutes()).isEqualTo(1.0);
+    assertThat(zones.zones().get(1).minutes()).isEqualTo(1.0);
+  }
+
+  @Test
+  void maxAverageSkipsWindowsWithAGapInside() {
+    // Two samples 4 minutes apart span a 5-minute window within one max gap, but have a gap inside
+    int[] offsets = new int[2 + 21];
+    int[] bpm = new int[offsets.length];
+    offsets[0] = 0;
+    bpm[0] = 60;
+    offsets[1] = 240;
+    bpm[1] = 200;
+    for (int i = 0; i < 21; i++) {
+      offsets[2 + i] = 1000 + i * 15;
+      bpm[2 + i] = 100;
+    }
+    stored(DAY, offsets, bpm);
+
+    DayMaxAverage max = service.maxAverage("u1", DAY, DAY, 5).get(0);
+
+    assertThat(max.maxAverage()).isEqualTo(100.0);
+    assertThat(max.windowStart()).isEqualTo(LocalTime.ofSecondOfDay(1000));
+  }
+
+  @Test
+  void maxAverageWithoutFullWindowIsEmpty() {
+    stored(DAY, new int[] { 0, 15, 30 }, new int[] { 60, 60, 60 });
+
+    DayMaxAverage max = service.maxAverage("u1", DAY, DAY, 5).get(0);
+
+    assertThat(max.maxAverage()).isNull();
+    assertThat(max.windowStart()).isNull();
+  }
+
+  @Test
+  void maxAverageStartingAfterMidnightOfA25HourDayIsClamped() {
+    int[] offsets = new int[21];
+    int[] bpm = new int[21];
+    for (int i = 0; i < 21; i++) {
+      offsets[i] = 86_400 + 600 + i * 15;
+      bpm[i] = 120;
+    }
+    stored(DAY, offsets, bpm);
+
+    DayMaxAverage max = service.maxAverage("u1", DAY, DAY, 5).get(0);
+
+    assertThat(max.maxAverage()).isEqualTo(120.0);
+    assertThat(max.windowStart()).isEqualTo(LocalTime.MAX.withNano(0));
+  }
+
+  @Test
+  void pastDayWithoutSamplesIsCachedForRecentTtlOnly() throws InterruptedException {
+    service = service(1);
+    LocalDate past = LocalDate.of(2020, 1, 1);
+    when(repo.findHeartRateSamples(eq("u1"), any())).thenReturn(List.of());
+    assertThat(service.window("u1", past, LocalTime.MIDNIGHT, null).count()).isZero();
+
+    stored(past, new int[] { 0, 15 }, new int[] { 60, 61 });
+    Thread.sleep(10);
+    service.tick();
+
+    assertThat(service.window("u1", past, LocalTime.MIDNIGHT, null).count()).isEqualTo(2);
+  }
+
+  @Test
+  void pastDayWithSamplesIsCachedForPastTtl() throws InterruptedException {
+    service = service(1);
+    LocalDate past = LocalDate.of(2020, 1, 1);
+    stored(past, new int[] { 0, 15 }, new int[] { 60, 61 });
+
+    service.window("u1", past, LocalTime.MIDNIGHT, null);
+    Thread.sleep(10);
+    service.tick();
+    service.window("u1", past, LocalTime.MIDNIGHT, null);
+
+    verify(repo, times(1)).findHeartRateSamples(eq("u1"), any());
+  }
+
+  private void stored(LocalDate day, int[] offsets, int[] bpm) {
+    HeartRateSamplesRow row = row(day, offsets, bpm);
+    when(repo.findHeartRateSamples(eq("u1"), any())).thenReturn(List.of(row));
+  }
+
+  private static HeartRateSamplesRow row(LocalDate day, int[] offsets, int[] bpm) {
+    byte[] encoded = HeartRateSampleCodec.encode(offsets.clone(), bpm.clone(), offsets.length);
+    return new HeartRateSamplesRow() {
+      @Override
+      public LocalDate getCalendarDate() {
+        return day;
+      }
+
+      @Override
+      public byte[] getHeartRateSamples() {
+        return encoded;
+      }
+
+      @Override
+      public String getTimeOffsetHeartRateSamples() {
+        return null;
+      }
+    };
+  }
+}
@@ -0,0 +1,137 @@
+package io.fermion.az.health.garmin.service;
+
+import io.fermion.az.health.garmin.cache.ConnectedTokenCache;
+import io.fermion.az.health.garmin.entity.GarminUserTokens;
+import io.fermion.az.health.garmin.entity.GarminUserTokens.ConnectStatus;
+import io.fermion.az.health.garmin.entity.GarminUserTokensId;
+import io.fermion.az.health.garmin.exception.GarminApiException;
+import io.fermion.az.health.garmin.repo.GarminUserTokensRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenRefreshSchedulerTest {
+
+  private GarminService garminService;
+  private GarminUserTokensRepository repo;
+  private SimpleMeterRegistry registry;
+  private TokenRefreshScheduler scheduler;
+  private GarminUserTokens tokens;
+
+  @BeforeEach
+  void setUp() {
+    garminService = mock(GarminService.class);
+    repo = mock(GarminUserTokensRepository.class);
+    registry = new SimpleMeterRegistry();
+    scheduler = new TokenRefreshScheduler(garminService, repo, mock(ConnectedTokenCache.class), registry);
+    ReflectionTestUtils.setField(scheduler, "enabled", true);
+    ReflectionTestUtils.setField(scheduler, "leadTimeMs", 900_000L);
+    ReflectionTestUtils.setField(scheduler, "pageSize", 10);
+    ReflectionTestUtils.setField(scheduler, "maxPagesPerRun", 5);
+    ReflectionTestUtils.setField(scheduler, "concurrency", 2);
+    ReflectionTestUtils.setField(scheduler, "backoffBaseMs", 60_000L);
+    ReflectionTestUtils.setField(scheduler, "backoffMaxMs", 3_600_000L);
+    scheduler.start();
+
+    tokens = new GarminUserTokens();
+    tokens.setId(new GarminUserTokensId("u1", "g1"));
+    tokens.setConnectStatus(ConnectStatus.CONNECTED);
+    tokens.setAccessTokenExpiry(LocalDateTime.now().plusMinutes(5));
+    tokens.setRefreshTokenExpiry(LocalDateTime.now().plusDays(30));
+    when(repo.findTokensNeedingRefresh(any(), any(), any())).thenReturn(List.of(tokens));
+    when(repo.findById(tokens.getId())).thenReturn(Optional.of(tokens));
+    when(repo.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+  }
+
+  @AfterEach
+  void tearDown() {
+    scheduler.stop();
+  }
+
+  @Test
+  void failedRefreshIsBackedOff() throws Exception {
+    when(garminService.refreshAccessToken(any())).thenThrow(new IllegalStateException("token endpoint 500"));
+
+    scheduler.refreshExpiringTokens();
+
+    assertThat(tokens.getRefreshFailureCount()).isEqualTo(1);
+    assertThat(tokens.getNextRefreshAttemptAt()).isAfter(LocalDateTime.now().plusSeconds(50));
+    assertThat(failed()).isEqualTo(1);
+  }
+
+  @Test
+  void unexpectedTaskFailureIsRecordedAndNotRetriedInTheSameRun() throws Exception {
+    when(garminService.refreshAccessToken(any())).thenThrow(new AssertionError("unexpected"));
+
+    scheduler.refreshExpiringTokens();
+
+    // The query keeps returning the row, as it would if the bookkeeping was lost
+    verify(garminService, times(1)).refreshAccessToken(any());
+    ArgumentCaptor<GarminUserTokens> saved = ArgumentCaptor.forClass(GarminUserTokens.class);
+    verify(repo).save(saved.capture());
+    assertThat(saved.getValue().getNextRefreshAttemptAt()).isNotNull();
+    assertThat(saved.getValue().getLastRefreshError()).isEqualTo("unexpected");
+    assertThat(failed()).isEqualTo(1);
+  }
+
+  @Test
+  void revokedGrantDisconnectsTheToken() throws Exception {
+    HttpClientErrorException invalidGrant = HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request",
+        HttpHeaders.EMPTY, "{\"error\": \"invalid_grant\"}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    when(garminService.refreshAccessToken(any()))
+        .thenThrow(new GarminApiException("Failed to refresh token: " + invalidGrant.getMessage(), invalidGrant));
+
+    scheduler.refreshExpiringTokens();
+
+    assertThat(tokens.getConnectStatus()).isEqualTo(ConnectStatus.DISCONNECTED);
+    assertThat(tokens.getNextRefreshAttemptAt()).isNull();
+    assertThat(tokens.getRefreshFailureCount()).isZero();
+    assertThat(registry.get("garmin.tokens.scheduled").tag("outcome", "disconnected").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void unauthorizedDisconnectsTheToken() throws Exception {
+    when(garminService.refreshAccessToken(any())).thenThrow(new GarminApiException("Failed to refresh token",
+        HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", HttpHeaders.EMPTY, null, null)));
+
+    scheduler.refreshExpiringTokens();
+
+    assertThat(tokens.getConnectStatus()).isEqualTo(ConnectStatus.DISCONNECTED);
+  }
+
+  @Test
+  void otherClientErrorsAreBackedOff() throws Exception {
+    when(garminService.refreshAccessToken(any())).thenThrow(new GarminApiException("Failed to refresh token",
+        HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+            "{\"error\": \"invalid_request\"}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)));
+
+    scheduler.refreshExpiringTokens();
+
+    assertThat(tokens.getConnectStatus()).isEqualTo(ConnectStatus.CONNECTED);
+    assertThat(tokens.getNextRefreshAttemptAt()).isNotNull();
+    assertThat(failed()).isEqualTo(1);
+  }
+
+  private double failed() {
+    return registry.get("garmin.tokens.scheduled").tag("outcome", "failed").counter().count();
+  }
+}